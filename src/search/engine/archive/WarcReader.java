@@ -0,0 +1,219 @@
+package search.engine.archive;
+
+import search.engine.utils.Constants;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+
+public class WarcReader implements Closeable {
+
+    //
+    // Member variables
+    //
+    private InputStream mInput;
+
+
+    /**
+     * Returns the closed archive segments in the given directory sorted by name
+     * (i.e. in the order they were written).
+     *
+     * @param directory the archive directory
+     * @return list of archive segment files
+     */
+    public static List<File> listSegments(File directory) {
+        List<File> ret = new ArrayList<>();
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+            return ret;
+        }
+
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(Constants.ARCHIVE_SEGMENT_EXTENSION)) {
+                ret.add(file);
+            }
+        }
+
+        ret.sort(Comparator.comparing(File::getName));
+        return ret;
+    }
+
+    /**
+     * Opens the given compressed archive segment for reading.
+     *
+     * @param file the archive segment file
+     */
+    public WarcReader(File file) throws IOException {
+        mInput = new BufferedInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+    }
+
+    /**
+     * Reads the next response record from the archive.
+     * Records of other types are skipped.
+     *
+     * @return the next response record, or null when the end of the archive is reached
+     */
+    public WarcRecord next() throws IOException {
+        while (true) {
+            String line = readLine();
+
+            // End of archive
+            if (line == null) {
+                return null;
+            }
+
+            // Skip records separators
+            if (!line.startsWith("WARC/")) {
+                continue;
+            }
+
+            Map<String, String> headers = readHeaders();
+            int length = Integer.parseInt(headers.getOrDefault("content-length", "0").trim());
+            byte[] block = readFully(length);
+
+            if (!"response".equals(headers.get("warc-type"))) {
+                continue;
+            }
+
+            WarcRecord record = parseHttpBlock(block);
+            record.url = headers.get("warc-target-uri");
+            record.charset = headers.get("warc-charset");
+            record.fetchTime = parseDate(headers.get("warc-date"));
+            return record;
+        }
+    }
+
+    /**
+     * Closes the archive segment.
+     */
+    @Override
+    public void close() throws IOException {
+        mInput.close();
+    }
+
+    /**
+     * Parses the given HTTP response message block into a record.
+     *
+     * @param block the HTTP response message bytes
+     * @return a record filled with the response status, headers and body
+     */
+    private WarcRecord parseHttpBlock(byte[] block) {
+        WarcRecord record = new WarcRecord();
+
+        // Find the end of the response head
+        int bodyStart = block.length;
+
+        for (int i = 0; i + 3 < block.length; ++i) {
+            if (block[i] == '\r' && block[i + 1] == '\n' && block[i + 2] == '\r' && block[i + 3] == '\n') {
+                bodyStart = i + 4;
+                break;
+            }
+        }
+
+        String head = new String(block, 0, Math.min(bodyStart, block.length), StandardCharsets.ISO_8859_1);
+        String[] lines = head.split("\r\n");
+
+        // Status line (i.e. HTTP/1.1 200 OK)
+        String[] status = lines[0].split(" ", 3);
+        record.statusCode = (status.length > 1 ? Integer.parseInt(status[1]) : 0);
+        record.statusMessage = (status.length > 2 ? status[2] : "");
+
+        for (int i = 1; i < lines.length; ++i) {
+            int idx = lines[i].indexOf(':');
+
+            if (idx > 0) {
+                record.headers.put(lines[i].substring(0, idx).trim(), lines[i].substring(idx + 1).trim());
+            }
+        }
+
+        record.body = Arrays.copyOfRange(block, bodyStart, block.length);
+        return record;
+    }
+
+    /**
+     * Reads the record header lines until an empty line is found.
+     *
+     * @return map from the lower case header name to its value
+     */
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> ret = new HashMap<>();
+        String line;
+
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int idx = line.indexOf(':');
+
+            if (idx > 0) {
+                ret.put(line.substring(0, idx).trim().toLowerCase(), line.substring(idx + 1).trim());
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads a single CRLF (or LF) terminated line.
+     *
+     * @return the line without its terminator, or null at the end of the stream
+     */
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+
+        while ((c = mInput.read()) != -1) {
+            if (c == '\n') {
+                break;
+            }
+
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+
+        if (c == -1 && line.size() == 0) {
+            return null;
+        }
+
+        return line.toString("UTF-8");
+    }
+
+    /**
+     * Reads exactly the given number of bytes.
+     *
+     * @param length the number of bytes to read
+     * @return the read bytes
+     */
+    private byte[] readFully(int length) throws IOException {
+        byte[] ret = new byte[length];
+        int off = 0;
+
+        while (off < length) {
+            int n = mInput.read(ret, off, length - off);
+
+            if (n < 0) {
+                throw new EOFException("Truncated archive record");
+            }
+
+            off += n;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Parses the given WARC date string.
+     *
+     * @param date ISO-8601 date string
+     * @return milliseconds since epoch, or 0 if invalid date was given
+     */
+    private long parseDate(String date) {
+        try {
+            return Instant.parse(date).toEpochMilli();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package search.engine.archive;
+
+import org.jsoup.Connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+public class WarcRecord {
+
+    //
+    // Member variables
+    //
+
+    /**
+     * The fetched web page URL string.
+     */
+    public String url;
+
+    /**
+     * The fetch time in milliseconds since epoch.
+     */
+    public long fetchTime;
+
+    /**
+     * HTTP response status line values.
+     */
+    public int statusCode;
+    public String statusMessage;
+
+    /**
+     * HTTP response headers, as returned by the web server.
+     */
+    public Map<String, String> headers;
+
+    /**
+     * The raw (decoded) response body.
+     */
+    public byte[] body;
+
+    /**
+     * The response charset, or null if unknown.
+     */
+    public String charset;
+
+    //
+    // Member methods
+    //
+
+    /**
+     * Default constructor.
+     */
+    public WarcRecord() {
+        headers = new LinkedHashMap<>();
+    }
+
+    /**
+     * Constructs a record from the given fetched HTTP response.
+     * <p>
+     * The response body must be buffered before calling this constructor
+     * (i.e. by calling {@code bodyAsBytes()}).
+     *
+     * @param url      the requested web page URL string
+     * @param response the fetched HTTP response
+     */
+    public WarcRecord(String url, Connection.Response response) {
+        this.url = url;
+        this.fetchTime = System.currentTimeMillis();
+        this.statusCode = response.statusCode();
+        this.statusMessage = response.statusMessage();
+        this.headers = new LinkedHashMap<>(response.headers());
+        this.body = response.bodyAsBytes();
+        this.charset = response.charset();
+    }
+
+    /**
+     * Serializes this record as an HTTP response message block
+     * (i.e. status line, headers and body).
+     * <p>
+     * Since the stored body is already decoded, transfer related headers
+     * are dropped and the content length is replaced by the actual body length.
+     *
+     * @return the HTTP response message bytes
+     */
+    public byte[] toHttpBlock() throws IOException {
+        StringBuilder head = new StringBuilder();
+
+        head.append("HTTP/1.1 ").append(statusCode).append(" ")
+                .append(statusMessage == null ? "" : statusMessage).append("\r\n");
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            String key = header.getKey().toLowerCase();
+
+            if (key.equals("content-encoding") || key.equals("content-length") || key.equals("transfer-encoding")) {
+                continue;
+            }
+
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        head.append("\r\n");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(head.length() + body.length);
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        return out.toByteArray();
+    }
+}
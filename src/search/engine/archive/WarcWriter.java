@@ -0,0 +1,204 @@
+package search.engine.archive;
+
+import search.engine.crawler.Output;
+import search.engine.utils.Constants;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+
+public class WarcWriter {
+
+    //
+    // Member variables
+    //
+    private File mDirectory;
+    private String mSegmentPrefix;
+    private BlockingQueue<WarcRecord> mQueue;
+    private Thread mWriterThread;
+    private volatile boolean mRunning;
+
+    /**
+     * The currently open segment file.
+     */
+    private File mSegmentFile;
+    private OutputStream mSegment;
+    private long mSegmentBytes;
+    private int mSegmentNumber;
+
+    /**
+     * Writing statistics.
+     */
+    private long mWrittenCnt = 0;
+    private long mDroppedCnt = 0;
+
+
+    /**
+     * Constructs a WARC archive writer that writes rolling compressed segments
+     * into the given directory.
+     *
+     * @param directory the archive directory path
+     */
+    public WarcWriter(String directory) {
+        mDirectory = new File(directory);
+        mSegmentPrefix = "crawl-" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+        mQueue = new ArrayBlockingQueue<>(Constants.ARCHIVE_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Starts the background writer thread.
+     */
+    public void open() {
+        mDirectory.mkdirs();
+        mRunning = true;
+
+        mWriterThread = new Thread(this::writeLoop);
+        mWriterThread.setName("Archive-Writer-Thread");
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+    }
+
+    /**
+     * Hands the given record off to the writer thread.
+     * <p>
+     * This function never blocks, if the writer falls behind then
+     * the record is dropped so that crawling is not slowed down.
+     *
+     * @param record the fetched response record to archive
+     * @return {@code true} if the record was queued, {@code false} if it was dropped
+     */
+    public boolean write(WarcRecord record) {
+        if (!mRunning) {
+            return false;
+        }
+
+        if (mQueue.offer(record)) {
+            return true;
+        }
+
+        synchronized (this) {
+            mDroppedCnt++;
+        }
+
+        Output.log("Archive queue is full, dropped : " + record.url);
+        return false;
+    }
+
+    /**
+     * Stops accepting new records, writes the pending ones and closes the current segment.
+     */
+    public void close() {
+        mRunning = false;
+
+        try {
+            mWriterThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        System.out.println("Archived web pages: " + mWrittenCnt + ", dropped: " + mDroppedCnt);
+    }
+
+    /**
+     * Writer thread main loop.
+     * Compresses each queued record into a separate gzip member and appends it
+     * to the current segment, rolling to a new segment when the size limit is reached.
+     */
+    private void writeLoop() {
+        while (mRunning || !mQueue.isEmpty()) {
+            try {
+                WarcRecord record = mQueue.poll(Constants.ARCHIVE_POLL_WAIT_TIME_MS, TimeUnit.MILLISECONDS);
+
+                if (record == null) {
+                    continue;
+                }
+
+                byte[] data = compress(record);
+
+                if (mSegment == null || mSegmentBytes + data.length > Constants.ARCHIVE_SEGMENT_MAX_BYTES) {
+                    rollSegment();
+                }
+
+                mSegment.write(data);
+                mSegmentBytes += data.length;
+                mWrittenCnt++;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        closeSegment();
+    }
+
+    /**
+     * Serializes the given record into a WARC response record
+     * and compresses it as a standalone gzip member.
+     *
+     * @param record the record to compress
+     * @return the compressed record bytes
+     */
+    private byte[] compress(WarcRecord record) throws IOException {
+        byte[] block = record.toHttpBlock();
+
+        String header = "WARC/1.0\r\n" +
+                "WARC-Type: response\r\n" +
+                "WARC-Record-ID: <urn:uuid:" + UUID.randomUUID() + ">\r\n" +
+                "WARC-Date: " + Instant.ofEpochMilli(record.fetchTime) + "\r\n" +
+                "WARC-Target-URI: " + record.url + "\r\n" +
+                (record.charset == null ? "" : "WARC-Charset: " + record.charset + "\r\n") +
+                "Content-Type: application/http; msgtype=response\r\n" +
+                "Content-Length: " + block.length + "\r\n" +
+                "\r\n";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(block.length / 2);
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(header.getBytes(StandardCharsets.UTF_8));
+            gzip.write(block);
+            gzip.write("\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Closes the current segment (if any) and opens a new one.
+     */
+    private void rollSegment() throws IOException {
+        closeSegment();
+
+        mSegmentNumber++;
+        mSegmentBytes = 0;
+        mSegmentFile = new File(mDirectory, String.format("%s-%05d%s", mSegmentPrefix, mSegmentNumber, Constants.ARCHIVE_OPEN_SEGMENT_EXTENSION));
+        mSegment = new BufferedOutputStream(new FileOutputStream(mSegmentFile));
+    }
+
+    /**
+     * Closes the current segment and renames it so that it becomes visible to the readers.
+     */
+    private void closeSegment() {
+        if (mSegment == null) {
+            return;
+        }
+
+        try {
+            mSegment.close();
+
+            String name = mSegmentFile.getName();
+            name = name.substring(0, name.length() - Constants.ARCHIVE_OPEN_SEGMENT_EXTENSION.length());
+            mSegmentFile.renameTo(new File(mDirectory, name + Constants.ARCHIVE_SEGMENT_EXTENSION));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        mSegment = null;
+    }
+}
@@ -0,0 +1,286 @@
+package search.engine.crawler;
+
+import search.engine.utils.Constants;
+
+import java.util.concurrent.Semaphore;
+
+
+public class ConcurrencyController {
+
+    //
+    // Member variables
+    //
+
+    /**
+     * The permits semaphore limiting the number of active crawler threads.
+     */
+    private AdjustableSemaphore mPermits;
+
+    /**
+     * The concurrency limits.
+     */
+    private int mMaxLimit;
+    private volatile int mLimit;
+    private int mPeakLimit;
+
+    /**
+     * Statistics of the current observation window.
+     */
+    private final Object mStatsLock = new Object();
+    private long mWindowPagesCnt = 0;
+    private long mWindowFetchCnt = 0;
+    private long mWindowFetchErrorsCnt = 0;
+    private long mWindowFetchNanos = 0;
+    private long mWindowIndexCnt = 0;
+    private long mWindowIndexNanos = 0;
+
+    /**
+     * Reference latencies measured when the pipeline was not congested.
+     */
+    private double mBaseFetchLatency = -1;
+    private double mBaseIndexLatency = -1;
+    private double mLastThroughput = 0;
+    private int mDecisionsCnt = 0;
+
+    /**
+     * The controller thread.
+     */
+    private Thread mThread;
+    private volatile boolean mRunning;
+
+
+    /**
+     * Constructs a concurrency controller.
+     *
+     * @param maxLimit the maximum number of crawler threads allowed to be active at the same time
+     */
+    public ConcurrencyController(int maxLimit) {
+        mMaxLimit = Math.max(maxLimit, Constants.CONCURRENCY_MIN_LIMIT);
+        mLimit = mPeakLimit = Math.min(mMaxLimit, Constants.CONCURRENCY_INITIAL_LIMIT);
+        mPermits = new AdjustableSemaphore(mLimit);
+    }
+
+    /**
+     * Starts the controller thread that periodically adjusts the concurrency limit.
+     */
+    public void start() {
+        mRunning = true;
+
+        mThread = new Thread(() -> {
+            while (mRunning) {
+                try {
+                    Thread.sleep(Constants.CONCURRENCY_ADJUST_INTERVAL_MS);
+                    adjust();
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        });
+
+        mThread.setName("Concurrency-Controller-Thread");
+        mThread.setDaemon(true);
+        mThread.start();
+
+        System.out.println("Concurrency controller started with limit " + mLimit + " of " + mMaxLimit);
+    }
+
+    /**
+     * Stops the controller thread and prints a summary.
+     */
+    public void stop() {
+        mRunning = false;
+        mThread.interrupt();
+
+        System.out.println("Concurrency controller: final limit " + mLimit
+                + ", peak limit " + mPeakLimit + ", decisions " + mDecisionsCnt);
+    }
+
+    /**
+     * Blocks the calling crawler thread until it is allowed to be active.
+     */
+    public void acquire() throws InterruptedException {
+        mPermits.acquire();
+    }
+
+    /**
+     * Marks the calling crawler thread as inactive.
+     */
+    public void release() {
+        mPermits.release();
+    }
+
+    /**
+     * Records a finished web page processing.
+     */
+    public void recordPage() {
+        synchronized (mStatsLock) {
+            mWindowPagesCnt++;
+        }
+    }
+
+    /**
+     * Records a web page fetch.
+     *
+     * @param nanos   the fetch duration in nanoseconds
+     * @param success whether the fetch succeeded or not
+     */
+    public void recordFetch(long nanos, boolean success) {
+        synchronized (mStatsLock) {
+            mWindowFetchCnt++;
+            mWindowFetchNanos += nanos;
+
+            if (!success) {
+                mWindowFetchErrorsCnt++;
+            }
+        }
+    }
+
+    /**
+     * Records a web page indexing (i.e. database write).
+     *
+     * @param nanos the indexing duration in nanoseconds
+     */
+    public void recordIndex(long nanos) {
+        synchronized (mStatsLock) {
+            mWindowIndexCnt++;
+            mWindowIndexNanos += nanos;
+        }
+    }
+
+    /**
+     * Adjusts the concurrency limit according to the statistics of the last window
+     * using additive-increase/multiplicative-decrease.
+     * <p>
+     * The pipeline is considered congested when the fetch or the indexing latency exceeds
+     * its uncongested reference by a certain tolerance, or when too many fetches fail.
+     * In this case the limit is cut by a factor, otherwise it is increased by one
+     * as long as the throughput did not drop.
+     */
+    private void adjust() {
+        long pagesCnt, fetchCnt, errorsCnt, fetchNanos, indexCnt, indexNanos;
+
+        synchronized (mStatsLock) {
+            pagesCnt = mWindowPagesCnt;
+            fetchCnt = mWindowFetchCnt;
+            errorsCnt = mWindowFetchErrorsCnt;
+            fetchNanos = mWindowFetchNanos;
+            indexCnt = mWindowIndexCnt;
+            indexNanos = mWindowIndexNanos;
+
+            mWindowPagesCnt = mWindowFetchCnt = mWindowFetchErrorsCnt = 0;
+            mWindowFetchNanos = mWindowIndexCnt = mWindowIndexNanos = 0;
+        }
+
+        // Not enough observations to make a decision
+        if (fetchCnt == 0) {
+            return;
+        }
+
+        double throughput = pagesCnt * 1000.0 / Constants.CONCURRENCY_ADJUST_INTERVAL_MS;
+        double fetchLatency = fetchNanos / 1e6 / fetchCnt;
+        double indexLatency = (indexCnt == 0 ? 0 : indexNanos / 1e6 / indexCnt);
+        double errorRate = (double) errorsCnt / fetchCnt;
+
+        boolean congested = errorRate > Constants.CONCURRENCY_MAX_ERROR_RATE
+                || exceeds(fetchLatency, mBaseFetchLatency)
+                || (indexCnt > 0 && exceeds(indexLatency, mBaseIndexLatency));
+
+        int prvLimit = mLimit;
+        int newLimit = prvLimit;
+        String reason;
+
+        if (congested) {
+            newLimit = Math.max(Constants.CONCURRENCY_MIN_LIMIT, (int) (prvLimit * Constants.CONCURRENCY_DECREASE_FACTOR));
+            reason = "congested";
+        } else if (throughput >= mLastThroughput * Constants.CONCURRENCY_THROUGHPUT_TOLERANCE) {
+            newLimit = Math.min(mMaxLimit, prvLimit + 1);
+            reason = "healthy";
+        } else {
+            reason = "throughput dropped";
+        }
+
+        // Update the uncongested references, allowing them to slowly drift upwards
+        if (!congested) {
+            mBaseFetchLatency = updateReference(mBaseFetchLatency, fetchLatency);
+
+            if (indexCnt > 0) {
+                mBaseIndexLatency = updateReference(mBaseIndexLatency, indexLatency);
+            }
+        }
+
+        mLastThroughput = throughput;
+        setLimit(newLimit);
+
+        String report = String.format(
+                "Concurrency: %d -> %d (%s) throughput %.02f pages/sec, fetch %.0f ms, index %.0f ms, errors %.0f%%",
+                prvLimit, newLimit, reason, throughput, fetchLatency, indexLatency, errorRate * 100
+        );
+
+        Output.log(report);
+        System.out.println(report);
+    }
+
+    /**
+     * Checks whether the given latency exceeds the given reference latency by the allowed tolerance.
+     *
+     * @param latency   the measured latency
+     * @param reference the reference latency, or a negative number if not measured yet
+     * @return {@code true} if the latency exceeds the tolerance, {@code false} otherwise
+     */
+    private boolean exceeds(double latency, double reference) {
+        return reference > 0 && latency > reference * Constants.CONCURRENCY_LATENCY_TOLERANCE;
+    }
+
+    /**
+     * Returns the new reference latency after observing the given uncongested latency.
+     *
+     * @param reference the current reference latency, or a negative number if not measured yet
+     * @param latency   the measured latency
+     * @return the new reference latency
+     */
+    private double updateReference(double reference, double latency) {
+        if (reference < 0) {
+            return latency;
+        }
+
+        return Math.min(latency, reference * Constants.CONCURRENCY_REFERENCE_DRIFT);
+    }
+
+    /**
+     * Changes the number of permits to match the given limit.
+     *
+     * @param limit the new concurrency limit
+     */
+    private void setLimit(int limit) {
+        if (limit == mLimit) {
+            return;
+        }
+
+        if (limit > mLimit) {
+            mPermits.release(limit - mLimit);
+        } else {
+            mPermits.reducePermits(mLimit - limit);
+        }
+
+        mLimit = limit;
+        mPeakLimit = Math.max(mPeakLimit, limit);
+        mDecisionsCnt++;
+    }
+
+    /**
+     * Semaphore allowing the number of permits to be reduced.
+     */
+    private static class AdjustableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
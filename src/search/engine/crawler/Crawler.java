@@ -1,6 +1,10 @@
 package search.engine.crawler;
 
+import search.engine.archive.WarcWriter;
 import search.engine.indexer.Indexer;
+import search.engine.indexer.WebPageParser;
+import search.engine.utils.Constants;
+import search.engine.utils.Stemmer;
 import search.engine.utils.WebUtilities;
 
 import java.util.ArrayList;
@@ -15,6 +19,9 @@ public class Crawler {
     //
     private List<Thread> mCrawlerThreads;
     private RobotsTextManager mRobotsTextManager;
+    private ConcurrencyController mConcurrencyController;
+    private HostHealthTracker mHostHealthTracker;
+    private WarcWriter mArchiveWriter;
     private Indexer mIndexer;
 
 
@@ -31,17 +38,28 @@ public class Crawler {
     /**
      * Initializes the web crawler environment and starts
      * crawling.
+     * <p>
+     * The number of active crawler threads is adjusted automatically
+     * during crawling without exceeding the given number of threads.
      *
-     * @param threadsCnt the number of crawler threads to start
+     * @param threadsCnt the maximum number of crawler threads to start
      */
     public void start(int threadsCnt) {
         System.out.println("Start crawling...");
 
         Output.openFiles();
+        openArchive();
         Input.readSeed();
         calcVisitedUrlCount();
+        prefetchRobotsTexts();
+        mConcurrencyController = new ConcurrencyController(threadsCnt);
+        mConcurrencyController.start();
+        mHostHealthTracker = new HostHealthTracker();
         startThreads(threadsCnt);
         waitThreadsFinish();
+        mIndexer.flush();
+        mConcurrencyController.stop();
+        closeArchive();
         Output.closeFiles();
         clearData();
 
@@ -49,6 +67,10 @@ public class Crawler {
 
         System.out.println("Total fetched web pages: " + CrawlerThread.sTotalFetchedWebPagesCnt);
         System.out.println("Total indexed web pages: " + CrawlerThread.sTotalIndexedWebPagesCnt);
+        CrawlerThread.sURLPatternLearner.printStats();
+        CrawlerThread.sURLAliases.printStats();
+        WebPageParser.sOutLinksCache.printStats();
+        Stemmer.printStats();
     }
 
     /**
@@ -85,12 +107,45 @@ public class Crawler {
         }
     }
 
+    /**
+     * Starts fetching the robots text of the websites of the initially queued URLs
+     * in the background.
+     */
+    private void prefetchRobotsTexts() {
+        for (String url : CrawlerThread.sURLsQueue.inMemoryURLs()) {
+            mRobotsTextManager.prefetch(url);
+        }
+    }
+
+    /**
+     * Opens the raw web pages archive writer if archiving is enabled.
+     */
+    private void openArchive() {
+        if (!Constants.ARCHIVE_ENABLED) {
+            mArchiveWriter = null;
+            return;
+        }
+
+        mArchiveWriter = new WarcWriter(Constants.ARCHIVE_DATA_PATH);
+        mArchiveWriter.open();
+    }
+
+    /**
+     * Writes the pending archive records and closes the archive writer.
+     */
+    private void closeArchive() {
+        if (mArchiveWriter != null) {
+            mArchiveWriter.close();
+        }
+    }
+
     /**
      * Clears crawling data.
      */
     private void clearData() {
         CrawlerThread.sURLsQueue.clear();
         CrawlerThread.sVisitedURLs.clear();
+        CrawlerThread.sURLLastModified.clear();
         Output.clearFiles();
     }
 
@@ -103,7 +158,7 @@ public class Crawler {
         mCrawlerThreads = new ArrayList<>();
 
         for (int i = 0; i < count; i++) {
-            mCrawlerThreads.add(new CrawlerThread(mRobotsTextManager, mIndexer));
+            mCrawlerThreads.add(new CrawlerThread(mRobotsTextManager, mConcurrencyController, mHostHealthTracker, mArchiveWriter, mIndexer));
             mCrawlerThreads.get(i).setName("Crawler-Thread-" + String.valueOf(i + 1));
             mCrawlerThreads.get(i).start();
         }
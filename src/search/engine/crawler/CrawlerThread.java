@@ -1,16 +1,22 @@
 package search.engine.crawler;
 
+import org.jsoup.Connection;
 import org.jsoup.nodes.Document;
+import search.engine.archive.WarcRecord;
+import search.engine.archive.WarcWriter;
 import search.engine.indexer.Indexer;
 import search.engine.indexer.WebPage;
 import search.engine.indexer.WebPageParser;
 import search.engine.utils.Constants;
+import search.engine.utils.URLNormalizer;
 import search.engine.utils.WebUtilities;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class CrawlerThread extends Thread {
@@ -21,9 +27,29 @@ public class CrawlerThread extends Thread {
     public static int sTotalFetchedWebPagesCnt = 0;
     public static int sTotalIndexedWebPagesCnt = 0;
     public static int sWebPagesCnt = 0;
-    public static BlockingQueue<String> sURLsQueue = new LinkedBlockingDeque<>();
+    public static Frontier sURLsQueue = new Frontier(Constants.FRONTIER_DATA_PATH);
     public static ConcurrentSkipListSet<String> sVisitedURLs = new ConcurrentSkipListSet<>();
     public static ConcurrentHashMap<String, Integer> sBaseURLVisitedCnt = new ConcurrentHashMap<>();
+    public static ConcurrentHashMap<String, Long> sURLLastModified = new ConcurrentHashMap<>();
+    public static URLPatternLearner sURLPatternLearner = new URLPatternLearner();
+    public static URLAliasMap sURLAliases = new URLAliasMap();
+
+    /**
+     * The bounded thread pool fetching and parsing the websites sitemaps off the crawler threads,
+     * and the number of sitemaps waiting or being parsed.
+     */
+    private static ThreadPoolExecutor sSitemapExecutor = new ThreadPoolExecutor(
+            Constants.SITEMAP_FETCH_THREADS_COUNT, Constants.SITEMAP_FETCH_THREADS_COUNT,
+            0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Constants.SITEMAP_FETCH_QUEUE_SIZE),
+            runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setName("Sitemap-Fetch-Thread");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+    private static AtomicInteger sPendingSitemapsCnt = new AtomicInteger();
 
     private static final Object sLock = new Object();
     private static final Object sFetchedWebPagesCountLock = new Object();
@@ -33,17 +59,27 @@ public class CrawlerThread extends Thread {
     // Member variables
     //
     private RobotsTextManager mRobotsTextManager;
+    private ConcurrencyController mConcurrencyController;
+    private HostHealthTracker mHostHealthTracker;
+    private WarcWriter mArchiveWriter;
     private Indexer mIndexer;
 
 
     /**
      * Constructs a new crawler thread.
      *
-     * @param robotsMan robots text manger object to handle robots text parsing and retrieving
-     * @param indexer   an indexer object in order to store the crawled web pages
+     * @param robotsMan     robots text manger object to handle robots text parsing and retrieving
+     * @param controller    concurrency controller deciding when the thread is allowed to be active
+     * @param hostTracker   host health tracker deciding when the web pages hosts are allowed to be fetched
+     * @param archiveWriter an archive writer to store the raw fetched web pages, or null to disable archiving
+     * @param indexer       an indexer object in order to store the crawled web pages
      */
-    CrawlerThread(RobotsTextManager robotsMan, Indexer indexer) {
+    CrawlerThread(RobotsTextManager robotsMan, ConcurrencyController controller, HostHealthTracker hostTracker,
+                  WarcWriter archiveWriter, Indexer indexer) {
         mRobotsTextManager = robotsMan;
+        mConcurrencyController = controller;
+        mHostHealthTracker = hostTracker;
+        mArchiveWriter = archiveWriter;
         mIndexer = indexer;
     }
 
@@ -58,19 +94,45 @@ public class CrawlerThread extends Thread {
 
         while (true) {
             try {
+                // Wait until the concurrency controller allows this thread to be active
+                mConcurrencyController.acquire();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            try {
+                // Re-queue the URLs whose robots text became ready, the URLs of the hosts
+                // that became available again, and drop the URLs of the abandoned hosts
+                sURLsQueue.addAll(mRobotsTextManager.pollReadyURLs());
+                sURLsQueue.addAll(mHostHealthTracker.releaseDeferred());
+
+                for (String dropped : mHostHealthTracker.pollDropped()) {
+                    removeURLFromCnt(WebUtilities.getHostName(dropped));
+                    Output.log("Dropped due to unresponsive host : " + dropped);
+                }
+
                 // Pop the first URL in the queue
                 String url = sURLsQueue.poll(Constants.MAX_POLL_WAIT_TIME_MS, TimeUnit.MILLISECONDS);
 
-                // If no URL was returned then exit
+                // If no URL was returned then exit, unless there are still URLs waiting
+                // for their robots text or for their hosts to recover, or sitemaps being parsed
                 if (url == null) {
+                    if (mRobotsTextManager.hasPending() || mHostHealthTracker.hasDeferred()
+                            || sPendingSitemapsCnt.get() > 0) {
+                        continue;
+                    }
+
                     break;
                 }
 
                 // Start crawling the current web page
                 crawl(new URL(url));
+                mConcurrencyController.recordPage();
 
             } catch (Exception e) {
                 e.printStackTrace();
+            } finally {
+                mConcurrencyController.release();
             }
         }
 
@@ -94,11 +156,35 @@ public class CrawlerThread extends Thread {
 
         WebPage lastPage = mIndexer.getWebPageByURL(urlStr, Constants.FIELDS_FOR_CRAWLING);
 
+        // If the URL turned out to be an alias of another web page after being enqueued
+        // then enqueue its target instead without fetching it
+        if (sURLAliases.isAlias(urlStr)) {
+            removeDuplicate(lastPage, urlStr);
+            removeURLFromCnt(baseUrlStr);
+            enqueueOutLinks(new ArrayList<>(Collections.singletonList(urlStr)), null);
+            Output.log("Not fetched due to known alias : " + urlStr);
+            System.out.println("Not fetched due to known alias : " + urlStr);
+            return;
+        }
+
+        Long lastModified = sURLLastModified.get(urlStr);
+
+        // If the website sitemap states that the page was not modified since
+        // the last time it was fetched then skip fetching this page
+        if (lastModified != null && lastPage.fetchTime > 0 && lastModified <= lastPage.fetchTime) {
+            enqueueOutLinks(lastPage.outLinks, urlStr);
+            removeURLFromCnt(baseUrlStr);
+            Output.log("Not fetched due to sitemap lastmod : " + urlStr);
+            System.out.println("Not fetched due to sitemap lastmod : " + urlStr);
+            return;
+        }
+
         // If fetch skip count does not reach the limit then skip fetching this page
-        // and increment fetch skip count by one
-        if (lastPage.fetchSkipCount + 1 < lastPage.fetchSkipLimit) {
-            mIndexer.incrementFetchSkipCount(lastPage.id);
-            enqueueOutLinks(lastPage.outLinks);
+        // and increment fetch skip count by one.
+        // Pages known to be modified according to the website sitemap are fetched anyway
+        if (lastModified == null && lastPage.fetchSkipCount + 1 < lastPage.fetchSkipLimit) {
+            mIndexer.incrementFetchSkipCount(urlStr);
+            enqueueOutLinks(lastPage.outLinks, urlStr);
             removeURLFromCnt(baseUrlStr);
             Output.log("Not fetched due to skip limits : " + urlStr);
             System.out.println("Not fetched due to skip limits : " + urlStr);
@@ -110,6 +196,13 @@ public class CrawlerThread extends Thread {
         // Check robots text rules
         //
 
+        // If the robots text of the current web page is still being fetched
+        // then park the URL until it becomes ready instead of waiting for it
+        if (mRobotsTextManager.parkUntilReady(url)) {
+            Output.log("Parked until robots.txt is ready : " + urlStr);
+            return;
+        }
+
         // If the current web page URL is not allowed by robots text then
         // remove it from the indexer and continue
         if (!mRobotsTextManager.allowedURL(url)) {
@@ -120,21 +213,66 @@ public class CrawlerThread extends Thread {
             return;
         }
 
+        // Seed the queue with the website sitemaps declared in its robots text
+        for (String sitemap : mRobotsTextManager.pollSitemaps(baseUrlStr)) {
+            enqueueSitemap(sitemap);
+        }
+
         // ===========================================================================
         //
         // Fetch the content of the web page
         //
 
+        // Check whether the web page host is healthy enough to be fetched now
+        HostHealthTracker.Decision decision = mHostHealthTracker.tryBegin(baseUrlStr, urlStr);
+
+        if (decision == HostHealthTracker.Decision.DEFER) {
+            Output.log("Deferred due to slow or failing host : " + urlStr);
+            return;
+        }
+
+        if (decision == HostHealthTracker.Decision.DROP) {
+            removeURLFromCnt(baseUrlStr);
+            Output.log("Dropped due to unresponsive host : " + urlStr);
+            System.out.println("Dropped due to unresponsive host : " + urlStr);
+            return;
+        }
+
         // Fetch the current web page content
         Output.log("Fetching : " + urlStr);
         System.out.println("Fetching: " + urlStr);
-        Document doc = WebUtilities.fetchWebPage(urlStr);
+        long startTime = System.nanoTime();
+        List<String> redirects = new ArrayList<>();
+        Connection.Response response = WebUtilities.fetchWebPageResponse(urlStr, redirects);
+        long fetchNanos = System.nanoTime() - startTime;
+        Document doc = WebUtilities.parseWebPage(response);
+
+        // Timeouts, connection errors, server errors and throttling responses count against the host
+        boolean hostResponded = response != null
+                && response.statusCode() < 500
+                && response.statusCode() != Constants.HTTP_TOO_MANY_REQUESTS;
+
+        mHostHealthTracker.end(baseUrlStr, fetchNanos, hostResponded);
+        mConcurrencyController.recordFetch(fetchNanos, hostResponded);
 
         // Increment fetched web pages count
         synchronized (sFetchedWebPagesCountLock) {
             sTotalFetchedWebPagesCnt++;
         }
 
+        // Record the redirect chain as aliases of the final web page
+        String finalURLStr = urlStr;
+
+        for (String redirect : redirects) {
+            sURLAliases.put(finalURLStr, redirect);
+            finalURLStr = redirect;
+        }
+
+        // Hand the raw HTML response off to the archive writer
+        if (mArchiveWriter != null && doc != null) {
+            mArchiveWriter.write(new WarcRecord(finalURLStr, response));
+        }
+
         // If any errors occurred during connection then continue
         if (doc == null || doc.body() == null) {
             removeURLFromCnt(baseUrlStr);
@@ -143,15 +281,52 @@ public class CrawlerThread extends Thread {
             return;
         }
 
+        // ===========================================================================
+        //
+        // Resolve the web page aliases
+        //
+
+        // Record the canonical URL declared by the web page, only within the same host
+        String canonical = WebPageParser.extractCanonicalURL(doc);
+
+        if (canonical != null && baseUrlStr.equals(WebUtilities.getHostName(canonical))) {
+            sURLAliases.put(finalURLStr, canonical);
+        }
+
+        // If the fetched URL is an alias then index the web page under its target instead,
+        // unless the target was already visited
+        String target = sURLAliases.resolve(urlStr);
+
+        if (!target.equals(urlStr)) {
+            removeDuplicate(lastPage, urlStr);
+
+            if (!sVisitedURLs.add(target)) {
+                removeURLFromCnt(baseUrlStr);
+                Output.log("Alias of an already visited page : " + urlStr);
+                System.out.println("Alias of an already visited page : " + urlStr);
+                return;
+            }
+
+            url = WebUtilities.getURL(target);
+            lastPage = mIndexer.getWebPageByURL(target, Constants.FIELDS_FOR_CRAWLING);
+        }
+
         // ===========================================================================
         //
         // Process the current fetched web page
         //
 
+        // Learn the query parameters that do not change the content of this website
+        sURLPatternLearner.recordContent(urlStr, doc.body().text());
+
         List<String> outLinks = WebPageParser.extractOutLinks(doc);
 
         // Check if failed to index the current web page due to in appropriate page format
-        if (!mIndexer.indexWebPage(url, doc, outLinks, lastPage)) {
+        startTime = System.nanoTime();
+        boolean indexed = mIndexer.indexWebPage(url, doc, outLinks, lastPage);
+        mConcurrencyController.recordIndex(System.nanoTime() - startTime);
+
+        if (!indexed) {
             removeURLFromCnt(baseUrlStr);
             Output.log("Not English or not HTML page : " + urlStr);
             System.out.println("Not English or not HTML page : " + urlStr);
@@ -163,31 +338,136 @@ public class CrawlerThread extends Thread {
             sTotalIndexedWebPagesCnt++;
         }
 
-        enqueueOutLinks(outLinks);
-        Output.logVisitedURL(urlStr);
+        enqueueOutLinks(outLinks, target);
+        Output.logVisitedURL(target);
     }
 
     /**
      * Enqueues the given list of links into the crawlers shared queue.
      *
-     * @param outLinks the web page out links to enqueue
+     * @param outLinks  the web page out links to enqueue
+     * @param sourceURL the URL of the web page holding the links, or null if unknown
      */
-    private void enqueueOutLinks(List<String> outLinks) {
+    private void enqueueOutLinks(List<String> outLinks, String sourceURL) {
         // Randomly shuffle the out links
         Collections.shuffle(outLinks);
 
-        for (String url : outLinks) {
+        for (String link : outLinks) {
+            // Resolve known aliases, drop the session and irrelevant parameters, and reject crawler traps
+            String url = sURLPatternLearner.rewrite(sURLAliases.resolve(link));
+
+            if (url == null) {
+                continue;
+            }
+
             String baseURL = WebUtilities.getHostName(url);
 
             // Lock the resources and enqueue the link
             synchronized (sLock) {
-                if (crawlable(url, baseURL)) {
+                if (crawlable(url, baseURL) && sURLPatternLearner.admit(url, sourceURL)) {
                     addURL(url, baseURL);
                 }
             }
         }
     }
 
+    /**
+     * Submits the given sitemap to be parsed in the background off the crawler threads.
+     * The sitemap is skipped if the sitemaps thread pool queue is full.
+     *
+     * @param sitemapURL the sitemap URL string
+     */
+    private void enqueueSitemap(String sitemapURL) {
+        sPendingSitemapsCnt.incrementAndGet();
+
+        try {
+            sSitemapExecutor.execute(() -> {
+                try {
+                    parseSitemap(sitemapURL);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    sPendingSitemapsCnt.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sPendingSitemapsCnt.decrementAndGet();
+            Output.log("Sitemap skipped due to full queue : " + sitemapURL);
+        }
+    }
+
+    /**
+     * Parses the given sitemap and enqueues its web page URLs into the crawlers shared queue,
+     * recording their last modification times for further fetch skipping decisions.
+     * <p>
+     * Every sitemap file is fetched only if allowed by the robots text of its website
+     * and by the health of its host, the same as the web pages.
+     * Parsing stops as soon as the website reaches its crawling limit.
+     *
+     * @param sitemapURL the sitemap URL string
+     */
+    private void parseSitemap(String sitemapURL) {
+        SitemapParser.FetchGate gate = new SitemapParser.FetchGate() {
+            @Override
+            public boolean tryBegin(String url) {
+                URL sitemap = WebUtilities.getURL(url);
+
+                return sitemap != null
+                        && mRobotsTextManager.allowedURL(sitemap)
+                        && mHostHealthTracker.tryBegin(sitemap.getHost());
+            }
+
+            @Override
+            public void end(String url, long nanos, boolean success) {
+                mHostHealthTracker.end(WebUtilities.getHostName(url), nanos, success);
+            }
+        };
+
+        SitemapParser parser = new SitemapParser((loc, lastModified) -> {
+            URL url = WebUtilities.getURL(loc);
+
+            if (url == null || !WebUtilities.crawlable(loc)) {
+                return true;
+            }
+
+            String urlStr = sURLPatternLearner.rewrite(sURLAliases.resolve(URLNormalizer.normalize(url)));
+            String baseURL = url.getHost();
+
+            if (urlStr == null) {
+                return true;
+            }
+
+            if (lastModified >= 0) {
+                sURLLastModified.put(urlStr, lastModified);
+            }
+
+            synchronized (sLock) {
+                if (crawlable(urlStr, baseURL) && sURLPatternLearner.admit(urlStr, null)) {
+                    addURL(urlStr, baseURL);
+                }
+
+                return sWebPagesCnt < Constants.MAX_WEB_PAGES_COUNT
+                        && sBaseURLVisitedCnt.getOrDefault(baseURL, 0) < Constants.MAX_BASE_URL_COUNT;
+            }
+        }, gate);
+
+        parser.parse(sitemapURL);
+    }
+
+    /**
+     * Removes the given web page from the indexer if it was previously stored
+     * under a URL that turned out to be an alias.
+     *
+     * @param page     the web page stored under the alias URL
+     * @param aliasURL the alias URL string
+     */
+    private void removeDuplicate(WebPage page, String aliasURL) {
+        if (page.id != null) {
+            mIndexer.removeWebPage(page.id);
+            Output.log("Removed duplicate web page : " + aliasURL);
+        }
+    }
+
     /**
      * Adds the given URL to the queue and marks it as visited.
      * <p>
@@ -199,6 +479,7 @@ public class CrawlerThread extends Thread {
     private void addURL(String url, String baseURL) {
         sWebPagesCnt++;
         sURLsQueue.add(url);
+        mRobotsTextManager.prefetch(url);
         sVisitedURLs.add(url);
         sBaseURLVisitedCnt.put(
                 baseURL,
@@ -0,0 +1,463 @@
+package search.engine.crawler;
+
+import search.engine.utils.Constants;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+public class Frontier {
+
+    /**
+     * An on-disk overflow segment.
+     */
+    private static class Segment {
+        File file;
+        int urlsCnt;
+        boolean written = false;
+
+        Segment(File file, int urlsCnt) {
+            this.file = file;
+            this.urlsCnt = urlsCnt;
+        }
+    }
+
+    //
+    // Member variables
+    //
+
+    /**
+     * The in-memory window of the URLs to be crawled next.
+     */
+    private ArrayDeque<String> mHot = new ArrayDeque<>();
+
+    /**
+     * The overflow URLs not yet written to disk.
+     */
+    private List<String> mSpill = new ArrayList<>();
+
+    /**
+     * The on-disk overflow segments, oldest first, and the reader of the segment being refilled from.
+     */
+    private ArrayDeque<Segment> mSegments = new ArrayDeque<>();
+    private BufferedReader mSegmentReader;
+    private File mSegmentFile;
+    private int mSegmentRemainingCnt = 0;
+    private File mDirectory;
+    private int mSegmentsCnt = 0;
+
+    /**
+     * The number of URLs outside the in-memory window
+     * (i.e. spill buffer, being written, or on-disk segments).
+     */
+    private long mOverflowCnt = 0;
+    private long mGeneration = 0;
+
+    /**
+     * Synchronization variables.
+     */
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mNotEmpty = mLock.newCondition();
+    private final Condition mRefillNeeded = mLock.newCondition();
+
+
+    /**
+     * Constructs a crawl frontier spilling its overflow into the given directory,
+     * and starts its background refill thread.
+     *
+     * @param directory the directory path to store the overflow segments in
+     */
+    public Frontier(String directory) {
+        mDirectory = new File(directory);
+        deleteSegments();
+
+        Thread refillThread = new Thread(this::refillLoop);
+        refillThread.setName("Frontier-Refill-Thread");
+        refillThread.setDaemon(true);
+        refillThread.start();
+    }
+
+    /**
+     * Adds the given URL to the end of the frontier.
+     * <p>
+     * The URL is kept in memory while the in-memory window is not full
+     * and nothing is waiting on disk, otherwise it is spilled to disk.
+     *
+     * @param url the web page URL string to add
+     */
+    public void add(String url) {
+        List<String> toWrite = null;
+        Segment segment = null;
+        long generation;
+
+        mLock.lock();
+        try {
+            generation = mGeneration;
+
+            if (mOverflowCnt == 0 && mHot.size() < Constants.FRONTIER_HOT_CAPACITY) {
+                mHot.add(url);
+                mNotEmpty.signal();
+                return;
+            }
+
+            mSpill.add(url);
+            mOverflowCnt++;
+
+            if (mSpill.size() >= Constants.FRONTIER_SPILL_BATCH_SIZE) {
+                toWrite = mSpill;
+                mSpill = new ArrayList<>();
+
+                // Reserve the segment place now to keep the segments in spilling order
+                File file = new File(mDirectory, String.format("segment-%06d.txt", ++mSegmentsCnt));
+                segment = new Segment(file, toWrite.size());
+                mSegments.add(segment);
+            }
+
+            signalRefillIfNeeded();
+        } finally {
+            mLock.unlock();
+        }
+
+        // Write the spilled batch outside the lock so that other threads can still poll
+        if (toWrite != null) {
+            writeSegment(segment, toWrite, generation);
+        }
+    }
+
+    /**
+     * Adds all the given URLs to the end of the frontier.
+     *
+     * @param urls the web page URL strings to add
+     */
+    public void addAll(Collection<String> urls) {
+        for (String url : urls) {
+            add(url);
+        }
+    }
+
+    /**
+     * Retrieves and removes the first URL of the frontier,
+     * waiting up to the given time if necessary until a URL becomes available.
+     *
+     * @param timeout how long to wait before giving up
+     * @param unit    the time unit of the timeout
+     * @return the first URL of the frontier, or null if the waiting time elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+
+        mLock.lockInterruptibly();
+        try {
+            while (mHot.isEmpty()) {
+                signalRefillIfNeeded();
+
+                if (nanos <= 0) {
+                    return null;
+                }
+
+                nanos = mNotEmpty.awaitNanos(nanos);
+            }
+
+            String ret = mHot.poll();
+            signalRefillIfNeeded();
+            return ret;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the total number of URLs in the frontier, both in memory and on disk.
+     *
+     * @return the number of URLs in the frontier
+     */
+    public long size() {
+        mLock.lock();
+        try {
+            return mHot.size() + mOverflowCnt;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the frontier is empty.
+     *
+     * @return {@code true} if there are no URLs in the frontier, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns a copy of the URLs in the in-memory window.
+     *
+     * @return list of the next URLs to be crawled
+     */
+    public List<String> inMemoryURLs() {
+        mLock.lock();
+        try {
+            return new ArrayList<>(mHot);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Removes all the URLs of the frontier and deletes its on-disk segments.
+     */
+    public void clear() {
+        mLock.lock();
+        try {
+            mGeneration++;
+            mHot.clear();
+            mSpill.clear();
+            closeSegmentReader();
+            mSegments.clear();
+            mOverflowCnt = 0;
+            deleteSegments();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the refill thread if the in-memory window is running low
+     * and there are URLs outside it.
+     * <p>
+     * The function must be called while holding the lock.
+     */
+    private void signalRefillIfNeeded() {
+        if (mHot.size() < Constants.FRONTIER_REFILL_THRESHOLD && mOverflowCnt > 0) {
+            mRefillNeeded.signal();
+        }
+    }
+
+    /**
+     * The refill thread main loop.
+     * Moves URLs from the on-disk segments (oldest first), then from the spill buffer,
+     * into the in-memory window whenever it is running low.
+     * <p>
+     * The spill buffer holds the newest URLs, so it is only drained when no segment is pending,
+     * otherwise the refill waits for the oldest segment to be written.
+     */
+    private void refillLoop() {
+        while (true) {
+            int needed;
+            long generation;
+            List<String> batch = new ArrayList<>();
+            BufferedReader reader = null;
+
+            mLock.lock();
+            try {
+                while (mHot.size() >= Constants.FRONTIER_REFILL_THRESHOLD || !canRefill()) {
+                    mRefillNeeded.awaitUninterruptibly();
+                }
+
+                needed = Constants.FRONTIER_HOT_CAPACITY - mHot.size();
+                generation = mGeneration;
+
+                if (mSegmentReader == null && !mSegments.isEmpty()) {
+                    openSegmentReader(mSegments.poll());
+                    continue;
+                }
+
+                if (mSegmentReader != null) {
+                    reader = mSegmentReader;
+                } else {
+                    // Nothing on disk, take the newest URLs directly from the spill buffer
+                    int cnt = Math.min(needed, mSpill.size());
+                    batch.addAll(mSpill.subList(0, cnt));
+                    mSpill.subList(0, cnt).clear();
+                    moveToHot(batch);
+                    continue;
+                }
+            } finally {
+                mLock.unlock();
+            }
+
+            // Read from disk outside the lock
+            boolean exhausted = readSegment(reader, batch, needed);
+
+            mLock.lock();
+            try {
+                // The frontier was cleared meanwhile
+                if (generation != mGeneration) {
+                    continue;
+                }
+
+                mSegmentRemainingCnt -= batch.size();
+                moveToHot(batch);
+
+                if (exhausted) {
+                    closeSegmentReader();
+                }
+            } finally {
+                mLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the refill thread has URLs to take in order:
+     * either from an open or a completely written segment,
+     * or from the spill buffer when no segment is pending.
+     * <p>
+     * The function must be called while holding the lock.
+     *
+     * @return {@code true} if the in-memory window can be refilled, {@code false} otherwise
+     */
+    private boolean canRefill() {
+        if (mSegmentReader != null) {
+            return true;
+        }
+
+        if (!mSegments.isEmpty()) {
+            return mSegments.peek().written;
+        }
+
+        return !mSpill.isEmpty();
+    }
+
+    /**
+     * Moves the given batch of URLs into the in-memory window.
+     * <p>
+     * The function must be called while holding the lock.
+     *
+     * @param batch list of URLs taken from outside the in-memory window
+     */
+    private void moveToHot(List<String> batch) {
+        mHot.addAll(batch);
+        mOverflowCnt -= batch.size();
+
+        if (!batch.isEmpty()) {
+            mNotEmpty.signalAll();
+        }
+    }
+
+    /**
+     * Reads up to the given number of URLs from the given segment reader.
+     *
+     * @param reader the segment reader
+     * @param batch  list to be filled with the read URLs
+     * @param count  the maximum number of URLs to read
+     * @return {@code true} if the segment reached its end, {@code false} otherwise
+     */
+    private boolean readSegment(BufferedReader reader, List<String> batch, int count) {
+        try {
+            String url;
+
+            while (batch.size() < count) {
+                if ((url = reader.readLine()) == null) {
+                    return true;
+                }
+
+                batch.add(url);
+            }
+
+            return false;
+        } catch (IOException e) {
+            //e.printStackTrace();
+            return true;
+        }
+    }
+
+    /**
+     * Sorts the given spilled URLs and writes them into the given reserved on-disk segment.
+     *
+     * @param segment    the reserved on-disk segment
+     * @param urls       list of spilled URLs
+     * @param generation the frontier generation when the URLs were spilled
+     */
+    private void writeSegment(Segment segment, List<String> urls, long generation) {
+        Collections.sort(urls);
+        File file = segment.file;
+
+        mDirectory.mkdirs();
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            for (String url : urls) {
+                writer.println(url);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        mLock.lock();
+        try {
+            if (generation != mGeneration) {
+                file.delete();
+                return;
+            }
+
+            // The URLs that could not be written are forgotten when the segment reader is closed
+            segment.written = true;
+            signalRefillIfNeeded();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Opens the given segment for refilling.
+     * <p>
+     * The function must be called while holding the lock.
+     *
+     * @param segment the on-disk segment
+     */
+    private void openSegmentReader(Segment segment) {
+        try {
+            mSegmentReader = new BufferedReader(new FileReader(segment.file));
+            mSegmentFile = segment.file;
+            mSegmentRemainingCnt = segment.urlsCnt;
+        } catch (FileNotFoundException e) {
+            // The segment URLs are lost
+            e.printStackTrace();
+            mOverflowCnt -= segment.urlsCnt;
+        }
+    }
+
+    /**
+     * Closes and deletes the segment being refilled from.
+     * <p>
+     * The function must be called while holding the lock.
+     */
+    private void closeSegmentReader() {
+        if (mSegmentReader == null) {
+            return;
+        }
+
+        // Forget about the URLs that could not be read (if any)
+        mOverflowCnt -= mSegmentRemainingCnt;
+        mSegmentRemainingCnt = 0;
+
+        try {
+            mSegmentReader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        mSegmentFile.delete();
+        mSegmentReader = null;
+        mSegmentFile = null;
+    }
+
+    /**
+     * Deletes all the on-disk segments in the frontier directory.
+     */
+    private void deleteSegments() {
+        File[] files = mDirectory.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package search.engine.crawler;
+
+import search.engine.utils.Constants;
+
+import java.util.*;
+
+
+public class HostHealthTracker {
+
+    /**
+     * The decision taken for a web page URL that is about to be fetched.
+     */
+    public enum Decision {
+        /**
+         * The web page can be fetched now.
+         */
+        FETCH,
+
+        /**
+         * The web page host is slow or failing, the URL is parked until the host becomes available.
+         */
+        DEFER,
+
+        /**
+         * The web page host is unresponsive and abandoned, the URL should be dropped.
+         */
+        DROP
+    }
+
+    /**
+     * Health statistics of a single host.
+     */
+    private static class HostStats {
+        double latency = -1;
+        int consecutiveFailuresCnt = 0;
+        int tripsCnt = 0;
+        int inFlightCnt = 0;
+        long parkedUntil = 0;
+        long lastReleaseTime = 0;
+        boolean demoted = false;
+        boolean abandoned = false;
+        Deque<String> deferredURLs = new ArrayDeque<>();
+    }
+
+    //
+    // Member variables
+    //
+    private Map<String, HostStats> mHosts = new HashMap<>();
+    private List<String> mDroppedURLs = new ArrayList<>();
+    private int mDeferredCnt = 0;
+
+
+    /**
+     * Decides whether the given web page URL can be fetched now according to its host health.
+     * <p>
+     * Healthy hosts are fetched normally. Slow (demoted) hosts and hosts being probed after a cool-down
+     * are limited to a single in-flight request. Failing (parked) hosts are not fetched
+     * until their cool-down ends. Deferred URLs are kept by the tracker until released.
+     * <p>
+     * Every {@code FETCH} decision must be followed by a call to {@code end}.
+     *
+     * @param host the web page host name
+     * @param url  the web page URL string
+     * @return the fetching decision
+     */
+    public synchronized Decision tryBegin(String host, String url) {
+        HostStats stats = getStats(host);
+
+        if (stats.abandoned) {
+            return Decision.DROP;
+        }
+
+        if (parked(stats) || (restricted(stats) && stats.inFlightCnt > 0)) {
+            stats.deferredURLs.add(url);
+            mDeferredCnt++;
+            return Decision.DEFER;
+        }
+
+        stats.inFlightCnt++;
+        return Decision.FETCH;
+    }
+
+    /**
+     * Decides whether a background request (e.g. a sitemap fetch) can be sent to the given host now,
+     * using the same health rules as {@code tryBegin}, but without deferring it.
+     * <p>
+     * Every {@code true} result must be followed by a call to {@code end}.
+     *
+     * @param host the host name
+     * @return {@code true} if the request can be sent now, {@code false} if it should be skipped
+     */
+    public synchronized boolean tryBegin(String host) {
+        HostStats stats = getStats(host);
+
+        if (stats.abandoned || parked(stats) || (restricted(stats) && stats.inFlightCnt > 0)) {
+            return false;
+        }
+
+        stats.inFlightCnt++;
+        return true;
+    }
+
+    /**
+     * Records the result of a web page fetch and updates the host health state.
+     *
+     * @param host    the web page host name
+     * @param nanos   the fetch duration in nanoseconds
+     * @param success whether the host responded successfully or not
+     */
+    public synchronized void end(String host, long nanos, boolean success) {
+        HostStats stats = getStats(host);
+        double latency = nanos / 1e6;
+
+        stats.inFlightCnt--;
+        stats.latency = (stats.latency < 0 ? latency :
+                Constants.HOST_LATENCY_SMOOTHING * latency + (1 - Constants.HOST_LATENCY_SMOOTHING) * stats.latency);
+
+        if (success) {
+            // Close the circuit
+            if (stats.parkedUntil > 0) {
+                Output.log("Host recovered : " + host);
+            }
+
+            stats.consecutiveFailuresCnt = 0;
+            stats.tripsCnt = 0;
+            stats.parkedUntil = 0;
+        } else if (stats.parkedUntil == 0) {
+            stats.consecutiveFailuresCnt++;
+
+            // Trip the circuit if too many consecutive failures
+            if (stats.consecutiveFailuresCnt >= Constants.HOST_MAX_CONSECUTIVE_FAILURES) {
+                trip(host, stats);
+            }
+        } else if (System.currentTimeMillis() - nanos / 1000000 >= stats.parkedUntil) {
+            // Trip the circuit again if the cool-down probe failed,
+            // the failures of the requests started before the cool-down ended are already accounted for
+            trip(host, stats);
+        }
+
+        boolean slow = stats.latency > Constants.HOST_SLOW_LATENCY_MS;
+
+        if (slow != stats.demoted) {
+            stats.demoted = slow;
+            Output.log((slow ? "Host demoted : " : "Host promoted : ") + host + String.format(" (%.0f ms)", stats.latency));
+        }
+    }
+
+    /**
+     * Returns the deferred URLs of the hosts that became available again.
+     * <p>
+     * All the deferred URLs of a healthy host are released, while restricted hosts
+     * get a single URL released at a time.
+     *
+     * @return list of web page URLs to be re-queued
+     */
+    public synchronized List<String> releaseDeferred() {
+        List<String> ret = new ArrayList<>();
+
+        if (mDeferredCnt == 0) {
+            return ret;
+        }
+
+        long now = System.currentTimeMillis();
+
+        for (HostStats stats : mHosts.values()) {
+            if (stats.deferredURLs.isEmpty() || parked(stats)) {
+                continue;
+            }
+
+            if (!restricted(stats)) {
+                ret.addAll(stats.deferredURLs);
+                stats.deferredURLs.clear();
+            } else if (stats.inFlightCnt == 0 && now - stats.lastReleaseTime >= Constants.HOST_RESTRICTED_RELEASE_INTERVAL_MS) {
+                ret.add(stats.deferredURLs.poll());
+                stats.lastReleaseTime = now;
+            }
+        }
+
+        mDeferredCnt -= ret.size();
+        return ret;
+    }
+
+    /**
+     * Returns and clears the URLs dropped due to abandoning their hosts.
+     *
+     * @return list of dropped web page URLs
+     */
+    public synchronized List<String> pollDropped() {
+        List<String> ret = mDroppedURLs;
+        mDroppedURLs = new ArrayList<>();
+        return ret;
+    }
+
+    /**
+     * Checks whether there are deferred URLs waiting for their hosts.
+     *
+     * @return {@code true} if any URL is deferred, {@code false} otherwise
+     */
+    public synchronized boolean hasDeferred() {
+        return mDeferredCnt > 0;
+    }
+
+    /**
+     * Trips the circuit of the given host by parking it for an exponentially growing cool-down,
+     * or abandons it if it was tripped too many times.
+     *
+     * @param host  the host name
+     * @param stats the host statistics
+     */
+    private void trip(String host, HostStats stats) {
+        stats.tripsCnt++;
+        stats.consecutiveFailuresCnt = 0;
+
+        if (stats.tripsCnt > Constants.HOST_MAX_TRIPS) {
+            stats.abandoned = true;
+            mDroppedURLs.addAll(stats.deferredURLs);
+            mDeferredCnt -= stats.deferredURLs.size();
+            stats.deferredURLs.clear();
+            Output.log("Host abandoned : " + host);
+            return;
+        }
+
+        long coolDown = Math.min(
+                Constants.HOST_MAX_COOL_DOWN_MS,
+                Constants.HOST_COOL_DOWN_MS << (stats.tripsCnt - 1)
+        );
+
+        stats.parkedUntil = System.currentTimeMillis() + coolDown;
+        Output.log("Host parked for " + coolDown + " ms : " + host);
+    }
+
+    /**
+     * Checks whether the given host is parked at the moment.
+     *
+     * @param stats the host statistics
+     * @return {@code true} if the host cool-down did not end yet, {@code false} otherwise
+     */
+    private boolean parked(HostStats stats) {
+        return System.currentTimeMillis() < stats.parkedUntil;
+    }
+
+    /**
+     * Checks whether the given host is limited to a single in-flight request,
+     * either because it is slow or because it is being probed after a cool-down.
+     *
+     * @param stats the host statistics
+     * @return {@code true} if the host is restricted, {@code false} otherwise
+     */
+    private boolean restricted(HostStats stats) {
+        return stats.demoted || stats.parkedUntil > 0;
+    }
+
+    /**
+     * Returns the statistics object of the given host, creating a new one if not exist.
+     *
+     * @param host the host name
+     * @return the host statistics
+     */
+    private HostStats getStats(String host) {
+        return mHosts.computeIfAbsent(host, k -> new HostStats());
+    }
+}
@@ -5,9 +5,7 @@ import search.engine.utils.Constants;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 
@@ -43,7 +41,7 @@ public class Input {
     public static void readPreviousData() {
         try {
             CrawlerThread.sVisitedURLs.addAll(readVisitedURLs());
-            CrawlerThread.sURLsQueue.addAll(readURLs());
+            readURLs();
         } catch (FileNotFoundException e) {
             System.out.println(e.getMessage());
         } catch (Exception e) {
@@ -70,23 +68,19 @@ public class Input {
     }
 
     /**
-     * Reads the URLs to be crawled.
-     *
-     * @return a list of URLs to be crawled
+     * Reads the URLs to be crawled and streams them into the URLs queue.
      */
-    private static List<String> readURLs() throws Exception {
-        List<String> ret = new ArrayList<>();
+    private static void readURLs() throws Exception {
         BufferedReader file = new BufferedReader(new FileReader(Constants.URLS_FILE_NAME));
         String url;
 
         while ((url = file.readLine()) != null) {
             if (!CrawlerThread.sVisitedURLs.contains(url)) {
-                ret.add(url);
+                CrawlerThread.sURLsQueue.add(url);
                 CrawlerThread.sVisitedURLs.add(url);
             }
         }
 
         file.close();
-        return ret;
     }
 }
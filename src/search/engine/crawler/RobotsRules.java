@@ -11,11 +11,22 @@ public class RobotsRules {
      */
     public List<String> rules;
 
+    /**
+     * List of sitemap URLs declared in the robots text
+     * that are not processed yet.
+     */
+    public List<String> sitemaps;
+
     /**
      * Status flag to indicate whether the rules are fetched or not.
      */
     public boolean status;
 
+    /**
+     * List of web page URLs waiting for the rules to be fetched.
+     */
+    public List<String> parkedURLs;
+
     /**
      * Constructor.
      *
@@ -23,6 +34,8 @@ public class RobotsRules {
      */
     RobotsRules(boolean initStatus) {
         rules = new ArrayList<>();
+        sitemaps = new ArrayList<>();
+        parkedURLs = new ArrayList<>();
         status = initStatus;
     }
 }
@@ -4,8 +4,12 @@ import search.engine.utils.Constants;
 import search.engine.utils.WebUtilities;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class RobotsTextManager {
@@ -16,92 +20,208 @@ public class RobotsTextManager {
     private ConcurrentHashMap<String, RobotsRules> mWebsiteRules = new ConcurrentHashMap<>();
     private String mUserAgent = Constants.DEFAULT_USER_AGENT;
 
+    /**
+     * The robots text prefetching thread pool.
+     */
+    private ExecutorService mPrefetchExecutor;
+    private AtomicInteger mPendingFetchesCnt = new AtomicInteger();
+
+    /**
+     * The parked web page URLs whose robots text became ready.
+     */
+    private List<String> mReadyURLs = new ArrayList<>();
+
+
+    /**
+     * Constructor.
+     */
+    public RobotsTextManager() {
+        mPrefetchExecutor = Executors.newFixedThreadPool(Constants.ROBOTS_PREFETCH_THREADS_COUNT, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("Robots-Prefetch-Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts fetching the robots text of the given web page URL in the background
+     * if it was not fetched or requested before.
+     * <p>
+     * To be called as soon as a new web page is admitted to the crawling queue,
+     * so that the robots text is mostly ready by the time the web page is crawled.
+     *
+     * @param urlStr a web page URL string
+     */
+    public void prefetch(String urlStr) {
+        URL url = WebUtilities.getURL(urlStr);
+
+        if (url != null) {
+            prefetch(url, url.getHost());
+        }
+    }
+
+    /**
+     * Parks the given web page URL if the robots text of its website is not fetched yet.
+     * Parked URLs are returned by {@code pollReadyURLs} once the robots text becomes ready.
+     * <p>
+     * This function never blocks waiting for the robots text.
+     *
+     * @param url a web page URL object
+     * @return {@code true} if the URL was parked, {@code false} if the robots text is ready
+     */
+    public boolean parkUntilReady(URL url) {
+        String baseURL = url.getHost();
+        RobotsRules rules = prefetch(url, baseURL);
+
+        synchronized (rules) {
+            if (rules.status) {
+                return false;
+            }
+
+            rules.parkedURLs.add(url.toString());
+            return true;
+        }
+    }
+
+    /**
+     * Returns and clears the parked web page URLs whose robots text became ready.
+     *
+     * @return list of web page URLs to be re-queued
+     */
+    public List<String> pollReadyURLs() {
+        synchronized (mReadyURLs) {
+            List<String> ret = new ArrayList<>(mReadyURLs);
+            mReadyURLs.clear();
+            return ret;
+        }
+    }
+
+    /**
+     * Checks whether there are robots text fetches in progress or parked URLs
+     * waiting to be re-queued.
+     *
+     * @return {@code true} if any URL is still waiting for its robots text, {@code false} otherwise
+     */
+    public boolean hasPending() {
+        synchronized (mReadyURLs) {
+            return mPendingFetchesCnt.get() > 0 || !mReadyURLs.isEmpty();
+        }
+    }
 
     /**
      * Checks whether the given URL is allowed to be crawled.
+     * <p>
+     * The robots text of the given URL must be ready (see {@code parkUntilReady}).
      *
      * @param url a web page URL object
      * @return {@code true} if the given URL is allowed to be crawled, {@code false} otherwise
      */
     public boolean allowedURL(URL url) {
-        String baseURL = url.getHost();
+        RobotsRules rules = mWebsiteRules.get(url.getHost());
 
-        // Prepare robots text file of the given website
-        prepareRobotsText(url, baseURL);
+        if (rules == null) {
+            return true;
+        }
 
         // Match the given URL with the disallowed rules
         boolean disallowed = RobotsTextParser.matchRules(
                 url.toString(),
-                mWebsiteRules.get(baseURL).rules
+                rules.rules
         );
 
         return !disallowed;
     }
 
     /**
-     * Prepares the robots text file of the given web page URL.
-     * If the robots text was already fetched then return.
-     * Else, fetch the robots text and store it for further usage.
-     * <p>
-     * If the function was called from another thread while the robots text
-     * was being fetched then the thread will wait until the robots text get fetched.
+     * Returns the sitemap URLs declared in the robots text of the given website
+     * that are not returned before.
+     * So each sitemap is returned only once.
      *
-     * @param url     the web page URL object to prepare its robots text
      * @param baseURL the web page base URL string
+     * @return list of sitemap URLs to be processed
      */
-    private void prepareRobotsText(URL url, String baseURL) {
-        // Atomic insert & get from the map
-        RobotsRules rules = mWebsiteRules.putIfAbsent(baseURL, new RobotsRules(false));
+    public List<String> pollSitemaps(String baseURL) {
+        RobotsRules rules = mWebsiteRules.get(baseURL);
 
-        //
-        // If the robots text was not fetched before then go fetch and parse it,
-        // and mark that the robots text is being fetched so that no other threads do the same job
-        //
         if (rules == null) {
-            Output.log("Fetching robots.txt of " + url.toString());
-
-            updateRules(
-                    baseURL,
-                    // Parse robots text and extract only the disallowed rules of the current user agent
-                    RobotsTextParser.parse(WebUtilities.fetchRobotsText(url), mUserAgent)
-            );
-            return;
+            return new ArrayList<>();
         }
 
-        //
-        // The robots text is already fetched,
-        // or it is being fetched by another thread at the mean time
-        //
         synchronized (rules) {
-            while (!rules.status) {
-                // The robots.txt is still not ready
-                try {
-                    Output.log("Waiting for robots.txt : " + baseURL);
-                    rules.wait();
-                    Output.log("Woke up and " + (rules.status ? "did" : "didn't") + " find robots.txt : " + baseURL);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+            List<String> ret = rules.sitemaps;
+            rules.sitemaps = new ArrayList<>();
+            return ret;
         }
     }
 
+    /**
+     * Submits a background task to fetch the robots text of the given web page URL
+     * if it was not fetched or requested before.
+     *
+     * @param url     the web page URL object to prepare its robots text
+     * @param baseURL the web page base URL string
+     * @return the robots rules object of the given website
+     */
+    private RobotsRules prefetch(URL url, String baseURL) {
+        // Atomic insert & get from the map
+        RobotsRules newRules = new RobotsRules(false);
+        RobotsRules rules = mWebsiteRules.putIfAbsent(baseURL, newRules);
+
+        // The robots text is already fetched, or it is being fetched at the mean time
+        if (rules != null) {
+            return rules;
+        }
+
+        mPendingFetchesCnt.incrementAndGet();
+
+        mPrefetchExecutor.execute(() -> {
+            List<String> disallowRules = new ArrayList<>();
+            List<String> sitemaps = new ArrayList<>();
+
+            try {
+                Output.log("Fetching robots.txt of " + url.toString());
+
+                List<String> robotsTxt = WebUtilities.fetchRobotsText(url);
+
+                // Parse robots text and extract only the disallowed rules of the current user agent
+                disallowRules = RobotsTextParser.parse(robotsTxt, mUserAgent);
+                sitemaps = RobotsTextParser.parseSitemaps(robotsTxt);
+            } catch (Exception e) {
+                // Treat the website as having no rules, rather than stranding its parked URLs
+                Output.log("Failed to process robots.txt of " + baseURL + " : " + e);
+            } finally {
+                updateRules(baseURL, disallowRules, sitemaps);
+            }
+        });
+
+        return newRules;
+    }
+
     /**
      * Updates the robots rules of the given URL
      * and set the rules status to true to indicate that the rules was inserted
-     * then notify the waiting threads.
+     * then release the parked URLs of this website.
      *
-     * @param baseURL the web page base URL string to be updated
-     * @param rules   list of new robots rules
+     * @param baseURL  the web page base URL string to be updated
+     * @param rules    list of new robots rules
+     * @param sitemaps list of the sitemap URLs declared in the robots text
      */
-    private void updateRules(String baseURL, List<String> rules) {
+    private void updateRules(String baseURL, List<String> rules, List<String> sitemaps) {
         RobotsRules robotsRules = mWebsiteRules.get(baseURL);
 
         synchronized (robotsRules) {
             robotsRules.rules = rules;
+            robotsRules.sitemaps = sitemaps;
             robotsRules.status = true;
-            robotsRules.notifyAll();
-            Output.log("Notifying about robots.txt : " + baseURL);
+
+            synchronized (mReadyURLs) {
+                mReadyURLs.addAll(robotsRules.parkedURLs);
+                mPendingFetchesCnt.decrementAndGet();
+            }
+
+            robotsRules.parkedURLs.clear();
+            Output.log("Robots.txt is ready : " + baseURL);
         }
     }
 }
@@ -45,6 +45,32 @@ public class RobotsTextParser {
         return parsedRobotTxt;
     }
 
+    /**
+     * Parse the given robots text and returns the sitemap URLs
+     * declared by the {@code Sitemap:} directives.
+     * <p>
+     * Sitemap directives are independent of the user agent lines.
+     *
+     * @param robotsTxt a list of strings of a robots text
+     * @return list of the declared sitemap URLs
+     */
+    public static List<String> parseSitemaps(List<String> robotsTxt) {
+        List<String> sitemaps = new ArrayList<>();
+
+        for (String line : robotsTxt) {
+            // Keep the original case as URLs paths are case sensitive
+            if (line.toLowerCase().startsWith("sitemap:")) {
+                String url = line.substring(line.indexOf(":") + 1).trim();
+
+                if (url.length() > 0) {
+                    sitemaps.add(url);
+                }
+            }
+        }
+
+        return sitemaps;
+    }
+
     /**
      * Checks whether the given url matches any of the the given rules.
      *
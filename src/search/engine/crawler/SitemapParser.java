@@ -0,0 +1,228 @@
+package search.engine.crawler;
+
+import search.engine.utils.Constants;
+import search.engine.utils.WebUtilities;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class SitemapParser {
+
+    /**
+     * Callback interface to receive the parsed sitemap entries.
+     */
+    public interface EntryHandler {
+
+        /**
+         * Called for every web page URL found in the sitemap.
+         *
+         * @param url          the web page URL string
+         * @param lastModified the web page last modification time in milliseconds, or -1 if unknown
+         * @return {@code true} to continue parsing, {@code false} to stop
+         */
+        boolean onEntry(String url, long lastModified);
+    }
+
+    /**
+     * Callback interface to decide whether a sitemap can be fetched,
+     * and to report the result of its fetch.
+     */
+    public interface FetchGate {
+
+        /**
+         * Called before fetching every sitemap file.
+         * Every {@code true} result must be followed by a call to {@code end}.
+         *
+         * @param sitemapURL the sitemap URL string
+         * @return {@code true} to fetch the sitemap, {@code false} to skip it
+         */
+        boolean tryBegin(String sitemapURL);
+
+        /**
+         * Called after the sitemap fetch response is received or failed.
+         *
+         * @param sitemapURL the sitemap URL string
+         * @param nanos      the fetch duration in nanoseconds
+         * @param success    whether the host responded successfully or not
+         */
+        void end(String sitemapURL, long nanos, boolean success);
+    }
+
+    //
+    // Member variables
+    //
+    private EntryHandler mHandler;
+    private FetchGate mGate;
+    private XMLInputFactory mFactory;
+    private int mSitemapsCnt = 0;
+    private int mEntriesCnt = 0;
+    private boolean mStopped = false;
+
+
+    /**
+     * Constructs a sitemap parser.
+     *
+     * @param handler the handler to receive the parsed entries
+     */
+    public SitemapParser(EntryHandler handler) {
+        this(handler, null);
+    }
+
+    /**
+     * Constructs a sitemap parser fetching the sitemaps through the given gate.
+     *
+     * @param handler the handler to receive the parsed entries
+     * @param gate    the gate deciding whether every sitemap can be fetched, or null to fetch all of them
+     */
+    public SitemapParser(EntryHandler handler, FetchGate gate) {
+        mHandler = handler;
+        mGate = gate;
+
+        mFactory = XMLInputFactory.newInstance();
+        mFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        mFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Fetches and parses the given sitemap (or sitemap index) URL.
+     * <p>
+     * The sitemap is parsed as a stream, so entries are passed to the handler
+     * while being downloaded without loading the whole sitemap in memory.
+     * Sitemap indexes are followed up to {@code MAX_SITEMAPS_PER_WEBSITE} sitemaps.
+     *
+     * @param sitemapURL the sitemap URL string
+     */
+    public void parse(String sitemapURL) {
+        List<String> children = parseSitemap(sitemapURL);
+
+        for (String child : children) {
+            if (mStopped || mSitemapsCnt >= Constants.MAX_SITEMAPS_PER_WEBSITE) {
+                break;
+            }
+
+            parse(child);
+        }
+    }
+
+    /**
+     * Parses a single sitemap file.
+     *
+     * @param sitemapURL the sitemap URL string
+     * @return list of child sitemap URLs in case of sitemap index
+     */
+    private List<String> parseSitemap(String sitemapURL) {
+        List<String> children = new ArrayList<>();
+
+        mSitemapsCnt++;
+
+        if (mGate != null && !mGate.tryBegin(sitemapURL)) {
+            Output.log("Sitemap skipped : " + sitemapURL);
+            return children;
+        }
+
+        Output.log("Fetching sitemap : " + sitemapURL);
+
+        List<Integer> statusCodes = new ArrayList<>();
+        long startTime = System.nanoTime();
+        InputStream input = WebUtilities.openWebResource(sitemapURL, statusCodes);
+
+        // Server errors and throttling responses count against the host, as with the web pages
+        if (mGate != null) {
+            boolean success = !statusCodes.isEmpty()
+                    && statusCodes.get(0) < 500
+                    && statusCodes.get(0) != Constants.HTTP_TOO_MANY_REQUESTS;
+
+            mGate.end(sitemapURL, System.nanoTime() - startTime, success);
+        }
+
+        if (input == null) {
+            return children;
+        }
+
+        XMLStreamReader reader = null;
+
+        try {
+            reader = mFactory.createXMLStreamReader(input);
+
+            String loc = null;
+            long lastModified = -1;
+
+            while (reader.hasNext() && !mStopped) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String tag = reader.getLocalName();
+
+                    if (tag.equals("url") || tag.equals("sitemap")) {
+                        loc = null;
+                        lastModified = -1;
+                    } else if (tag.equals("loc")) {
+                        loc = reader.getElementText().trim();
+                    } else if (tag.equals("lastmod")) {
+                        lastModified = parseDate(reader.getElementText().trim());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && loc != null) {
+                    String tag = reader.getLocalName();
+
+                    if (tag.equals("sitemap")) {
+                        children.add(loc);
+                    } else if (tag.equals("url")) {
+                        mStopped = (++mEntriesCnt >= Constants.MAX_SITEMAP_ENTRIES)
+                                || !mHandler.onEntry(loc, lastModified);
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            Output.log("Invalid sitemap " + sitemapURL + " : " + e.getMessage());
+        } finally {
+            close(reader, input);
+        }
+
+        return children;
+    }
+
+    /**
+     * Closes the given XML reader and its input stream.
+     *
+     * @param reader the XML reader to close
+     * @param input  the input stream to close
+     */
+    private void close(XMLStreamReader reader, InputStream input) {
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+
+            input.close();
+        } catch (Exception e) {
+            //e.printStackTrace();
+        }
+    }
+
+    /**
+     * Parses the given W3C date time string (e.g. 2018-04-25 or 2018-04-25T10:00:00+02:00).
+     *
+     * @param date the date time string
+     * @return the time in milliseconds, or -1 if invalid date was given
+     */
+    private static long parseDate(String date) {
+        try {
+            if (date.length() == 10) {
+                return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+
+            return OffsetDateTime.parse(date).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package search.engine.crawler;
+
+import search.engine.utils.Constants;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class URLAliasMap {
+
+    //
+    // Member variables
+    //
+
+    /**
+     * Map from an alias URL (i.e. redirecting or non canonical URL) to its target URL.
+     */
+    private ConcurrentHashMap<String, String> mAliases = new ConcurrentHashMap<>();
+    private AtomicLong mHitsCnt = new AtomicLong();
+
+
+    /**
+     * Records the given URL as an alias of the given target URL.
+     *
+     * @param alias  the alias web page URL string
+     * @param target the target web page URL string
+     */
+    public void put(String alias, String target) {
+        if (alias.equals(target)) {
+            return;
+        }
+
+        // Avoid cycles (e.g. a canonical URL redirecting back to its alias)
+        if (follow(target).equals(alias)) {
+            return;
+        }
+
+        mAliases.put(alias, target);
+        Output.log("Alias : " + alias + " -> " + target);
+    }
+
+    /**
+     * Resolves the given URL by following its alias chain.
+     *
+     * @param url the web page URL string
+     * @return the final target URL string, or the given URL if it is not an alias
+     */
+    public String resolve(String url) {
+        String ret = follow(url);
+
+        if (!ret.equals(url)) {
+            mHitsCnt.incrementAndGet();
+        }
+
+        return ret;
+    }
+
+    /**
+     * Checks whether the given URL is a known alias.
+     *
+     * @param url the web page URL string
+     * @return {@code true} if the given URL is an alias, {@code false} otherwise
+     */
+    public boolean isAlias(String url) {
+        return mAliases.containsKey(url);
+    }
+
+    /**
+     * Prints the alias map statistics.
+     */
+    public void printStats() {
+        System.out.println("URL alias map: " + mAliases.size() + " alias(es), " + mHitsCnt.get() + " hit(s)");
+    }
+
+    /**
+     * Follows the alias chain of the given URL up to {@code MAX_REDIRECTS} hops.
+     *
+     * @param url the web page URL string
+     * @return the final target URL string
+     */
+    private String follow(String url) {
+        String ret = url;
+
+        for (int i = 0; i < Constants.MAX_REDIRECTS; ++i) {
+            String target = mAliases.get(ret);
+
+            if (target == null) {
+                break;
+            }
+
+            ret = target;
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,345 @@
+package search.engine.crawler;
+
+import search.engine.utils.Constants;
+import search.engine.utils.WebUtilities;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+
+public class URLPatternLearner {
+
+    /**
+     * Learned URL knowledge of a single host.
+     */
+    private static class HostPatterns {
+        /**
+         * Map from a URL without a certain parameter to the value of this parameter
+         * and the content digest of the first fetched variant, grouped by parameter name.
+         */
+        Map<String, Map<String, String[]>> variants = new HashMap<>();
+        int variantsCnt = 0;
+
+        /**
+         * Number of fetched variants that proved a parameter to be irrelevant (same content)
+         * or relevant (different content).
+         */
+        Map<String, Integer> sameContentCnt = new HashMap<>();
+        Set<String> relevantParams = new HashSet<>();
+        Set<String> irrelevantParams = new HashSet<>();
+
+        /**
+         * Number of admitted URLs per URL pattern.
+         */
+        Map<String, Integer> patternsCnt = new HashMap<>();
+
+        /**
+         * Number of admitted URLs per URL pattern linked from a web page of the same pattern.
+         */
+        Map<String, Integer> selfLinkingCnt = new HashMap<>();
+    }
+
+    //
+    // Member variables
+    //
+    private Map<String, HostPatterns> mHosts = new HashMap<>();
+    private long mRewrittenCnt = 0;
+    private long mRejectedCnt = 0;
+
+
+    /**
+     * Rewrites the given normalized web page URL by removing its session, tracking
+     * and learned content-irrelevant query parameters.
+     * <p>
+     * URLs having the structure of a crawler trap (e.g. too long, too deep or
+     * with repeated path segments) are rejected.
+     *
+     * @param url a normalized web page URL string
+     * @return the rewritten URL string, or null if the URL is rejected
+     */
+    public synchronized String rewrite(String url) {
+        URL urlObj = WebUtilities.getURL(url);
+
+        if (urlObj == null || url.length() > Constants.MAX_URL_LENGTH || trapPath(urlObj.getPath())) {
+            mRejectedCnt++;
+            return null;
+        }
+
+        String[] parts = splitQuery(url);
+
+        if (parts[1] == null) {
+            return url;
+        }
+
+        HostPatterns patterns = mHosts.get(urlObj.getHost());
+        List<String> params = new ArrayList<>();
+
+        for (String param : parts[1].split("&")) {
+            String name = paramName(param);
+
+            if (trackingParam(name) || (patterns != null && patterns.irrelevantParams.contains(name))) {
+                continue;
+            }
+
+            params.add(param);
+        }
+
+        String ret = parts[0] + (params.isEmpty() ? "" : "?" + String.join("&", params));
+
+        if (!ret.equals(url)) {
+            mRewrittenCnt++;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Checks whether the given URL pattern did not exceed its crawling budget and counts
+     * the given URL against it.
+     * <p>
+     * A URL pattern is the URL with its digit sequences replaced by a placeholder
+     * (e.g. /calendar?date=#-#-#), which groups the pages of unbounded URL spaces
+     * such as calendars, paginations and faceted search.
+     * <p>
+     * Ordinary id-based pages (e.g. /article/#) are linked from other pages and get a large budget,
+     * while the patterns whose pages keep linking to each other (e.g. the next day of a calendar)
+     * get a much smaller budget, as they are the ones generating unbounded URL spaces.
+     *
+     * @param url       a rewritten web page URL string that is about to be enqueued
+     * @param sourceURL the URL of the web page linking to the given URL, or null if unknown
+     * @return {@code true} if the URL is admitted, {@code false} otherwise
+     */
+    public synchronized boolean admit(String url, String sourceURL) {
+        String host = WebUtilities.getHostName(url);
+
+        if (host == null) {
+            return true;
+        }
+
+        String pattern = pattern(url, host);
+
+        // URLs with no variable parts are not limited
+        if (pattern == null) {
+            return true;
+        }
+
+        HostPatterns patterns = getPatterns(host);
+        int cnt = patterns.patternsCnt.getOrDefault(pattern, 0);
+
+        if (sourceURL != null && pattern.equals(pattern(sourceURL, host))) {
+            int selfCnt = patterns.selfLinkingCnt.getOrDefault(pattern, 0);
+
+            if (selfCnt >= Constants.MAX_URL_SELF_LINKING_PATTERN_COUNT) {
+                mRejectedCnt++;
+                return false;
+            }
+
+            patterns.selfLinkingCnt.put(pattern, selfCnt + 1);
+        }
+
+        if (cnt >= Constants.MAX_URL_PATTERN_COUNT) {
+            mRejectedCnt++;
+            return false;
+        }
+
+        patterns.patternsCnt.put(pattern, cnt + 1);
+        return true;
+    }
+
+    /**
+     * Records the content of a fetched web page in order to learn which query
+     * parameters of its host do not change the content.
+     * <p>
+     * For every query parameter, the page is compared to the first fetched variant
+     * that differs from it only in the value of this parameter. A parameter is learned
+     * as irrelevant once enough variants had the same content, unless any variant
+     * proved it to be relevant.
+     *
+     * @param url     the fetched web page URL string
+     * @param content the fetched web page text content
+     */
+    public synchronized void recordContent(String url, String content) {
+        String[] parts = splitQuery(url);
+        String host = WebUtilities.getHostName(url);
+
+        if (parts[1] == null || host == null) {
+            return;
+        }
+
+        HostPatterns patterns = getPatterns(host);
+        String digest = digest(content);
+        String[] params = parts[1].split("&");
+
+        for (int i = 0; i < params.length; ++i) {
+            String name = paramName(params[i]);
+
+            if (patterns.relevantParams.contains(name) || patterns.irrelevantParams.contains(name)) {
+                continue;
+            }
+
+            // Build the URL without the current parameter
+            StringBuilder key = new StringBuilder(parts[0]);
+
+            for (int j = 0; j < params.length; ++j) {
+                if (j != i) {
+                    key.append('&').append(params[j]);
+                }
+            }
+
+            Map<String, String[]> variants = patterns.variants.computeIfAbsent(name, k -> new HashMap<>());
+            String[] first = variants.get(key.toString());
+
+            if (first == null) {
+                if (patterns.variantsCnt < Constants.MAX_URL_VARIANTS_PER_HOST) {
+                    variants.put(key.toString(), new String[]{params[i], digest});
+                    patterns.variantsCnt++;
+                }
+            } else if (!first[0].equals(params[i])) {
+                if (!first[1].equals(digest)) {
+                    patterns.relevantParams.add(name);
+                    continue;
+                }
+
+                int cnt = patterns.sameContentCnt.getOrDefault(name, 0) + 1;
+                patterns.sameContentCnt.put(name, cnt);
+
+                if (cnt >= Constants.URL_PARAM_LEARN_THRESHOLD) {
+                    patterns.irrelevantParams.add(name);
+                    Output.log("Learned irrelevant query parameter \"" + name + "\" : " + host);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the URL rewriting statistics.
+     */
+    public synchronized void printStats() {
+        int learnedCnt = 0;
+
+        for (HostPatterns patterns : mHosts.values()) {
+            learnedCnt += patterns.irrelevantParams.size();
+        }
+
+        System.out.println("URL pattern learner: rewritten " + mRewrittenCnt + " URL(s), rejected "
+                + mRejectedCnt + " URL(s), learned " + learnedCnt + " irrelevant parameter(s)");
+    }
+
+    /**
+     * Checks whether the given URL path looks like a crawler trap,
+     * either because it is too deep or because some segment is repeated too many times
+     * (e.g. /a/b/a/b/a/b generated by relative links).
+     *
+     * @param path the URL path
+     * @return {@code true} if the path is a trap, {@code false} otherwise
+     */
+    private boolean trapPath(String path) {
+        Map<String, Integer> segmentsCnt = new HashMap<>();
+        int depth = 0;
+
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+
+            int cnt = segmentsCnt.getOrDefault(segment, 0) + 1;
+            segmentsCnt.put(segment, cnt);
+
+            if (++depth > Constants.MAX_URL_PATH_DEPTH || cnt > Constants.MAX_URL_REPEATED_SEGMENTS) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the pattern of the given URL, with its digit sequences replaced by a placeholder.
+     *
+     * @param url  the URL string
+     * @param host the URL host name
+     * @return the URL pattern after the host, or null if the URL has no variable parts or another host
+     */
+    private static String pattern(String url, String host) {
+        int idx = url.indexOf(host);
+
+        if (idx < 0) {
+            return null;
+        }
+
+        String tail = url.substring(idx + host.length());
+        String ret = tail.replaceAll("[0-9]+", "#");
+
+        return (ret.equals(tail) ? null : ret);
+    }
+
+    /**
+     * Checks whether the given query parameter is a known session or tracking parameter.
+     *
+     * @param name the query parameter name
+     * @return {@code true} if the parameter never changes the content, {@code false} otherwise
+     */
+    private boolean trackingParam(String name) {
+        return Constants.TRACKING_PARAMS.contains(name) || name.startsWith("utm_");
+    }
+
+    /**
+     * Splits the given URL into its part before the query and its query.
+     *
+     * @param url the URL string
+     * @return array of the URL without the query and the query, or null if there is no query
+     */
+    private static String[] splitQuery(String url) {
+        int idx = url.indexOf('?');
+
+        if (idx < 0) {
+            return new String[]{url, null};
+        }
+
+        return new String[]{url.substring(0, idx), url.substring(idx + 1)};
+    }
+
+    /**
+     * Returns the name of the given query parameter.
+     *
+     * @param param the query parameter (i.e. name=value)
+     * @return the parameter name
+     */
+    private static String paramName(String param) {
+        int idx = param.indexOf('=');
+        return (idx < 0 ? param : param.substring(0, idx));
+    }
+
+    /**
+     * Returns a digest of the given content.
+     *
+     * @param content the web page content
+     * @return hex string of the content digest
+     */
+    private static String digest(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("MD5").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder ret = new StringBuilder();
+
+            for (byte b : hash) {
+                ret.append(String.format("%02x", b));
+            }
+
+            return ret.toString();
+        } catch (Exception e) {
+            return String.valueOf(content.hashCode());
+        }
+    }
+
+    /**
+     * Returns the learned patterns of the given host, creating a new one if not exist.
+     *
+     * @param host the host name
+     * @return the host patterns
+     */
+    private HostPatterns getPatterns(String host) {
+        return mHosts.computeIfAbsent(host, k -> new HostPatterns());
+    }
+}
@@ -0,0 +1,342 @@
+package search.engine.indexer;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import search.engine.utils.Constants;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+public class ContentStore {
+
+    //
+    // Static variables
+    //
+
+    /**
+     * The preset dictionary shared by all the compressed records, holding common English words
+     * with the most frequent ones last, as deflate prefers the closest matches.
+     * <p>
+     * The records store the version of the dictionary they were compressed with,
+     * so this text must never change without bumping {@code Constants.CONTENT_DICTIONARY_VERSION}.
+     */
+    private static final byte[] DICTIONARY = (
+            "information people company service business contact privacy policy terms conditions copyright " +
+            "reserved rights search home page news about more help online free world year years time day " +
+            "which their there would could should these those other after before first last new also just " +
+            "only over such most some than them then when where what while will into more your have from " +
+            "this that with they been were said each about which the and for are but not you all any can " +
+            "her was one our out has his how its may see who did get him let say she too use of to in is it " +
+            "on be as at by or an a the of and to in a is that for on with as "
+    ).getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Least-recently-used cache of the decompressed contents, bounded by the total number of chars.
+     */
+    private static class Cache extends LinkedHashMap<ObjectId, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        long size = 0;
+
+        Cache() {
+            super(16, 0.75f, true);
+        }
+    }
+
+    //
+    // Member variables
+    //
+    private MongoCollection<Document> mContentsCollection;
+
+    private final Cache mCache = new Cache();
+    private final long[] mGenerations = new long[Constants.CONTENT_CACHE_GENERATIONS_COUNT];
+    private AtomicLong mHitsCnt = new AtomicLong();
+    private AtomicLong mMissesCnt = new AtomicLong();
+
+
+    /**
+     * Constructs a content store over the given contents collection.
+     *
+     * @param contentsCollection the collection of the compressed content records
+     */
+    public ContentStore(MongoCollection<Document> contentsCollection) {
+        mContentsCollection = contentsCollection;
+    }
+
+    /**
+     * Stores the given contents, replacing any previously stored contents of the same documents.
+     *
+     * @param contents map from a web page id to its content
+     */
+    public void putAll(Map<ObjectId, String> contents) {
+        List<WriteModel<Document>> operations = new ArrayList<>();
+
+        for (Map.Entry<ObjectId, String> entry : contents.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                continue;
+            }
+
+            operations.add(new ReplaceOneModel<>(
+                    Filters.eq(Constants.FIELD_ID, entry.getKey()),
+                    toRecord(entry.getKey(), entry.getValue()),
+                    new UpdateOptions().upsert(true)
+            ));
+
+        }
+
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        mContentsCollection.bulkWrite(operations, new BulkWriteOptions().ordered(false));
+
+        // Invalidate the cached old contents, the new ones are cached on their first retrieval
+        synchronized (mCache) {
+            for (ObjectId id : contents.keySet()) {
+                invalidate(id);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the contents of the given web pages, from the cache if possible.
+     *
+     * @param ids list of web pages ids
+     * @return map from a web page id to its content, excluding the web pages having no stored content
+     */
+    public Map<ObjectId, String> get(Collection<ObjectId> ids) {
+        Map<ObjectId, String> ret = new HashMap<>();
+        Map<ObjectId, Long> missingIds = new HashMap<>();
+
+        synchronized (mCache) {
+            for (ObjectId id : ids) {
+                String content = mCache.get(id);
+
+                if (content != null) {
+                    ret.put(id, content);
+                } else {
+                    // Remember the generation before reading, to detect invalidations during the read
+                    missingIds.put(id, mGenerations[getGenerationIndex(id)]);
+                }
+            }
+        }
+
+        mHitsCnt.addAndGet(ret.size());
+        mMissesCnt.addAndGet(missingIds.size());
+
+        if (missingIds.isEmpty()) {
+            return ret;
+        }
+
+        FindIterable<Document> res = mContentsCollection.find(Filters.in(Constants.FIELD_ID, missingIds.keySet()));
+
+        for (Document doc : res) {
+            ObjectId id = doc.getObjectId(Constants.FIELD_ID);
+            String content = fromRecord(doc);
+
+            if (content != null) {
+                ret.put(id, content);
+                cache(id, content, missingIds.get(id));
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Removes the stored content of the given web page.
+     *
+     * @param id the web page id
+     */
+    public void remove(ObjectId id) {
+        mContentsCollection.deleteOne(Filters.eq(Constants.FIELD_ID, id));
+
+        synchronized (mCache) {
+            invalidate(id);
+        }
+    }
+
+    /**
+     * Prints the cache hit rate statistics.
+     */
+    public void printStats() {
+        long hits = mHitsCnt.get();
+        long total = hits + mMissesCnt.get();
+
+        System.out.printf("Content cache: %d lookup(s), %d hit(s) (%.01f%%), %d page(s)\n",
+                total, hits, (total == 0 ? 0 : 100.0 * hits / total), mCache.size());
+    }
+
+    /**
+     * Adds the given content to the cache, unless it was invalidated after being read.
+     *
+     * @param id         the web page id
+     * @param content    the web page content
+     * @param generation the generation of the web page id before reading its content
+     */
+    private void cache(ObjectId id, String content, long generation) {
+        synchronized (mCache) {
+            // Skip the possibly stale content, if a write or a removal happened during the read
+            if (mGenerations[getGenerationIndex(id)] != generation) {
+                return;
+            }
+
+            String old = mCache.put(id, content);
+            mCache.size += content.length() - (old == null ? 0 : old.length());
+
+            // Evict the least recently used contents
+            Iterator<String> it = mCache.values().iterator();
+
+            while (mCache.size > Constants.CONTENT_CACHE_MAX_SIZE && it.hasNext()) {
+                mCache.size -= it.next().length();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the given web page from the cache, and bumps its generation
+     * so that the contents being read concurrently do not get cached.
+     * <p>
+     * Must be called while holding the cache lock.
+     *
+     * @param id the web page id
+     */
+    private void invalidate(ObjectId id) {
+        mGenerations[getGenerationIndex(id)]++;
+
+        String content = mCache.remove(id);
+
+        if (content != null) {
+            mCache.size -= content.length();
+        }
+    }
+
+    /**
+     * Returns the index of the generation of the given web page id.
+     * <p>
+     * The web pages ids are striped over a fixed number of generations,
+     * which may cause a few unnecessary cache skips but keeps the memory bounded.
+     *
+     * @param id the web page id
+     * @return the generation index
+     */
+    private int getGenerationIndex(ObjectId id) {
+        return Math.floorMod(id.hashCode(), mGenerations.length);
+    }
+
+    /**
+     * Returns the compressed record document of the given content.
+     *
+     * @param id      the web page id
+     * @param content the web page content
+     * @return the content record document
+     */
+    static Document toRecord(ObjectId id, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+
+        return new Document()
+                .append(Constants.FIELD_ID, id)
+                .append(Constants.FIELD_CONTENT_DICTIONARY, Constants.CONTENT_DICTIONARY_VERSION)
+                .append(Constants.FIELD_CONTENT_LENGTH, bytes.length)
+                .append(Constants.FIELD_CONTENT_DATA, compress(bytes));
+    }
+
+    /**
+     * Decompresses the content of the given record document.
+     *
+     * @param doc the content record document
+     * @return the web page content, or null if the record cannot be decompressed
+     */
+    static String fromRecord(Document doc) {
+        Object data = doc.get(Constants.FIELD_CONTENT_DATA);
+        byte[] bytes = (data instanceof Binary ? ((Binary) data).getData() : (byte[]) data);
+
+        if (bytes == null || doc.getInteger(Constants.FIELD_CONTENT_DICTIONARY, 0) != Constants.CONTENT_DICTIONARY_VERSION) {
+            return null;
+        }
+
+        try {
+            return new String(decompress(bytes, doc.getInteger(Constants.FIELD_CONTENT_LENGTH)), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Compresses the given bytes using deflate with the shared preset dictionary.
+     *
+     * @param bytes the bytes to compress
+     * @return the compressed bytes
+     */
+    private static byte[] compress(byte[] bytes) {
+        Deflater deflater = new Deflater(Constants.CONTENT_COMPRESSION_LEVEL);
+
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            byte[] buffer = new byte[bytes.length / 2 + 64];
+            int len = 0;
+
+            while (!deflater.finished()) {
+                if (len == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+
+                len += deflater.deflate(buffer, len, buffer.length - len);
+            }
+
+            return Arrays.copyOf(buffer, len);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses the given bytes compressed by {@link #compress(byte[])}.
+     *
+     * @param bytes  the compressed bytes
+     * @param length the length of the original bytes
+     * @return the original bytes
+     * @throws DataFormatException if the compressed bytes are corrupted
+     */
+    private static byte[] decompress(byte[] bytes, int length) throws DataFormatException {
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(bytes);
+
+            byte[] ret = new byte[length];
+            int len = 0;
+
+            while (len < length) {
+                int cnt = inflater.inflate(ret, len, length - len);
+
+                if (cnt == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(DICTIONARY);
+                } else if (cnt == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new DataFormatException("Truncated content record");
+                }
+
+                len += cnt;
+            }
+
+            return ret;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package search.engine.indexer;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import org.bson.Document;
+import search.engine.crawler.Output;
+import search.engine.utils.Constants;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class DocumentFrequencyTable {
+
+    //
+    // Member variables
+    //
+    private MongoCollection<Document> mCollection;
+    private MongoCollection<Document> mWebPagesCollection;
+
+    /**
+     * The in-memory cache of the table, swapped as a whole on every reload.
+     */
+    private volatile Map<String, Long> mWordsCounts;
+    private volatile Map<String, Long> mStemsCounts;
+    private volatile AtomicLong mDocumentsCount;
+
+    /**
+     * The last time the cache was loaded from the database, in milliseconds.
+     */
+    private volatile long mLoadTime = 0;
+    private final AtomicBoolean mReloading = new AtomicBoolean(false);
+
+    /**
+     * Lock object used to lock the cache loading and the bulk upsertions.
+     */
+    private final Object mLock = new Object();
+
+
+    /**
+     * Constructs a document frequency table over the given database collections.
+     *
+     * @param collection         the document frequencies collection
+     * @param webPagesCollection the web pages collection, used to rebuild the table when missing
+     */
+    public DocumentFrequencyTable(MongoCollection<Document> collection, MongoCollection<Document> webPagesCollection) {
+        mCollection = collection;
+        mWebPagesCollection = webPagesCollection;
+    }
+
+    /**
+     * Returns the number of indexed web pages.
+     *
+     * @return documents count
+     */
+    public long getDocumentsCount() {
+        ensureFresh();
+        return mDocumentsCount.get();
+    }
+
+    /**
+     * Returns the number of indexed web pages containing the given word.
+     *
+     * @param word the word to search for
+     * @return documents count
+     */
+    public long getWordDocumentsCount(String word) {
+        ensureFresh();
+        return mWordsCounts.getOrDefault(word, 0L);
+    }
+
+    /**
+     * Returns the number of indexed web pages containing the given stem.
+     *
+     * @param stem the stem word to search for
+     * @return documents count
+     */
+    public long getStemDocumentsCount(String stem) {
+        ensureFresh();
+        return mStemsCounts.getOrDefault(stem, 0L);
+    }
+
+    /**
+     * Updates the table by the deltas between the previous and the current versions of the given web pages.
+     * <p>
+     * The previous version is null for newly inserted web pages,
+     * and the current version is null for removed web pages.
+     * <p>
+     * The caller must call {@link #ensureLoaded()} before writing the web pages,
+     * otherwise a table rebuilt on loading would already count the written web pages.
+     *
+     * @param prvPages the previous versions of the web pages, having their words and stems index
+     * @param curPages the current versions of the web pages, having their words and stems index
+     */
+    public void update(List<WebPage> prvPages, List<WebPage> curPages) {
+        Map<String, Long> wordsDeltas = new HashMap<>();
+        Map<String, Long> stemsDeltas = new HashMap<>();
+        long docsDelta = 0;
+
+        for (int i = 0; i < prvPages.size(); ++i) {
+            WebPage prvPage = prvPages.get(i);
+            WebPage curPage = curPages.get(i);
+
+            Set<String> prvWords = (prvPage == null || prvPage.wordPosMap == null ? Collections.emptySet() : prvPage.wordPosMap.keySet());
+            Set<String> curWords = (curPage == null || curPage.wordPosMap == null ? Collections.emptySet() : curPage.wordPosMap.keySet());
+            Set<String> prvStems = (prvPage == null || prvPage.stemMap == null ? Collections.emptySet() : prvPage.stemMap.keySet());
+            Set<String> curStems = (curPage == null || curPage.stemMap == null ? Collections.emptySet() : curPage.stemMap.keySet());
+
+            addDeltas(wordsDeltas, prvWords, curWords);
+            addDeltas(stemsDeltas, prvStems, curStems);
+
+            docsDelta += (curPage == null ? 0 : 1) - (prvPage == null ? 0 : 1);
+        }
+
+        // Write the deltas to the database
+        List<WriteModel<Document>> operations = new ArrayList<>();
+        UpdateOptions options = new UpdateOptions().upsert(true);
+
+        addOperations(operations, Constants.TERM_TYPE_WORD, wordsDeltas, options);
+        addOperations(operations, Constants.TERM_TYPE_STEM, stemsDeltas, options);
+
+        if (docsDelta != 0) {
+            operations.add(new UpdateOneModel<>(
+                    totalFilter(),
+                    Updates.inc(Constants.FIELD_DOCUMENTS_COUNT, docsDelta),
+                    options
+            ));
+        }
+
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        synchronized (mLock) {
+            // Synchronization needed due to a MongoDB issue reported here:
+            // https://jira.mongodb.org/browse/SERVER-14322
+            mCollection.bulkWrite(operations, new BulkWriteOptions().ordered(false));
+
+            // Apply the deltas to the cache if loaded,
+            // otherwise they will be read with the whole table on loading
+            if (mDocumentsCount != null) {
+                applyDeltas(mWordsCounts, wordsDeltas);
+                applyDeltas(mStemsCounts, stemsDeltas);
+                mDocumentsCount.addAndGet(docsDelta);
+            }
+        }
+    }
+
+    /**
+     * Loads the table in memory on the first use, rebuilding it first if it was never built.
+     * <p>
+     * Must be called before writing any web pages whose deltas are to be applied to the table.
+     */
+    public void ensureLoaded() {
+        if (mDocumentsCount == null) {
+            synchronized (mLock) {
+                if (mDocumentsCount == null) {
+                    load();
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the table in memory on the first read, and reloads it in the background
+     * when it gets older than {@code Constants.DOCUMENT_FREQUENCIES_REFRESH_INTERVAL_MS}
+     * in order to catch up with the changes made by other processes.
+     * <p>
+     * Only the reads (i.e. the query side) refresh the table, the writers keep applying their own deltas.
+     */
+    private void ensureFresh() {
+        if (mDocumentsCount == null) {
+            ensureLoaded();
+            return;
+        }
+
+        if (System.currentTimeMillis() - mLoadTime < Constants.DOCUMENT_FREQUENCIES_REFRESH_INTERVAL_MS
+                || !mReloading.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread t = new Thread(() -> {
+            try {
+                synchronized (mLock) {
+                    load();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mReloading.set(false);
+            }
+        });
+
+        t.setName("DF-Reload-Thread");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Loads the whole table from the database into new cache maps,
+     * rebuilding the table first if it was never built for the current web pages.
+     */
+    private void load() {
+        Document total = mCollection.find(totalFilter()).first();
+
+        if (total == null && mWebPagesCollection.count() > 0) {
+            rebuild();
+        }
+
+        Map<String, Long> words = new ConcurrentHashMap<>();
+        Map<String, Long> stems = new ConcurrentHashMap<>();
+        long docsCount = 0;
+
+        for (Document doc : mCollection.find()) {
+            String type = doc.getString(Constants.FIELD_TERM_TYPE);
+            long count = ((Number) doc.get(Constants.FIELD_DOCUMENTS_COUNT)).longValue();
+
+            if (Constants.TERM_TYPE_TOTAL.equals(type)) {
+                docsCount = count;
+            } else if (count > 0) {
+                (Constants.TERM_TYPE_WORD.equals(type) ? words : stems).put(doc.getString(Constants.FIELD_TERM), count);
+            }
+        }
+
+        mWordsCounts = words;
+        mStemsCounts = stems;
+        mDocumentsCount = new AtomicLong(docsCount);
+        mLoadTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Rebuilds the whole table by scanning the words and stems index of all the web pages.
+     */
+    private void rebuild() {
+        Output.log("Rebuilding document frequencies table...");
+        System.out.println("Rebuilding document frequencies table...");
+
+        Map<String, Long> words = new HashMap<>();
+        Map<String, Long> stems = new HashMap<>();
+        long docsCount = 0;
+
+        FindIterable<Document> res = mWebPagesCollection
+                .find()
+                .projection(Projections.include(Constants.FIELDS_FOR_TERMS_UPDATE))
+                .batchSize(Constants.INDEX_BUILD_BATCH_SIZE);
+
+        for (Document doc : res) {
+            WebPage page = new WebPage(doc);
+            addDeltas(words, Collections.emptySet(), page.wordPosMap == null ? Collections.emptySet() : page.wordPosMap.keySet());
+            addDeltas(stems, Collections.emptySet(), page.stemMap == null ? Collections.emptySet() : page.stemMap.keySet());
+            docsCount++;
+        }
+
+        List<WriteModel<Document>> operations = new ArrayList<>();
+        UpdateOptions options = new UpdateOptions().upsert(true);
+
+        addReplacements(operations, Constants.TERM_TYPE_WORD, words, options);
+        addReplacements(operations, Constants.TERM_TYPE_STEM, stems, options);
+
+        operations.add(new ReplaceOneModel<>(
+                totalFilter(),
+                new Document(Constants.FIELD_TERM_TYPE, Constants.TERM_TYPE_TOTAL)
+                        .append(Constants.FIELD_TERM, "")
+                        .append(Constants.FIELD_DOCUMENTS_COUNT, docsCount),
+                options
+        ));
+
+        mCollection.deleteMany(new Document());
+
+        for (int i = 0; i < operations.size(); i += Constants.INDEX_BUILD_BATCH_SIZE) {
+            mCollection.bulkWrite(
+                    operations.subList(i, Math.min(operations.size(), i + Constants.INDEX_BUILD_BATCH_SIZE)),
+                    new BulkWriteOptions().ordered(false)
+            );
+        }
+    }
+
+    /**
+     * Adds the deltas between the given previous and current terms sets to the given deltas map.
+     *
+     * @param deltas   map from a term to its documents count delta
+     * @param prvTerms the previous terms set
+     * @param curTerms the current terms set
+     */
+    private static void addDeltas(Map<String, Long> deltas, Set<String> prvTerms, Set<String> curTerms) {
+        for (String term : curTerms) {
+            if (!prvTerms.contains(term)) {
+                deltas.merge(term, 1L, Long::sum);
+            }
+        }
+
+        for (String term : prvTerms) {
+            if (!curTerms.contains(term)) {
+                deltas.merge(term, -1L, Long::sum);
+            }
+        }
+    }
+
+    /**
+     * Applies the given deltas to the given cache map, removing the terms with no documents.
+     *
+     * @param counts map from a term to its documents count
+     * @param deltas map from a term to its documents count delta
+     */
+    private static void applyDeltas(Map<String, Long> counts, Map<String, Long> deltas) {
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+            if (entry.getValue() != 0) {
+                counts.compute(entry.getKey(), (k, v) -> {
+                    long count = (v == null ? 0 : v) + entry.getValue();
+                    return (count > 0 ? count : null);
+                });
+            }
+        }
+    }
+
+    /**
+     * Adds the increment operations of the given deltas.
+     *
+     * @param operations the list of write operations to add to
+     * @param type       the terms type
+     * @param deltas     map from a term to its documents count delta
+     * @param options    the update options
+     */
+    private static void addOperations(List<WriteModel<Document>> operations, String type,
+                                      Map<String, Long> deltas, UpdateOptions options) {
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+            if (entry.getValue() != 0) {
+                operations.add(new UpdateOneModel<>(
+                        termFilter(type, entry.getKey()),
+                        Updates.inc(Constants.FIELD_DOCUMENTS_COUNT, entry.getValue()),
+                        options
+                ));
+            }
+        }
+    }
+
+    /**
+     * Adds the replacement operations of the given documents counts.
+     *
+     * @param operations the list of write operations to add to
+     * @param type       the terms type
+     * @param counts     map from a term to its documents count
+     * @param options    the update options
+     */
+    private static void addReplacements(List<WriteModel<Document>> operations, String type,
+                                        Map<String, Long> counts, UpdateOptions options) {
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            operations.add(new ReplaceOneModel<>(
+                    termFilter(type, entry.getKey()),
+                    new Document(Constants.FIELD_TERM_TYPE, type)
+                            .append(Constants.FIELD_TERM, entry.getKey())
+                            .append(Constants.FIELD_DOCUMENTS_COUNT, entry.getValue()),
+                    options
+            ));
+        }
+    }
+
+    /**
+     * Returns the filter of the given term.
+     *
+     * @param type the term type
+     * @param term the term
+     * @return the filter document
+     */
+    private static Document termFilter(String type, String term) {
+        return new Document(Constants.FIELD_TERM_TYPE, type).append(Constants.FIELD_TERM, term);
+    }
+
+    /**
+     * Returns the filter of the total documents count entry.
+     *
+     * @return the filter document
+     */
+    private static Document totalFilter() {
+        return termFilter(Constants.TERM_TYPE_TOTAL, "");
+    }
+}
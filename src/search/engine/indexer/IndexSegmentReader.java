@@ -0,0 +1,266 @@
+package search.engine.indexer;
+
+import org.bson.types.ObjectId;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+
+public class IndexSegmentReader implements Closeable {
+
+    /**
+     * The terms dictionary of a segment, sorted by the global term ids for binary search.
+     */
+    private static class Dictionary {
+        int[] terms;
+        int[] docsCounts;
+        long[] offsets;
+        int[] lengths;
+
+        int find(int term) {
+            return (term < 0 ? -1 : Arrays.binarySearch(terms, term));
+        }
+    }
+
+    //
+    // Member variables
+    //
+    private File mFile;
+    private RandomAccessFile mRandomAccessFile;
+
+    /**
+     * The documents table.
+     */
+    private ObjectId[] mDocIds;
+    private String[] mDocURLs;
+    private int[] mDocWordsCounts;
+    private double[] mDocRanks;
+
+    /**
+     * The terms dictionaries and the memory-mapped postings.
+     */
+    private Dictionary mWords;
+    private Dictionary mStems;
+    private MappedByteBuffer mPostings;
+
+
+    /**
+     * Opens the given segment file, loading its documents table and dictionaries in memory
+     * and memory-mapping its postings.
+     *
+     * @param file the segment file
+     * @throws IOException if any I/O errors occurred or invalid segment file was given
+     */
+    public IndexSegmentReader(File file) throws IOException {
+        mFile = file;
+
+        long postingsLength;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != IndexSegmentWriter.MAGIC || in.readInt() != IndexSegmentWriter.VERSION) {
+                throw new IOException("Invalid index segment: " + file);
+            }
+
+            int docsCount = in.readInt();
+
+            mDocIds = new ObjectId[docsCount];
+            mDocURLs = new String[docsCount];
+            mDocWordsCounts = new int[docsCount];
+            mDocRanks = new double[docsCount];
+
+            byte[] id = new byte[12];
+
+            for (int i = 0; i < docsCount; ++i) {
+                in.readFully(id);
+                mDocIds[i] = new ObjectId(id);
+                mDocWordsCounts[i] = in.readInt();
+                mDocRanks[i] = in.readDouble();
+                mDocURLs[i] = in.readUTF();
+            }
+
+            mWords = readDictionary(in);
+            mStems = readDictionary(in);
+            postingsLength = in.readLong();
+        }
+
+        mRandomAccessFile = new RandomAccessFile(file, "r");
+        FileChannel channel = mRandomAccessFile.getChannel();
+        mPostings = channel.map(FileChannel.MapMode.READ_ONLY, channel.size() - postingsLength, postingsLength);
+    }
+
+    /**
+     * Returns the segment file.
+     *
+     * @return the segment file
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Returns the number of documents in this segment.
+     *
+     * @return documents count
+     */
+    public int getDocumentsCount() {
+        return mDocIds.length;
+    }
+
+    /**
+     * Returns the number of documents in this segment containing the given word.
+     *
+     * @param word the global id of the word to search for
+     * @return documents count
+     */
+    public int getWordDocumentsCount(int word) {
+        int idx = mWords.find(word);
+        return (idx < 0 ? 0 : mWords.docsCounts[idx]);
+    }
+
+    /**
+     * Returns the number of documents in this segment containing the given stem.
+     *
+     * @param stem the global id of the stem word to search for
+     * @return documents count
+     */
+    public int getStemDocumentsCount(int stem) {
+        int idx = mStems.find(stem);
+        return (idx < 0 ? 0 : mStems.docsCounts[idx]);
+    }
+
+    /**
+     * Decodes the postings of the given word.
+     *
+     * @param word the global id of the word to search for
+     * @return map from the segment-local document id to the word positions in ascending order
+     */
+    public Map<Integer, List<Integer>> readWordPostings(int word) {
+        Map<Integer, List<Integer>> ret = new LinkedHashMap<>();
+        ByteBuffer buffer = postingsOf(mWords, word);
+
+        if (buffer == null) {
+            return ret;
+        }
+
+        int doc = -1;
+
+        while (buffer.hasRemaining()) {
+            doc += VarInt.read(buffer);
+
+            int tf = VarInt.read(buffer);
+            List<Integer> positions = new ArrayList<>(tf);
+            int pos = 0;
+
+            for (int i = 0; i < tf; ++i) {
+                pos += VarInt.read(buffer);
+                positions.add(pos);
+            }
+
+            ret.put(doc, positions);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Decodes the postings of the given stem.
+     *
+     * @param stem the global id of the stem word to search for
+     * @return map from the segment-local document id to the stem count and score
+     */
+    public Map<Integer, StemInfo> readStemPostings(int stem) {
+        Map<Integer, StemInfo> ret = new LinkedHashMap<>();
+        ByteBuffer buffer = postingsOf(mStems, stem);
+
+        if (buffer == null) {
+            return ret;
+        }
+
+        int doc = -1;
+
+        while (buffer.hasRemaining()) {
+            doc += VarInt.read(buffer);
+            ret.put(doc, new StemInfo(VarInt.read(buffer), VarInt.read(buffer)));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Constructs a web page object holding the stored fields of the given document
+     * with empty words and stems index.
+     *
+     * @param doc the segment-local document id
+     * @return the web page object
+     */
+    public WebPage getWebPage(int doc) {
+        WebPage page = new WebPage();
+        page.id = mDocIds[doc];
+        page.url = mDocURLs[doc];
+        page.wordsCount = mDocWordsCounts[doc];
+        page.rank = mDocRanks[doc];
+        page.wordPosMap = new HashMap<>();
+        page.stemMap = new HashMap<>();
+        return page;
+    }
+
+    /**
+     * Closes the segment file.
+     *
+     * @throws IOException if any I/O errors occurred
+     */
+    @Override
+    public void close() throws IOException {
+        mRandomAccessFile.close();
+    }
+
+    /**
+     * Returns a buffer view over the postings of the given term.
+     *
+     * @param dictionary the terms dictionary
+     * @param term       the global id of the term to search for
+     * @return the term postings buffer, or null if the term does not exist
+     */
+    private ByteBuffer postingsOf(Dictionary dictionary, int term) {
+        int idx = dictionary.find(term);
+
+        if (idx < 0) {
+            return null;
+        }
+
+        // Duplicate so that concurrent readers do not share the buffer position
+        ByteBuffer buffer = mPostings.duplicate();
+        buffer.position((int) dictionary.offsets[idx]);
+        buffer.limit((int) dictionary.offsets[idx] + dictionary.lengths[idx]);
+        return buffer;
+    }
+
+    /**
+     * Reads a terms dictionary.
+     *
+     * @param in the input stream to read from
+     * @return the terms dictionary
+     * @throws IOException if any I/O errors occurred
+     */
+    private static Dictionary readDictionary(DataInputStream in) throws IOException {
+        Dictionary ret = new Dictionary();
+        int size = in.readInt();
+
+        ret.terms = new int[size];
+        ret.docsCounts = new int[size];
+        ret.offsets = new long[size];
+        ret.lengths = new int[size];
+
+        for (int i = 0; i < size; ++i) {
+            ret.terms[i] = in.readInt();
+            ret.docsCounts[i] = in.readInt();
+            ret.offsets[i] = in.readLong();
+            ret.lengths[i] = in.readInt();
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,193 @@
+package search.engine.indexer;
+
+import org.bson.types.ObjectId;
+
+import java.io.*;
+import java.util.*;
+
+
+public class IndexSegmentWriter {
+
+    //
+    // Static variables
+    //
+    public static final int MAGIC = 0x53454753;   // "SEGS"
+    public static final int VERSION = 2;
+
+    /**
+     * The postings of a single term under construction.
+     */
+    private static class PostingsBuilder {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int docsCount = 0;
+        int lastDoc = -1;
+    }
+
+    //
+    // Member variables
+    //
+    private List<ObjectId> mDocIds = new ArrayList<>();
+    private List<String> mDocURLs = new ArrayList<>();
+    private List<Integer> mDocWordsCounts = new ArrayList<>();
+    private List<Double> mDocRanks = new ArrayList<>();
+
+    private TreeMap<Integer, PostingsBuilder> mWordsPostings = new TreeMap<>();
+    private TreeMap<Integer, PostingsBuilder> mStemsPostings = new TreeMap<>();
+
+    /**
+     * The global term dictionary assigning the ids of the segment terms.
+     */
+    private TermDictionary.Builder mTerms;
+
+
+    /**
+     * Constructs a segment writer assigning the term ids using the given global term dictionary.
+     *
+     * @param terms the global term dictionary under construction
+     */
+    public IndexSegmentWriter(TermDictionary.Builder terms) {
+        mTerms = terms;
+    }
+
+    /**
+     * Adds the given web page to the segment under construction.
+     * <p>
+     * Word postings hold the document id, the term frequency and the term positions.
+     * Stem postings hold the document id, the term count and the term tag score.
+     * Document ids and positions are delta encoded before being written as variable-length integers.
+     *
+     * @param page the web page to add, with its words and stems index
+     */
+    public void add(WebPage page) {
+        int doc = mDocIds.size();
+
+        mDocIds.add(page.id);
+        mDocURLs.add(page.url);
+        mDocWordsCounts.add(page.wordsCount);
+        mDocRanks.add(page.rank);
+
+        if (page.wordPosMap != null) {
+            for (Map.Entry<String, List<Integer>> entry : page.wordPosMap.entrySet()) {
+                PostingsBuilder postings = startPosting(mWordsPostings, mTerms.add(entry.getKey()), doc);
+                List<Integer> positions = entry.getValue();
+
+                VarInt.write(postings.bytes, positions.size());
+
+                int lastPos = 0;
+
+                for (int pos : positions) {
+                    VarInt.write(postings.bytes, pos - lastPos);
+                    lastPos = pos;
+                }
+            }
+        }
+
+        if (page.stemMap != null) {
+            for (Map.Entry<String, StemInfo> entry : page.stemMap.entrySet()) {
+                PostingsBuilder postings = startPosting(mStemsPostings, mTerms.add(entry.getKey()), doc);
+
+                VarInt.write(postings.bytes, entry.getValue().count);
+                VarInt.write(postings.bytes, entry.getValue().score);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of web pages added to the segment under construction.
+     *
+     * @return the web pages count
+     */
+    public int getDocumentsCount() {
+        return mDocIds.size();
+    }
+
+    /**
+     * Writes the segment under construction into the given file.
+     * <p>
+     * Segment layout:
+     * <ul>
+     * <li>Header: magic number, version and documents count.</li>
+     * <li>Documents table: id, words count, rank and URL of every document.</li>
+     * <li>Words dictionary and stems dictionary: sorted global term ids, each with its document frequency,
+     * postings offset and postings length. The terms themselves are stored once in the global
+     * {@link TermDictionary} shared by all segments.</li>
+     * <li>Postings: the concatenated postings of all terms, to be memory-mapped while reading.</li>
+     * </ul>
+     *
+     * @param file the segment file to write
+     * @throws IOException if any I/O errors occurred
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mDocIds.size());
+
+            for (int i = 0; i < mDocIds.size(); ++i) {
+                out.write(mDocIds.get(i).toByteArray());
+                out.writeInt(mDocWordsCounts.get(i));
+                out.writeDouble(mDocRanks.get(i));
+                out.writeUTF(mDocURLs.get(i));
+            }
+
+            long postingsLength = 0;
+            postingsLength = writeDictionary(out, mWordsPostings, postingsLength);
+            postingsLength = writeDictionary(out, mStemsPostings, postingsLength);
+
+            out.writeLong(postingsLength);
+
+            for (PostingsBuilder postings : mWordsPostings.values()) {
+                postings.bytes.writeTo(out);
+            }
+
+            for (PostingsBuilder postings : mStemsPostings.values()) {
+                postings.bytes.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Writes the given terms dictionary.
+     *
+     * @param out            the output stream to write to
+     * @param dictionary     the sorted map from a term id to its postings
+     * @param postingsOffset the offset of the first term postings
+     * @return the offset after the last term postings
+     * @throws IOException if any I/O errors occurred
+     */
+    private long writeDictionary(DataOutputStream out, TreeMap<Integer, PostingsBuilder> dictionary,
+                                 long postingsOffset) throws IOException {
+        out.writeInt(dictionary.size());
+
+        for (Map.Entry<Integer, PostingsBuilder> entry : dictionary.entrySet()) {
+            PostingsBuilder postings = entry.getValue();
+
+            out.writeInt(entry.getKey());
+            out.writeInt(postings.docsCount);
+            out.writeLong(postingsOffset);
+            out.writeInt(postings.bytes.size());
+
+            postingsOffset += postings.bytes.size();
+        }
+
+        return postingsOffset;
+    }
+
+    /**
+     * Starts a new posting for the given document in the postings of the given term.
+     *
+     * @param dictionary the map from a term id to its postings
+     * @param term       the term id
+     * @param doc        the segment-local document id
+     * @return the postings of the term
+     */
+    private PostingsBuilder startPosting(Map<Integer, PostingsBuilder> dictionary, int term, int doc) {
+        PostingsBuilder postings = dictionary.computeIfAbsent(term, k -> new PostingsBuilder());
+
+        VarInt.write(postings.bytes, doc - postings.lastDoc);
+        postings.lastDoc = doc;
+        postings.docsCount++;
+
+        return postings;
+    }
+}
@@ -0,0 +1,424 @@
+package search.engine.indexer;
+
+import search.engine.crawler.Output;
+import search.engine.utils.Constants;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+public class IndexWriteBuffer {
+
+    /**
+     * The coalesced pending writes of a single web page URL.
+     */
+    static class PendingWrite {
+        String url;
+
+        /**
+         * The web page to replace the stored one with, or null if only its fetch fields are updated.
+         */
+        WebPage page;
+
+        /**
+         * The stored version of the web page to write the differences against,
+         * or null to replace the whole stored web page.
+         */
+        WebPage prvPage;
+
+        /**
+         * The new fetch skip limit, or null if not changed.
+         * Setting a new limit resets the fetch skip count and updates the fetch time.
+         */
+        Integer fetchSkipLimit;
+        long fetchTime;
+
+        /**
+         * The fetch skip count increment, applied after the new limit (if any).
+         */
+        int fetchSkipCountInc;
+
+        /**
+         * Estimated memory size in bytes.
+         */
+        long size;
+
+        /**
+         * Whether the write has been applied, to be skipped when the rest of its batch is retried.
+         */
+        boolean written;
+
+        PendingWrite(String url) {
+            this.url = url;
+        }
+    }
+
+    //
+    // Member variables
+    //
+    private Indexer mIndexer;
+
+    /**
+     * The pending writes not yet picked by the writer thread, in arrival order,
+     * and the batch being currently written.
+     */
+    private LinkedHashMap<String, PendingWrite> mPending = new LinkedHashMap<>();
+    private Map<String, PendingWrite> mInFlight = new HashMap<>();
+    private long mPendingSize = 0;
+    private long mFlushRequest = 0;
+    private long mFlushedRequest = 0;
+    private boolean mClosed = false;
+
+    /**
+     * Synchronization variables.
+     */
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mNotFull = mLock.newCondition();
+    private final Condition mFlushNeeded = mLock.newCondition();
+    private final Condition mFlushed = mLock.newCondition();
+    private Thread mWriterThread;
+
+
+    /**
+     * Constructs a write-behind buffer for the given indexer,
+     * and starts its background writer thread.
+     * <p>
+     * The pending writes are flushed durably when the JVM shuts down.
+     *
+     * @param indexer the indexer to write the web pages through
+     */
+    public IndexWriteBuffer(Indexer indexer) {
+        mIndexer = indexer;
+
+        mWriterThread = new Thread(this::writeLoop);
+        mWriterThread.setName("Index-Writer-Thread");
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Buffers the update of the given web page, superseding any pending writes of the same URL.
+     * Blocks while the buffer is full.
+     *
+     * @param page    the web page to be indexed or updated
+     * @param prvPage the stored version of the web page to write the differences against,
+     *                or null to replace the whole stored web page
+     */
+    public void updateWebPage(WebPage page, WebPage prvPage) {
+        mLock.lock();
+        try {
+            PendingWrite write = acquire(page.url);
+
+            // Keep diffing against the stored version if a previous update is still pending
+            if (write.page == null) {
+                write.prvPage = prvPage;
+            }
+
+            write.page = page;
+            write.fetchSkipLimit = null;
+            write.fetchSkipCountInc = 0;
+
+            resize(write, estimateSize(page));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Buffers the increment of the fetch skip count of the given web page.
+     * Blocks while the buffer is full.
+     *
+     * @param url the web page URL string
+     */
+    public void incrementFetchSkipCount(String url) {
+        mLock.lock();
+        try {
+            PendingWrite write = acquire(url);
+
+            if (write.page != null) {
+                write.page.fetchSkipCount++;
+            } else {
+                write.fetchSkipCountInc++;
+            }
+
+            resize(write, Math.max(write.size, Constants.INDEX_WRITE_BUFFER_ENTRY_SIZE));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Buffers the update of the fetch skip limit of the given web page,
+     * along with resetting its fetch skip count and updating its fetch time.
+     * Blocks while the buffer is full.
+     *
+     * @param url   the web page URL string
+     * @param limit the new fetch skip limit
+     */
+    public void updateFetchSkipLimit(String url, int limit) {
+        mLock.lock();
+        try {
+            PendingWrite write = acquire(url);
+            long now = System.currentTimeMillis();
+
+            if (write.page != null) {
+                write.page.fetchSkipLimit = limit;
+                write.page.fetchSkipCount = 0;
+                write.page.fetchTime = now;
+            } else {
+                write.fetchSkipLimit = limit;
+                write.fetchSkipCountInc = 0;
+                write.fetchTime = now;
+            }
+
+            resize(write, Math.max(write.size, Constants.INDEX_WRITE_BUFFER_ENTRY_SIZE));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the buffer if any writes of the given URL are pending or being written,
+     * so that the following reads of the web page see them.
+     *
+     * @param url the web page URL string
+     */
+    public void flushIfPending(String url) {
+        mLock.lock();
+        try {
+            if (mPending.containsKey(url) || mInFlight.containsKey(url)) {
+                awaitFlush();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until all the writes buffered so far are written to the database.
+     */
+    public void flush() {
+        mLock.lock();
+        try {
+            awaitFlush();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes all the pending writes durably and stops the writer thread.
+     * Any writes buffered afterwards are written synchronously.
+     */
+    public void close() {
+        mLock.lock();
+        try {
+            if (mClosed) {
+                return;
+            }
+
+            mClosed = true;
+            mFlushNeeded.signal();
+        } finally {
+            mLock.unlock();
+        }
+
+        try {
+            mWriterThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the pending write entry of the given URL, creating a new one if not exists.
+     * Blocks while the buffer is full.
+     * <p>
+     * Must be called while holding the lock.
+     *
+     * @param url the web page URL string
+     * @return the pending write entry
+     */
+    private PendingWrite acquire(String url) {
+        // Apply backpressure on the producers while the buffer is full
+        while (!mClosed && mPendingSize >= Constants.INDEX_WRITE_BUFFER_MAX_SIZE && !mPending.containsKey(url)) {
+            mFlushNeeded.signal();
+            mNotFull.awaitUninterruptibly();
+        }
+
+        PendingWrite write = mPending.get(url);
+
+        if (write == null) {
+            write = new PendingWrite(url);
+            mPending.put(url, write);
+        }
+
+        return write;
+    }
+
+    /**
+     * Updates the estimated size of the given pending write entry,
+     * and wakes up the writer thread if a batch is ready to be written.
+     * <p>
+     * Must be called while holding the lock.
+     *
+     * @param write the pending write entry
+     * @param size  the new estimated size in bytes
+     */
+    private void resize(PendingWrite write, long size) {
+        mPendingSize += size - write.size;
+        write.size = size;
+
+        if (mClosed) {
+            // The writer thread has gone, so write synchronously
+            writeBatch(takeBatch());
+            mInFlight.clear();
+            return;
+        }
+
+        if (mPending.size() >= Constants.INDEX_WRITE_BATCH_SIZE) {
+            mFlushNeeded.signal();
+        }
+    }
+
+    /**
+     * Requests a flush and blocks until all the writes buffered so far are written.
+     * <p>
+     * Must be called while holding the lock.
+     */
+    private void awaitFlush() {
+        if (mClosed) {
+            return;
+        }
+
+        long request = ++mFlushRequest;
+        mFlushNeeded.signal();
+
+        while (mFlushedRequest < request) {
+            mFlushed.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Takes all the pending writes as a single batch to be written.
+     * <p>
+     * Must be called while holding the lock.
+     *
+     * @return the batch of pending writes
+     */
+    private List<PendingWrite> takeBatch() {
+        List<PendingWrite> batch = new ArrayList<>(mPending.values());
+
+        mInFlight.clear();
+        mInFlight.putAll(mPending);
+        mPending.clear();
+        mPendingSize = 0;
+
+        return batch;
+    }
+
+    /**
+     * The writer thread loop, writing the pending writes in batches
+     * whenever the batch size is reached, a flush is requested, or the flush interval has passed.
+     */
+    private void writeLoop() {
+        while (true) {
+            List<PendingWrite> batch;
+            long request;
+            boolean closed;
+
+            mLock.lock();
+            try {
+                if (!mClosed && mFlushRequest == mFlushedRequest && mPending.size() < Constants.INDEX_WRITE_BATCH_SIZE) {
+                    try {
+                        mFlushNeeded.await(Constants.INDEX_WRITE_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        //e.printStackTrace();
+                    }
+                }
+
+                closed = mClosed;
+                request = mFlushRequest;
+                batch = takeBatch();
+                mNotFull.signalAll();
+            } finally {
+                mLock.unlock();
+            }
+
+            writeBatch(batch);
+
+            mLock.lock();
+            try {
+                mInFlight.clear();
+                mFlushedRequest = request;
+                mFlushed.signalAll();
+            } finally {
+                mLock.unlock();
+            }
+
+            if (closed) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Writes the given batch of pending writes, retrying on failures.
+     * The last batch written after closing is written with journaled write concern.
+     *
+     * @param batch the batch of pending writes
+     */
+    private void writeBatch(List<PendingWrite> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        for (int i = 1; i <= Constants.INDEX_WRITE_MAX_RETRIES; ++i) {
+            try {
+                mIndexer.writePendingWrites(batch, mClosed);
+                return;
+            } catch (Exception e) {
+                Output.log("Index write failed (attempt " + i + ") : " + e.getMessage());
+                System.out.println("Index write failed (attempt " + i + ") : " + e.getMessage());
+
+                try {
+                    Thread.sleep(Constants.INDEX_WRITE_RETRY_WAIT_TIME_MS);
+                } catch (InterruptedException ex) {
+                    //ex.printStackTrace();
+                }
+            }
+        }
+
+        for (PendingWrite write : batch) {
+            Output.log("Index write dropped : " + write.url);
+        }
+    }
+
+    /**
+     * Returns the estimated memory size of the given web page in bytes.
+     *
+     * @param page the web page
+     * @return the estimated size in bytes
+     */
+    private static long estimateSize(WebPage page) {
+        long size = Constants.INDEX_WRITE_BUFFER_ENTRY_SIZE;
+
+        if (page.content != null) {
+            size += 2L * page.content.length();
+        }
+
+        if (page.wordPosMap != null) {
+            size += 64L * page.wordPosMap.size() + 16L * page.wordsCount;
+        }
+
+        if (page.stemMap != null) {
+            size += 64L * page.stemMap.size();
+        }
+
+        return size;
+    }
+}
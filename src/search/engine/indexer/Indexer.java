@@ -1,6 +1,7 @@
 package search.engine.indexer;
 
 import com.mongodb.MongoClient;
+import com.mongodb.WriteConcern;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
@@ -14,6 +15,7 @@ import search.engine.utils.Constants;
 
 import java.net.URL;
 import java.util.*;
+import java.util.function.Consumer;
 
 
 public class Indexer {
@@ -28,12 +30,49 @@ public class Indexer {
     private MongoCollection<Document> mWebPagesCollection;
     private MongoCollection<Document> mDictionaryCollection;
     private MongoCollection<Document> mSuggestionsCollection;
+    private MongoCollection<Document> mPostingsCollection;
+
+    /**
+     * The words and stems documents frequencies, maintained incrementally on every update.
+     */
+    private DocumentFrequencyTable mDocumentFrequencies;
+
+    /**
+     * The in-memory prefix index of the search queries suggestions, backed by the suggestions collection.
+     */
+    private SuggestionIndex mSuggestionIndex;
+
+    /**
+     * The asynchronous aggregator of the searched queries, created on the first logged query.
+     */
+    private volatile SuggestionLogger mSuggestionLogger;
+
+    /**
+     * The compressed contents of the web pages, kept apart from the web pages collection.
+     */
+    private ContentStore mContentStore;
+
+    /**
+     * The attached sharded index segments to serve searches from, or null to search the database directly.
+     */
+    private volatile ShardedIndex mSegmentIndex;
+
+    /**
+     * The write-behind buffer of the web pages updates, created on the first buffered write.
+     */
+    private volatile IndexWriteBuffer mWriteBuffer;
 
     /**
      * Lock object used to lock bulk upsertions.
      */
     private final Object mLock = new Object();
 
+    /**
+     * Lock object used to serialize the web pages bulk writes, as the previous versions read before each write
+     * determine its documents frequencies deltas.
+     */
+    private final Object mPagesWriteLock = new Object();
+
     // ===========================================================================
     //
     // Web Pages Collection methods
@@ -74,6 +113,21 @@ public class Indexer {
         database.createCollection(Constants.COLLECTION_SUGGESTIONS);
         collection = database.getCollection(Constants.COLLECTION_SUGGESTIONS);
         collection.createIndex(Indexes.ascending(Constants.FIELD_SUGGESTION), indexOptions);
+
+        // Create postings collection and its indexes
+        database.createCollection(Constants.COLLECTION_POSTINGS);
+        collection = database.getCollection(Constants.COLLECTION_POSTINGS);
+        collection.createIndex(Indexes.ascending(
+                Constants.FIELD_TERM_TYPE, Constants.FIELD_TERM, Constants.FIELD_DOC), indexOptions);
+        collection.createIndex(Indexes.ascending(Constants.FIELD_DOC));
+
+        // Create document frequencies collection and its indexes
+        database.createCollection(Constants.COLLECTION_DOCUMENT_FREQUENCIES);
+        collection = database.getCollection(Constants.COLLECTION_DOCUMENT_FREQUENCIES);
+        collection.createIndex(Indexes.ascending(Constants.FIELD_TERM_TYPE, Constants.FIELD_TERM), indexOptions);
+
+        // Create contents collection, its records are addressed by the web page id
+        database.createCollection(Constants.COLLECTION_CONTENTS);
     }
 
     /**
@@ -95,6 +149,74 @@ public class Indexer {
         mWebPagesCollection = database.getCollection(Constants.COLLECTION_WEB_PAGES);
         mDictionaryCollection = database.getCollection(Constants.COLLECTION_DICTIONARY);
         mSuggestionsCollection = database.getCollection(Constants.COLLECTION_SUGGESTIONS);
+        mPostingsCollection = database.getCollection(Constants.COLLECTION_POSTINGS);
+
+        mDocumentFrequencies = new DocumentFrequencyTable(
+                database.getCollection(Constants.COLLECTION_DOCUMENT_FREQUENCIES),
+                mWebPagesCollection
+        );
+
+        mContentStore = new ContentStore(database.getCollection(Constants.COLLECTION_CONTENTS));
+
+        mSuggestionIndex = new SuggestionIndex(mSuggestionsCollection);
+    }
+
+    /**
+     * Attaches the given sharded index segments so that searches and documents counts are served
+     * from them instead of the database, which stays only as the documents store.
+     * <p>
+     * The previously attached segments (if any) are detached.
+     *
+     * @param segmentIndex the sharded index segments to attach, or null to search the database directly
+     */
+    public void attach(ShardedIndex segmentIndex) {
+        mSegmentIndex = segmentIndex;
+    }
+
+    /**
+     * Returns the attached sharded index segments.
+     *
+     * @return the attached sharded index segments, or null if not attached
+     */
+    public ShardedIndex getSegmentIndex() {
+        return mSegmentIndex;
+    }
+
+    /**
+     * Returns the web pages collection, used by the offline maintenance tools.
+     *
+     * @return the web pages collection
+     */
+    MongoCollection<Document> getWebPagesCollection() {
+        return mWebPagesCollection;
+    }
+
+    /**
+     * Blocks until all the buffered web pages writes are written to the database.
+     */
+    public void flush() {
+        IndexWriteBuffer writeBuffer = mWriteBuffer;
+
+        if (writeBuffer != null) {
+            writeBuffer.flush();
+        }
+    }
+
+    /**
+     * Returns the write-behind buffer, creating it on the first use.
+     *
+     * @return the write-behind buffer
+     */
+    private IndexWriteBuffer getWriteBuffer() {
+        if (mWriteBuffer == null) {
+            synchronized (mLock) {
+                if (mWriteBuffer == null) {
+                    mWriteBuffer = new IndexWriteBuffer(this);
+                }
+            }
+        }
+
+        return mWriteBuffer;
     }
 
     /**
@@ -130,37 +252,29 @@ public class Indexer {
      */
     public boolean indexWebPage(URL url, org.jsoup.nodes.Document pageDoc, List<String> outLinks, WebPage prvPage) {
         // Parse the raw web page document
-        WebPageParser parser = new WebPageParser(url, pageDoc);
-        WebPage curPage = parser.getParsedWebPage();
-
-        // Returns false if empty page content was found
-        // This may occur due to a non HTML web page
-        if (curPage.content.isEmpty()) {
-            return false;
-        }
+        WebPage curPage = parseWebPage(url, pageDoc, outLinks);
 
-        // Returns false if length percentage of the parsed is less than a certain threshold
-        // This may occur due to a non English web page
-        if (parser.getParsedContentLength() * 100 <
-                Constants.MIN_PARSED_CONTENT_LENGTH_PERCENTAGE * curPage.content.length()) {
+        // Returns false if the web page is not HTML or not English
+        if (curPage == null) {
             return false;
         }
 
-        curPage.outLinks = outLinks;
         curPage.rank = prvPage.rank;
         curPage.fetchSkipLimit = prvPage.fetchSkipLimit;
         curPage.fetchSkipCount = 0;
+        curPage.fetchTime = System.currentTimeMillis();
 
         // Compare the newly fetched page with its previous version from the database.
         if (curPage.wordsCount == prvPage.wordsCount
                 && curPage.title.equals(prvPage.title)
-                && curPage.wordPosMap.equals(prvPage.wordPosMap)
-                && curPage.stemMap.equals(prvPage.stemMap)) {
+                && (curPage.index != null ?
+                curPage.index.equalsIndex(prvPage.wordPosMap, prvPage.stemMap) :
+                curPage.wordPosMap.equals(prvPage.wordPosMap) && curPage.stemMap.equals(prvPage.stemMap))) {
 
             // If no changes happens to the content of the web page then
             // increase the skip fetch limit and return
             curPage.fetchSkipLimit = Math.min(Constants.MAX_FETCH_SKIP_LIMIT, prvPage.fetchSkipLimit * 2);
-            updateFetchSkipLimit(prvPage.id, curPage.fetchSkipLimit);
+            updateFetchSkipLimit(curPage.url, curPage.fetchSkipLimit);
 
             Output.log("Same page content : " + curPage.url);
             System.out.println("Same page content : " + curPage.url);
@@ -168,7 +282,7 @@ public class Indexer {
         }
 
         // Insert new content in the database
-        updateWebPage(curPage);
+        updateWebPage(curPage, prvPage);
         // updateWordsDictionary(Utilities.getWordsDictionary(curPage.wordPosMap.keySet()));
 
         //
@@ -179,45 +293,430 @@ public class Indexer {
     }
 
     /**
-     * Inserts the given web page in the search engine inverted database.
+     * Parses the given web page document into a web page object ready to be indexed.
+     *
+     * @param url      the web page URL object
+     * @param pageDoc  the web page raw content
+     * @param outLinks the web page out links
+     * @return the parsed web page, or null if non HTML or non English web page was given
+     */
+    public WebPage parseWebPage(URL url, org.jsoup.nodes.Document pageDoc, List<String> outLinks) {
+        // Parse the raw web page document
+        WebPageParser parser = new WebPageParser(url, pageDoc);
+        WebPage page = parser.getParsedWebPage();
+
+        // Returns null if empty page content was found
+        // This may occur due to a non HTML web page
+        if (page.content.isEmpty()) {
+            return null;
+        }
+
+        // Returns null if length percentage of the parsed is less than a certain threshold
+        // This may occur due to a non English web page
+        if (parser.getParsedContentLength() * 100 <
+                Constants.MIN_PARSED_CONTENT_LENGTH_PERCENTAGE * page.content.length()) {
+            return null;
+        }
+
+        page.outLinks = outLinks;
+        return page;
+    }
+
+    /**
+     * Inserts the given web page in the search engine inverted database
+     * along with its postings and documents frequencies.
+     * <p>
+     * When write-behind is enabled, the web page is handed to the write buffer
+     * to be written later in a batch.
      *
      * @param page a web page to be indexed or updated
      */
     public void updateWebPage(WebPage page) {
-        // Replace or create new document in the web pages collection
-        mWebPagesCollection.replaceOne(
+        updateWebPage(page, null);
+    }
+
+    /**
+     * Updates the given web page in the search engine inverted database
+     * along with its postings and documents frequencies.
+     * <p>
+     * When the stored version of the web page is given, only the differences between the two versions
+     * are written (i.e. the changed fields and index entries), otherwise the whole web page is replaced.
+     * <p>
+     * When write-behind is enabled, the web page is handed to the write buffer
+     * to be written later in a batch.
+     *
+     * @param page    a web page to be indexed or updated
+     * @param prvPage the stored version of the web page with its words and stems index, or null if unknown
+     */
+    public void updateWebPage(WebPage page, WebPage prvPage) {
+        prvPage = getDeltaBase(prvPage);
+
+        if (Constants.INDEX_WRITE_BEHIND) {
+            getWriteBuffer().updateWebPage(page, prvPage);
+            return;
+        }
+
+        if (prvPage != null) {
+            writeWebPageDeltas(Collections.singletonList(page), Collections.singletonList(prvPage), mWebPagesCollection);
+            return;
+        }
+
+        // Load or rebuild the documents frequencies before the web page gets written
+        mDocumentFrequencies.ensureLoaded();
+
+        // Replace or create new document in the web pages collection,
+        // returning the terms of the previous version if exists
+        Document res = mWebPagesCollection.findOneAndReplace(
                 Filters.eq(Constants.FIELD_URL, page.url),  // Filter document by web page url
-                page.toDocument(),                  // Create the web page document to be indexed
-                new UpdateOptions().upsert(true)    // Add upsert option
+                page.toDocument(),                          // Create the web page document to be indexed
+                new FindOneAndReplaceOptions()
+                        .upsert(true)                       // Add upsert option
+                        .returnDocument(ReturnDocument.BEFORE)
+                        .projection(Projections.include(Constants.FIELDS_FOR_TERMS_UPDATE))
         );
+
+        WebPage replacedPage = (res == null ? null : new WebPage(res));
+        ObjectId id = (replacedPage == null ? getWebPageId(page.url) : replacedPage.id);
+
+        Map<ObjectId, WebPage> pages = new HashMap<>();
+        pages.put(id, page);
+        updatePostings(pages);
+        storeContents(pages);
+
+        mDocumentFrequencies.update(Collections.singletonList(replacedPage), Collections.singletonList(page));
+    }
+
+    /**
+     * Inserts or updates the given web pages in the search engine inverted database
+     * using a single unordered bulk write.
+     * <p>
+     * The rank, the fetching frequency and the fetch time of the already indexed web pages are kept unchanged.
+     * If a web page is repeated in the given list, only its last version is written.
+     *
+     * @param pages list of web pages to be indexed or updated
+     */
+    public void updateWebPages(List<WebPage> pages) {
+        List<WriteModel<Document>> operations = new ArrayList<>();
+
+        // Keep the latest version of every web page
+        Map<String, WebPage> latestPages = new LinkedHashMap<>();
+
+        for (WebPage page : pages) {
+            latestPages.put(page.url, page);
+        }
+
+        pages = new ArrayList<>(latestPages.values());
+
+        // Add upsert option
+        UpdateOptions options = new UpdateOptions().upsert(true);
+
+        for (WebPage page : pages) {
+            Document doc = page.toDocument();
+            doc.remove(Constants.FIELD_RANK);
+            doc.remove(Constants.FILED_FETCH_SKIP_LIMIT);
+            doc.remove(Constants.FILED_FETCH_SKIP_COUNT);
+            doc.remove(Constants.FIELD_FETCH_TIME);
+
+            operations.add(new UpdateOneModel<>(
+                    Filters.eq(Constants.FIELD_URL, page.url),
+                    new Document("$set", doc).append("$unset", new Document(Constants.FIELD_PAGE_CONTENT, "")),
+                    options
+            ));
+        }
+
+        writeWebPages(pages, operations, mWebPagesCollection);
+    }
+
+    /**
+     * Writes the given batch of coalesced pending writes of the write-behind buffer
+     * using a single unordered bulk write.
+     *
+     * @param batch   the batch of pending writes
+     * @param durable whether to wait for the writes to be committed to the database journal
+     */
+    void writePendingWrites(List<IndexWriteBuffer.PendingWrite> batch, boolean durable) {
+        List<WebPage> pages = new ArrayList<>();
+        List<WebPage> deltaPages = new ArrayList<>();
+        List<WebPage> deltaPrvPages = new ArrayList<>();
+        List<WriteModel<Document>> operations = new ArrayList<>();
+
+        List<IndexWriteBuffer.PendingWrite> writes = new ArrayList<>();
+        List<IndexWriteBuffer.PendingWrite> deltaWrites = new ArrayList<>();
+
+        for (IndexWriteBuffer.PendingWrite write : batch) {
+            Bson filter = Filters.eq(Constants.FIELD_URL, write.url);
+
+            // Already written by a previous attempt of a retried batch
+            if (write.written) {
+                continue;
+            }
+
+            if (write.page != null && write.prvPage != null) {
+                deltaWrites.add(write);
+                deltaPages.add(write.page);
+                deltaPrvPages.add(write.prvPage);
+                continue;
+            }
+
+            writes.add(write);
+
+            if (write.page != null) {
+                pages.add(write.page);
+                operations.add(new ReplaceOneModel<>(filter, write.page.toDocument(), new UpdateOptions().upsert(true)));
+            } else if (write.fetchSkipLimit != null) {
+                operations.add(new UpdateOneModel<>(filter, Updates.combine(
+                        Updates.set(Constants.FILED_FETCH_SKIP_LIMIT, write.fetchSkipLimit),
+                        Updates.set(Constants.FILED_FETCH_SKIP_COUNT, write.fetchSkipCountInc),
+                        Updates.set(Constants.FIELD_FETCH_TIME, write.fetchTime)
+                )));
+            } else if (write.fetchSkipCountInc > 0) {
+                operations.add(new UpdateOneModel<>(filter,
+                        Updates.inc(Constants.FILED_FETCH_SKIP_COUNT, write.fetchSkipCountInc)));
+            }
+        }
+
+        MongoCollection<Document> collection = mWebPagesCollection;
+
+        if (durable) {
+            collection = collection.withWriteConcern(WriteConcern.JOURNALED);
+        }
+
+        // Mark every written stage, so that a retry only repeats the stage that failed
+        writeWebPages(pages, operations, collection);
+
+        for (IndexWriteBuffer.PendingWrite write : writes) {
+            write.written = true;
+        }
+
+        writeWebPageDeltas(deltaPages, deltaPrvPages, collection);
+
+        for (IndexWriteBuffer.PendingWrite write : deltaWrites) {
+            write.written = true;
+        }
+    }
+
+    /**
+     * Writes only the differences between the given web pages and their stored versions
+     * using a single ordered bulk write, then updates their postings and documents frequencies.
+     * <p>
+     * The stored content is left unchanged if only the index has changed.
+     * <p>
+     * The web pages and postings writes can be safely applied again if a later step fails,
+     * while the documents frequencies deltas are applied last, once all the writes succeeded.
+     *
+     * @param pages      list of web pages to be updated
+     * @param prvPages   list of the stored versions of the web pages, with their ids and words and stems index
+     * @param collection the web pages collection to write with
+     */
+    private void writeWebPageDeltas(List<WebPage> pages, List<WebPage> prvPages, MongoCollection<Document> collection) {
+        List<WriteModel<Document>> operations = new ArrayList<>();
+        List<Bson> pullPostings = new ArrayList<>();
+        List<WriteModel<Document>> putPostings = new ArrayList<>();
+        Map<ObjectId, WebPage> contentPages = new HashMap<>();
+        UpdateOptions options = new UpdateOptions().upsert(true);
+
+        // Load or rebuild the documents frequencies before the web pages get written
+        mDocumentFrequencies.ensureLoaded();
+
+        for (int i = 0; i < pages.size(); ++i) {
+            ObjectId id = prvPages.get(i).id;
+            WebPageDiff diff = new WebPageDiff(prvPages.get(i), pages.get(i));
+
+            operations.addAll(diff.toOperations(Filters.eq(Constants.FIELD_ID, id)));
+
+            if (diff.isContentChanged()) {
+                contentPages.put(id, pages.get(i));
+            }
+
+            // Postings of the removed and changed terms
+            if (!diff.getPullWords().isEmpty()) {
+                pullPostings.add(Filters.and(
+                        Filters.eq(Constants.FIELD_DOC, id),
+                        Filters.eq(Constants.FIELD_TERM_TYPE, Constants.TERM_TYPE_WORD),
+                        Filters.in(Constants.FIELD_TERM, diff.getPullWords())
+                ));
+            }
+
+            if (!diff.getPullStems().isEmpty()) {
+                pullPostings.add(Filters.and(
+                        Filters.eq(Constants.FIELD_DOC, id),
+                        Filters.eq(Constants.FIELD_TERM_TYPE, Constants.TERM_TYPE_STEM),
+                        Filters.in(Constants.FIELD_TERM, diff.getPullStems())
+                ));
+            }
+
+            // Postings of the added and changed terms, replaced by their (type, term, doc) key
+            for (Document posting : IndexerUtilities.toPostings(id, diff.getPutWords(), diff.getPutStems())) {
+                Bson filter = Filters.and(
+                        Filters.eq(Constants.FIELD_TERM_TYPE, posting.get(Constants.FIELD_TERM_TYPE)),
+                        Filters.eq(Constants.FIELD_TERM, posting.get(Constants.FIELD_TERM)),
+                        Filters.eq(Constants.FIELD_DOC, id)
+                );
+
+                putPostings.add(new ReplaceOneModel<>(filter, posting, options));
+            }
+        }
+
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        // Ordered, as the changed index entries of a web page are pulled before being pushed again
+        collection.bulkWrite(operations, new BulkWriteOptions().ordered(true));
+
+        if (!pullPostings.isEmpty()) {
+            mPostingsCollection.deleteMany(Filters.or(pullPostings));
+        }
+
+        if (!putPostings.isEmpty()) {
+            mPostingsCollection.bulkWrite(putPostings, new BulkWriteOptions().ordered(false));
+        }
+
+        storeContents(contentPages);
+
+        // Applied last, as the documents frequencies deltas are not safe to be applied twice
+        mDocumentFrequencies.update(prvPages, pages);
+    }
+
+    /**
+     * Returns the given stored version of a web page if it can be used to write only the differences
+     * of its newer version.
+     *
+     * @param prvPage the stored version of the web page
+     * @return the given stored version, or null if the whole web page should be replaced
+     */
+    private WebPage getDeltaBase(WebPage prvPage) {
+        if (!Constants.INDEX_DELTA_UPDATES || prvPage == null || prvPage.id == null
+                || prvPage.wordPosMap == null || prvPage.stemMap == null) {
+            return null;
+        }
+
+        return prvPage;
+    }
+
+    /**
+     * Applies the given write operations on the web pages collection using a single unordered bulk write,
+     * then updates the postings and the documents frequencies of the given written web pages.
+     * <p>
+     * The writes are serialized, so that concurrent writers of the same web page
+     * never count the same previous version twice in the documents frequencies.
+     *
+     * @param pages      list of distinct web pages written by the given operations, having their words and stems index
+     * @param operations list of write operations
+     * @param collection the web pages collection to write with
+     */
+    private void writeWebPages(List<WebPage> pages, List<WriteModel<Document>> operations,
+                               MongoCollection<Document> collection) {
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        synchronized (mPagesWriteLock) {
+            // Load or rebuild the documents frequencies before the web pages get written
+            mDocumentFrequencies.ensureLoaded();
+
+            // Retrieve the terms of the previous versions of the web pages
+            Map<String, WebPage> urls = new HashMap<>();
+
+            for (WebPage page : pages) {
+                urls.put(page.url, page);
+            }
+
+            Map<String, WebPage> prvPages = new HashMap<>();
+
+            FindIterable<Document> res;
+
+            if (!urls.isEmpty()) {
+                res = mWebPagesCollection
+                        .find(Filters.in(Constants.FIELD_URL, urls.keySet()))
+                        .projection(Projections.include(Constants.FIELDS_FOR_TERMS_UPDATE));
+
+                for (Document doc : res) {
+                    WebPage prvPage = new WebPage(doc);
+                    prvPages.put(prvPage.url, prvPage);
+                }
+            }
+
+            collection.bulkWrite(operations, new BulkWriteOptions().ordered(false));
+
+            // Retrieve the ids of the newly inserted web pages
+            Map<ObjectId, WebPage> postingPages = new HashMap<>();
+            List<String> newURLs = new ArrayList<>();
+
+            for (WebPage page : urls.values()) {
+                WebPage prvPage = prvPages.get(page.url);
+
+                if (prvPage != null) {
+                    postingPages.put(prvPage.id, page);
+                } else {
+                    newURLs.add(page.url);
+                }
+            }
+
+            if (!newURLs.isEmpty()) {
+                res = mWebPagesCollection
+                        .find(Filters.in(Constants.FIELD_URL, newURLs))
+                        .projection(Projections.include(Constants.FIELD_ID, Constants.FIELD_URL));
+
+                for (Document doc : res) {
+                    postingPages.put(doc.getObjectId(Constants.FIELD_ID), urls.get(doc.getString(Constants.FIELD_URL)));
+                }
+            }
+
+            updatePostings(postingPages);
+            storeContents(postingPages);
+
+            // Update the documents frequencies by the deltas between the previous and current versions
+            List<WebPage> prvList = new ArrayList<>();
+            List<WebPage> curList = new ArrayList<>();
+
+            for (WebPage page : urls.values()) {
+                prvList.add(prvPages.get(page.url));
+                curList.add(page);
+            }
+
+            mDocumentFrequencies.update(prvList, curList);
+        }
     }
 
     /**
      * Increments the fetch skip count of the given web page.
      * Used to mange the frequency of fetching the content of the web page.
      *
-     * @param id the web page id to update
+     * @param url the web page url string to update
      */
-    public void incrementFetchSkipCount(ObjectId id) {
+    public void incrementFetchSkipCount(String url) {
+        if (Constants.INDEX_WRITE_BEHIND) {
+            getWriteBuffer().incrementFetchSkipCount(url);
+            return;
+        }
+
         mWebPagesCollection.updateOne(
-                Filters.eq(Constants.FIELD_ID, id),
+                Filters.eq(Constants.FIELD_URL, url),
                 Updates.inc(Constants.FILED_FETCH_SKIP_COUNT, 1)
         );
     }
 
     /**
-     * Updates the fetch skip limit of the given web page and
-     * resets the fetch skip count.
+     * Updates the fetch skip limit of the given web page,
+     * resets the fetch skip count and updates the last fetch time.
      * Used to mange the frequency of fetching the content of the web page.
      *
-     * @param id the web page id to update
+     * @param url   the web page url string to update
+     * @param limit the new fetch skip limit
      */
-    public void updateFetchSkipLimit(ObjectId id, int limit) {
+    public void updateFetchSkipLimit(String url, int limit) {
+        if (Constants.INDEX_WRITE_BEHIND) {
+            getWriteBuffer().updateFetchSkipLimit(url, limit);
+            return;
+        }
+
         mWebPagesCollection.updateOne(
-                Filters.eq(Constants.FIELD_ID, id),
+                Filters.eq(Constants.FIELD_URL, url),
                 Updates.combine(
                         Updates.set(Constants.FILED_FETCH_SKIP_LIMIT, limit),
-                        Updates.set(Constants.FILED_FETCH_SKIP_COUNT, 0)
+                        Updates.set(Constants.FILED_FETCH_SKIP_COUNT, 0),
+                        Updates.set(Constants.FIELD_FETCH_TIME, System.currentTimeMillis())
                 )
         );
     }
@@ -228,7 +727,20 @@ public class Indexer {
      * @param id the web page id to remove
      */
     public void removeWebPage(ObjectId id) {
-        mWebPagesCollection.deleteOne(Filters.eq(Constants.FIELD_ID, id));
+        // Load or rebuild the documents frequencies before the web page gets removed
+        mDocumentFrequencies.ensureLoaded();
+
+        Document res = mWebPagesCollection.findOneAndDelete(
+                Filters.eq(Constants.FIELD_ID, id),
+                new FindOneAndDeleteOptions().projection(Projections.include(Constants.FIELDS_FOR_TERMS_UPDATE))
+        );
+
+        mPostingsCollection.deleteMany(Filters.eq(Constants.FIELD_DOC, id));
+        mContentStore.remove(id);
+
+        if (res != null) {
+            mDocumentFrequencies.update(Collections.singletonList(new WebPage(res)), Collections.singletonList(null));
+        }
     }
 
     /**
@@ -277,13 +789,36 @@ public class Indexer {
         return map;
     }
 
+    /**
+     * Iterates over all the web pages stored in the database.
+     *
+     * @param projections the desired fields to be returned
+     * @param consumer    the web pages consumer
+     */
+    public void forEachWebPage(List<String> projections, Consumer<WebPage> consumer) {
+        FindIterable<Document> res = mWebPagesCollection
+                .find()
+                .projection(Projections.include(projections))
+                .batchSize(Constants.INDEX_BUILD_BATCH_SIZE);
+
+        for (Document doc : res) {
+            consumer.accept(new WebPage(doc));
+        }
+    }
+
     /**
      * Returns the number of web pages documents saved in the database.
      *
      * @return documents count
      */
     public long getDocumentsCount() {
-        return mWebPagesCollection.count();
+        ShardedIndex segmentIndex = mSegmentIndex;
+
+        if (segmentIndex != null) {
+            return segmentIndex.getDocumentsCount();
+        }
+
+        return mDocumentFrequencies.getDocumentsCount();
     }
 
     /**
@@ -294,10 +829,13 @@ public class Indexer {
      * @return documents count
      */
     public long getWordDocumentsCount(String word) {
-        return mWebPagesCollection.count(Filters.eq(
-                Constants.FIELD_WORDS_INDEX + "." + Constants.FIELD_TERM,
-                word
-        ));
+        ShardedIndex segmentIndex = mSegmentIndex;
+
+        if (segmentIndex != null) {
+            return segmentIndex.getWordDocumentsCount(word);
+        }
+
+        return mDocumentFrequencies.getWordDocumentsCount(word);
     }
 
     /**
@@ -308,10 +846,28 @@ public class Indexer {
      * @return documents count
      */
     public long getStemDocumentsCount(String stem) {
-        return mWebPagesCollection.count(Filters.eq(
-                Constants.FIELD_STEMS_INDEX + "." + Constants.FIELD_TERM,
-                stem
-        ));
+        ShardedIndex segmentIndex = mSegmentIndex;
+
+        if (segmentIndex != null) {
+            return segmentIndex.getStemDocumentsCount(stem);
+        }
+
+        return mDocumentFrequencies.getStemDocumentsCount(stem);
+    }
+
+    /**
+     * Returns the id of the web page having the given url.
+     *
+     * @param url the web page url string to search for
+     * @return the web page id, or null if not exist
+     */
+    private ObjectId getWebPageId(String url) {
+        Document res = mWebPagesCollection
+                .find(Filters.eq(Constants.FIELD_URL, url))
+                .projection(Projections.include(Constants.FIELD_ID))
+                .first();
+
+        return (res == null ? null : res.getObjectId(Constants.FIELD_ID));
     }
 
     /**
@@ -322,6 +878,13 @@ public class Indexer {
      * @return the matching web page, or null if not exist
      */
     public WebPage getWebPageByURL(String url, List<String> projections) {
+        IndexWriteBuffer writeBuffer = mWriteBuffer;
+
+        // Make sure the buffered writes of the web page are visible
+        if (writeBuffer != null) {
+            writeBuffer.flushIfPending(url);
+        }
+
         Document res = mWebPagesCollection
                 .find(Filters.eq(Constants.FIELD_URL, url))
                 .projection(Projections.include(projections))
@@ -345,6 +908,51 @@ public class Indexer {
         return IndexerUtilities.toWebPages(res);
     }
 
+    /**
+     * Retrieves the contents of the given web pages from the content store.
+     * <p>
+     * Contents still stored inline by older versions are moved into the content store on their first retrieval.
+     *
+     * @param ids list of web pages ids
+     * @return map from a web page id to its content
+     */
+    public Map<ObjectId, String> getContents(List<ObjectId> ids) {
+        Map<ObjectId, String> ret = mContentStore.get(ids);
+
+        if (ret.size() == ids.size()) {
+            return ret;
+        }
+
+        List<ObjectId> missingIds = new ArrayList<>(ids);
+        missingIds.removeAll(ret.keySet());
+
+        FindIterable<Document> res = mWebPagesCollection
+                .find(Filters.and(
+                        Filters.in(Constants.FIELD_ID, missingIds),
+                        Filters.exists(Constants.FIELD_PAGE_CONTENT)
+                ))
+                .projection(Projections.include(Constants.FIELD_PAGE_CONTENT));
+
+        Map<ObjectId, String> inlineContents = new HashMap<>();
+
+        for (Document doc : res) {
+            inlineContents.put(doc.getObjectId(Constants.FIELD_ID), doc.getString(Constants.FIELD_PAGE_CONTENT));
+        }
+
+        if (!inlineContents.isEmpty()) {
+            mContentStore.putAll(inlineContents);
+
+            mWebPagesCollection.updateMany(
+                    Filters.in(Constants.FIELD_ID, inlineContents.keySet()),
+                    Updates.unset(Constants.FIELD_PAGE_CONTENT)
+            );
+
+            ret.putAll(inlineContents);
+        }
+
+        return ret;
+    }
+
     /**
      * Searches for web pages having any of the given filter words.
      *
@@ -353,6 +961,30 @@ public class Indexer {
      * @return list of matching web pages
      */
     public List<WebPage> searchByWord(List<String> filterWords, List<String> filterStems) {
+        ShardedIndex segmentIndex = mSegmentIndex;
+
+        if (segmentIndex != null) {
+            return segmentIndex.searchByWord(filterWords, filterStems);
+        }
+
+        return searchByWord(filterWords, filterStems, TermDictionary.of(filterWords, filterStems));
+    }
+
+    /**
+     * Searches the database for web pages having any of the given filter words,
+     * keying the index of the matching web pages by the ids of the given term dictionary.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @param terms       the term dictionary of the search query terms
+     * @return list of matching web pages
+     */
+    public List<WebPage> searchByWord(List<String> filterWords, List<String> filterStems, TermDictionary terms) {
+
+        if (Constants.SEARCH_BY_POSTINGS) {
+            return IndexerUtilities.buildIndexes(searchPostingsByWord(filterWords, filterStems), terms);
+        }
+
         // Query filter
         Bson filter = Filters.in(
                 Constants.FIELD_STEMS_INDEX + "." + Constants.FIELD_TERM,
@@ -379,7 +1011,7 @@ public class Indexer {
                 Aggregates.project(projections)
         ));
 
-        return IndexerUtilities.toWebPages(res);
+        return IndexerUtilities.buildIndexes(IndexerUtilities.toWebPages(res), terms);
     }
 
     /**
@@ -390,6 +1022,30 @@ public class Indexer {
      * @return list of matching web pages
      */
     public List<WebPage> searchByPhrase(List<String> filterWords, List<String> filterStems) {
+        ShardedIndex segmentIndex = mSegmentIndex;
+
+        if (segmentIndex != null) {
+            return segmentIndex.searchByPhrase(filterWords, filterStems);
+        }
+
+        return searchByPhrase(filterWords, filterStems, TermDictionary.of(filterWords, filterStems));
+    }
+
+    /**
+     * Searches the database for web pages having all of the given filter words in the given order,
+     * keying the index of the matching web pages by the ids of the given term dictionary.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @param terms       the term dictionary of the search query terms
+     * @return list of matching web pages
+     */
+    public List<WebPage> searchByPhrase(List<String> filterWords, List<String> filterStems, TermDictionary terms) {
+
+        if (Constants.SEARCH_BY_POSTINGS) {
+            return IndexerUtilities.buildIndexes(searchPostingsByPhrase(filterWords, filterStems), terms);
+        }
+
         // Query filter
         Bson filter = Filters.all(
                 Constants.FIELD_WORDS_INDEX + "." + Constants.FIELD_TERM,
@@ -427,9 +1083,215 @@ public class Indexer {
             }
         }
 
+        return IndexerUtilities.buildIndexes(ret, terms);
+    }
+
+    // ===========================================================================
+    //
+    // Content Store methods
+    //
+
+    /**
+     * Writes the contents of the given web pages into the content store.
+     *
+     * @param pages map from a web page id to its web page
+     */
+    private void storeContents(Map<ObjectId, WebPage> pages) {
+        Map<ObjectId, String> contents = new HashMap<>();
+
+        for (Map.Entry<ObjectId, WebPage> entry : pages.entrySet()) {
+            if (entry.getValue().content != null) {
+                contents.put(entry.getKey(), entry.getValue().content);
+            }
+        }
+
+        mContentStore.putAll(contents);
+    }
+
+    // ===========================================================================
+    //
+    // Postings Collection methods
+    //
+
+    /**
+     * Replaces the postings of the given web pages with their current words and stems index.
+     *
+     * @param pages map from a web page id to its web page
+     */
+    private void updatePostings(Map<ObjectId, WebPage> pages) {
+        if (pages.isEmpty()) {
+            return;
+        }
+
+        List<Document> postings = new ArrayList<>();
+
+        for (Map.Entry<ObjectId, WebPage> entry : pages.entrySet()) {
+            postings.addAll(IndexerUtilities.toPostings(entry.getKey(), entry.getValue()));
+        }
+
+        mPostingsCollection.deleteMany(Filters.in(Constants.FIELD_DOC, pages.keySet()));
+
+        if (postings.isEmpty()) {
+            return;
+        }
+
+        mPostingsCollection.insertMany(postings, new InsertManyOptions().ordered(false));
+    }
+
+    /**
+     * Searches the postings collection for web pages having any of the given filter stems.
+     * Only the postings of the given words and stems are read.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @return list of matching web pages
+     */
+    private List<WebPage> searchPostingsByWord(List<String> filterWords, List<String> filterStems) {
+        Map<ObjectId, WebPage> pages = new LinkedHashMap<>();
+
+        // Match by any of the stems
+        for (Document posting : findPostings(Constants.TERM_TYPE_STEM, filterStems)) {
+            pages.computeIfAbsent(posting.getObjectId(Constants.FIELD_DOC), this::newPostingsWebPage)
+                    .stemMap.put(posting.getString(Constants.FIELD_TERM), toStemInfo(posting));
+        }
+
+        // Every query word has its stem within the query stems,
+        // so its postings are a subset of the matched web pages
+        fillPostingsWords(pages, filterWords);
+
+        return fillPostingsFields(pages);
+    }
+
+    /**
+     * Searches the postings collection for web pages having all of the given filter words in the given order.
+     * Only the postings of the given words and stems are read.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @return list of matching web pages
+     */
+    private List<WebPage> searchPostingsByPhrase(List<String> filterWords, List<String> filterStems) {
+        Map<ObjectId, WebPage> pages = new LinkedHashMap<>();
+
+        // Match by the words
+        for (Document posting : findPostings(Constants.TERM_TYPE_WORD, filterWords)) {
+            pages.computeIfAbsent(posting.getObjectId(Constants.FIELD_DOC), this::newPostingsWebPage)
+                    .wordPosMap.put(posting.getString(Constants.FIELD_TERM), IndexerUtilities.getPostingPositions(posting));
+        }
+
+        // Keep only the web pages having all of the words
+        int distinctWordsCount = new HashSet<>(filterWords).size();
+        pages.values().removeIf(page -> page.wordPosMap.size() < distinctWordsCount);
+
+        if (pages.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Fill the stems of the matched web pages
+        for (Document posting : findPostings(Constants.TERM_TYPE_STEM, filterStems)) {
+            WebPage page = pages.get(posting.getObjectId(Constants.FIELD_DOC));
+
+            if (page != null) {
+                page.stemMap.put(posting.getString(Constants.FIELD_TERM), toStemInfo(posting));
+            }
+        }
+
+        // Return only web pages having the whole phrase occurred in the same given order
+        pages.values().removeIf(page -> !IndexerUtilities.checkPhraseOccurred(page.wordPosMap, filterWords));
+
+        return fillPostingsFields(pages);
+    }
+
+    /**
+     * Fills the words index of the given matched web pages from the postings of the given words.
+     *
+     * @param pages map from a web page id to its matched web page
+     * @param words list of words
+     */
+    private void fillPostingsWords(Map<ObjectId, WebPage> pages, List<String> words) {
+        for (Document posting : findPostings(Constants.TERM_TYPE_WORD, words)) {
+            WebPage page = pages.get(posting.getObjectId(Constants.FIELD_DOC));
+
+            if (page != null) {
+                page.wordPosMap.put(posting.getString(Constants.FIELD_TERM), IndexerUtilities.getPostingPositions(posting));
+            }
+        }
+    }
+
+    /**
+     * Retrieves the ranking fields of the given matched web pages from the web pages collection.
+     *
+     * @param pages map from a web page id to its matched web page
+     * @return list of matched web pages holding their ranking fields
+     */
+    private List<WebPage> fillPostingsFields(Map<ObjectId, WebPage> pages) {
+        List<WebPage> ret = new ArrayList<>();
+
+        if (pages.isEmpty()) {
+            return ret;
+        }
+
+        FindIterable<Document> res = mWebPagesCollection
+                .find(Filters.in(Constants.FIELD_ID, pages.keySet()))
+                .projection(Projections.include(Constants.FIELDS_FOR_POSTINGS_SEARCH));
+
+        for (Document doc : res) {
+            WebPage page = pages.get(doc.getObjectId(Constants.FIELD_ID));
+            WebPage fields = new WebPage(doc);
+
+            page.url = fields.url;
+            page.rank = fields.rank;
+            page.wordsCount = fields.wordsCount;
+
+            ret.add(page);
+        }
+
         return ret;
     }
 
+    /**
+     * Finds the postings of the given terms.
+     *
+     * @param type  the terms type, either {@code Constants.TERM_TYPE_WORD} or {@code Constants.TERM_TYPE_STEM}
+     * @param terms list of terms
+     * @return the postings documents
+     */
+    private FindIterable<Document> findPostings(String type, List<String> terms) {
+        return mPostingsCollection
+                .find(Filters.and(
+                        Filters.eq(Constants.FIELD_TERM_TYPE, type),
+                        Filters.in(Constants.FIELD_TERM, terms)
+                ))
+                .projection(Projections.excludeId());
+    }
+
+    /**
+     * Constructs an empty web page to be filled from the postings.
+     *
+     * @param id the web page id
+     * @return the web page object
+     */
+    private WebPage newPostingsWebPage(ObjectId id) {
+        WebPage page = new WebPage();
+        page.id = id;
+        page.wordPosMap = new HashMap<>();
+        page.stemMap = new HashMap<>();
+        return page;
+    }
+
+    /**
+     * Returns the stem info of the given stem postings document.
+     *
+     * @param posting the stem postings document
+     * @return the stem info
+     */
+    private StemInfo toStemInfo(Document posting) {
+        return new StemInfo(
+                posting.getInteger(Constants.FIELD_TERM_COUNT),
+                posting.getInteger(Constants.FIELD_TERM_SCORE)
+        );
+    }
+
     // ===========================================================================
     //
     // Dictionary Collection methods
@@ -494,31 +1356,53 @@ public class Indexer {
     // Suggestions Collection methods
     //
 
-    public void insertSuggestion(String suggestion) {
-        mSuggestionsCollection.updateOne(
-                Filters.eq(Constants.FIELD_SUGGESTION, suggestion),
-                Updates.set(Constants.FIELD_SUGGESTION, suggestion),
-                new UpdateOptions().upsert(true)
-        );
+    /**
+     * Logs the given search query for the later suggestions, without waiting for any database access.
+     * The aggregated queries counts are written in batches by a background thread.
+     *
+     * @param query the processed search query
+     */
+    public void logSearchQuery(String query) {
+        getSuggestionLogger().log(query);
     }
 
     /**
-     * Returns all suggestions in the database that
+     * Writes the search queries logged so far to the database and the suggestion index.
+     */
+    public void flushSearchQueries() {
+        getSuggestionLogger().flush();
+    }
+
+    /**
+     * Returns the search queries logger, creating it on the first use.
+     *
+     * @return the search queries logger
+     */
+    private SuggestionLogger getSuggestionLogger() {
+        if (mSuggestionLogger == null) {
+            synchronized (mLock) {
+                if (mSuggestionLogger == null) {
+                    mSuggestionLogger = new SuggestionLogger(mSuggestionIndex);
+                }
+            }
+        }
+
+        return mSuggestionLogger;
+    }
+
+    /**
+     * Returns the most frequent search queries that
      * the given search query is prefix from.
      *
      * @param query the search query
-     * @return a list of matched suggestions sorted in ascending order
+     * @return a list of at most {@code Constants.SUGGESTIONS_MAX_COUNT} quoted suggestions
+     * sorted by frequency in descending order
      */
     public List<String> getSuggestions(String query) {
         List<String> ret = new ArrayList<>();
 
-        FindIterable<Document> res = mSuggestionsCollection
-                .find(Filters.regex(Constants.FIELD_SUGGESTION, query + ".*"))
-                .projection(Projections.excludeId())
-                .sort(Sorts.ascending(Constants.FIELD_SUGGESTION));
-
-        for (Document doc : res) {
-            ret.add("\"" + doc.getString(Constants.FIELD_SUGGESTION) + "\"");
+        for (String suggestion : mSuggestionIndex.getSuggestions(query, Constants.SUGGESTIONS_MAX_COUNT)) {
+            ret.add("\"" + suggestion + "\"");
         }
 
         return ret;
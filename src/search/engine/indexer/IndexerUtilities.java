@@ -2,6 +2,9 @@ package search.engine.indexer;
 
 import com.mongodb.client.MongoIterable;
 import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import search.engine.utils.Constants;
 
 import java.util.*;
 
@@ -48,6 +51,90 @@ public class IndexerUtilities {
         return ret;
     }
 
+    /**
+     * Builds the compact page index of every given search result, keyed by the ids of the given term dictionary,
+     * so that the results are scored by their term ids.
+     *
+     * @param pages list of matching web pages holding the index entries of the search query terms
+     * @param terms the term dictionary to key the index by
+     * @return the given list of web pages
+     */
+    public static List<WebPage> buildIndexes(List<WebPage> pages, TermDictionary terms) {
+        for (WebPage page : pages) {
+            page.index = PageIndex.of(terms, page.wordPosMap, page.stemMap);
+        }
+
+        return pages;
+    }
+
+    /**
+     * Constructs the postings documents of the given web page,
+     * a single document for every distinct word and stem in the web page.
+     * <p>
+     * Word postings hold the word positions packed in binary,
+     * stem postings hold the stem count and tag score.
+     *
+     * @param docId the web page id
+     * @param page  the web page with its words and stems index
+     * @return list of postings documents
+     */
+    public static List<Document> toPostings(ObjectId docId, WebPage page) {
+        return toPostings(docId, page.wordPosMap, page.stemMap);
+    }
+
+    /**
+     * Constructs the postings documents of the given words and stems of a web page.
+     *
+     * @param docId      the web page id
+     * @param wordPosMap map from a word to its positions, or null
+     * @param stemMap    map from a stem to its info, or null
+     * @return list of postings documents
+     */
+    public static List<Document> toPostings(ObjectId docId, Map<String, List<Integer>> wordPosMap,
+                                            Map<String, StemInfo> stemMap) {
+        List<Document> ret = new ArrayList<>();
+
+        if (wordPosMap != null) {
+            for (Map.Entry<String, List<Integer>> entry : wordPosMap.entrySet()) {
+                ret.add(new Document()
+                        .append(Constants.FIELD_TERM_TYPE, Constants.TERM_TYPE_WORD)
+                        .append(Constants.FIELD_TERM, entry.getKey())
+                        .append(Constants.FIELD_DOC, docId)
+                        .append(Constants.FIELD_TERM_COUNT, entry.getValue().size())
+                        .append(Constants.FIELD_TERM_POSITIONS, VarInt.pack(entry.getValue())));
+            }
+        }
+
+        if (stemMap != null) {
+            for (Map.Entry<String, StemInfo> entry : stemMap.entrySet()) {
+                ret.add(new Document()
+                        .append(Constants.FIELD_TERM_TYPE, Constants.TERM_TYPE_STEM)
+                        .append(Constants.FIELD_TERM, entry.getKey())
+                        .append(Constants.FIELD_DOC, docId)
+                        .append(Constants.FIELD_TERM_COUNT, entry.getValue().count)
+                        .append(Constants.FIELD_TERM_SCORE, entry.getValue().score));
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the word positions of the given word postings document.
+     *
+     * @param posting the word postings document
+     * @return list of positions in ascending order
+     */
+    public static List<Integer> getPostingPositions(Document posting) {
+        Object packed = posting.get(Constants.FIELD_TERM_POSITIONS);
+
+        if (packed instanceof Binary) {
+            return VarInt.unpack(((Binary) packed).getData());
+        }
+
+        return VarInt.unpack((byte[]) packed);
+    }
+
     /**
      * Checks if all of the filter words occurred in order
      * in the given web page words position map.
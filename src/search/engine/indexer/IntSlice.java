@@ -0,0 +1,141 @@
+package search.engine.indexer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+
+public class IntSlice extends AbstractList<Integer> implements RandomAccess {
+
+    //
+    // Member variables
+    //
+    private final int[] mArray;
+    private final int mFrom;
+    private final int mTo;
+
+
+    /**
+     * Constructs a read-only list view over the given range of the given array.
+     *
+     * @param array the backing array
+     * @param from  the start index (inclusive)
+     * @param to    the end index (exclusive)
+     */
+    public IntSlice(int[] array, int from, int to) {
+        mArray = array;
+        mFrom = from;
+        mTo = to;
+    }
+
+    /**
+     * Returns the backing array.
+     *
+     * @return the backing array
+     */
+    public int[] getArray() {
+        return mArray;
+    }
+
+    /**
+     * Returns the start index of this slice in the backing array.
+     *
+     * @return the start index (inclusive)
+     */
+    public int getFrom() {
+        return mFrom;
+    }
+
+    /**
+     * Returns the end index of this slice in the backing array.
+     *
+     * @return the end index (exclusive)
+     */
+    public int getTo() {
+        return mTo;
+    }
+
+    @Override
+    public Integer get(int index) {
+        return mArray[mFrom + index];
+    }
+
+    @Override
+    public int size() {
+        return mTo - mFrom;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof List)) {
+            return false;
+        }
+
+        return equals((List<?>) obj, mArray, mFrom, mTo);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    /**
+     * Returns a copy of the slice values.
+     *
+     * @return array of the slice values
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOfRange(mArray, mFrom, mTo);
+    }
+
+    /**
+     * Checks whether the given positions list holds the same values as the given range of the given array,
+     * without boxing the values when possible.
+     *
+     * @param list  the positions list
+     * @param array the array
+     * @param from  the start index (inclusive)
+     * @param to    the end index (exclusive)
+     * @return {@code true} if equal, {@code false} otherwise
+     */
+    public static boolean equals(List<?> list, int[] array, int from, int to) {
+        if (list == null || list.size() != to - from) {
+            return false;
+        }
+
+        if (list instanceof IntSlice) {
+            IntSlice slice = (IntSlice) list;
+
+            for (int i = from; i < to; ++i) {
+                if (slice.mArray[slice.mFrom + i - from] != array[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        if (list instanceof PackedPositions) {
+            int[] values = ((PackedPositions) list).toIntArray();
+
+            for (int i = from; i < to; ++i) {
+                if (values[i - from] != array[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        for (int i = from; i < to; ++i) {
+            Object value = list.get(i - from);
+
+            if (!(value instanceof Integer) || (Integer) value != array[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,107 @@
+package search.engine.indexer;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+
+public class PackedPositions extends AbstractList<Integer> implements RandomAccess {
+
+    //
+    // Member variables
+    //
+
+    /**
+     * The positions packed by {@link VarInt#pack(List)}.
+     */
+    private final byte[] mBytes;
+
+    /**
+     * The positions count, counted from the packed bytes without decoding.
+     */
+    private final int mSize;
+
+    /**
+     * The decoded positions, or null if not decoded yet.
+     */
+    private volatile int[] mPositions;
+
+
+    /**
+     * Constructs a positions list over the given packed positions,
+     * to be decoded lazily on the first positions access.
+     *
+     * @param bytes the packed positions
+     */
+    public PackedPositions(byte[] bytes) {
+        mBytes = bytes;
+
+        // Every variable-length integer ends with a byte having its most significant bit cleared
+        int size = 0;
+
+        for (byte b : bytes) {
+            if ((b & 0x80) == 0) {
+                size++;
+            }
+        }
+
+        mSize = size;
+    }
+
+    /**
+     * Returns the packed positions.
+     *
+     * @return the packed positions
+     */
+    public byte[] getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Returns the decoded positions.
+     *
+     * @return array of positions in ascending order
+     */
+    public int[] toIntArray() {
+        int[] positions = mPositions;
+
+        if (positions == null) {
+            positions = new int[mSize];
+            int[] offset = {0};
+            int pos = 0;
+
+            for (int i = 0; i < mSize; ++i) {
+                pos += VarInt.read(mBytes, offset);
+                positions[i] = pos;
+            }
+
+            mPositions = positions;
+        }
+
+        return positions;
+    }
+
+    @Override
+    public Integer get(int index) {
+        return toIntArray()[index];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof List)) {
+            return false;
+        }
+
+        return IntSlice.equals((List<?>) obj, toIntArray(), 0, mSize);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
@@ -0,0 +1,533 @@
+package search.engine.indexer;
+
+import java.util.*;
+
+
+public class PageIndex {
+
+    /**
+     * Builds a page index incrementally while parsing a web page.
+     */
+    public static class Builder {
+
+        //
+        // Member variables
+        //
+
+        /**
+         * Map from a term to its slot, in the order of first occurrence.
+         */
+        private Map<String, Integer> mWordSlots = new HashMap<>();
+        private Map<String, Integer> mStemSlots = new HashMap<>();
+
+        /**
+         * The word slot of every occurrence along with its position.
+         */
+        private int[] mOccurrenceSlots = new int[256];
+        private int[] mOccurrencePositions = new int[256];
+        private int mOccurrencesCount = 0;
+
+        /**
+         * The count and score of every stem slot.
+         */
+        private int[] mStemCounts = new int[64];
+        private int[] mStemScores = new int[64];
+
+        /**
+         * Adds an occurrence of the given word at the given position.
+         * Positions must be added in ascending order.
+         *
+         * @param word     the word
+         * @param position the word position
+         */
+        public void addWord(String word, int position) {
+            Integer slot = mWordSlots.get(word);
+
+            if (slot == null) {
+                slot = mWordSlots.size();
+                mWordSlots.put(word, slot);
+            }
+
+            if (mOccurrencesCount == mOccurrenceSlots.length) {
+                mOccurrenceSlots = Arrays.copyOf(mOccurrenceSlots, mOccurrencesCount * 2);
+                mOccurrencePositions = Arrays.copyOf(mOccurrencePositions, mOccurrencesCount * 2);
+            }
+
+            mOccurrenceSlots[mOccurrencesCount] = slot;
+            mOccurrencePositions[mOccurrencesCount] = position;
+            mOccurrencesCount++;
+        }
+
+        /**
+         * Adds an occurrence of the given stem with the given tag score.
+         *
+         * @param stem  the stem word
+         * @param score the tag score of the occurrence
+         */
+        public void addStem(String stem, int score) {
+            Integer slot = mStemSlots.get(stem);
+
+            if (slot == null) {
+                slot = mStemSlots.size();
+                mStemSlots.put(stem, slot);
+
+                if (slot == mStemCounts.length) {
+                    mStemCounts = Arrays.copyOf(mStemCounts, slot * 2);
+                    mStemScores = Arrays.copyOf(mStemScores, slot * 2);
+                }
+            }
+
+            mStemCounts[slot]++;
+            mStemScores[slot] += score;
+        }
+
+        /**
+         * Builds the page index over a page-local term dictionary,
+         * assigning every word and stem its rank among the sorted page terms as its id.
+         *
+         * @return the page index
+         */
+        public PageIndex build() {
+            PageIndex ret = new PageIndex();
+
+            // The page terms, words and stems sharing the same ids
+            Set<String> termsSet = new HashSet<>(mWordSlots.keySet());
+            termsSet.addAll(mStemSlots.keySet());
+
+            String[] terms = termsSet.toArray(new String[0]);
+            Arrays.sort(terms);
+
+            ret.mTerms = TermDictionary.ofSorted(terms);
+
+            // Words
+            String[] words = sortedTerms(mWordSlots);
+            int[] slotRank = new int[words.length];
+
+            ret.mWordIds = new int[words.length];
+
+            for (int i = 0; i < words.length; ++i) {
+                slotRank[mWordSlots.get(words[i])] = i;
+                ret.mWordIds[i] = Arrays.binarySearch(terms, words[i]);
+            }
+
+            // Counting sort the occurrences by the word rank, keeping the positions order
+            int[] offsets = new int[words.length + 1];
+
+            for (int i = 0; i < mOccurrencesCount; ++i) {
+                offsets[slotRank[mOccurrenceSlots[i]] + 1]++;
+            }
+
+            for (int i = 0; i < words.length; ++i) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            int[] positions = new int[mOccurrencesCount];
+            int[] next = Arrays.copyOf(offsets, words.length);
+
+            for (int i = 0; i < mOccurrencesCount; ++i) {
+                positions[next[slotRank[mOccurrenceSlots[i]]]++] = mOccurrencePositions[i];
+            }
+
+            ret.mWordOffsets = offsets;
+            ret.mPositions = positions;
+
+            // Stems
+            String[] stems = sortedTerms(mStemSlots);
+
+            ret.mStemIds = new int[stems.length];
+            ret.mStemCounts = new int[stems.length];
+            ret.mStemScores = new int[stems.length];
+
+            for (int i = 0; i < stems.length; ++i) {
+                int slot = mStemSlots.get(stems[i]);
+                ret.mStemIds[i] = Arrays.binarySearch(terms, stems[i]);
+                ret.mStemCounts[i] = mStemCounts[slot];
+                ret.mStemScores[i] = mStemScores[slot];
+            }
+
+            return ret;
+        }
+
+        /**
+         * Returns the terms of the given slots map sorted in ascending order.
+         *
+         * @param slots map from a term to its slot
+         * @return array of sorted terms
+         */
+        private static String[] sortedTerms(Map<String, Integer> slots) {
+            String[] ret = slots.keySet().toArray(new String[0]);
+            Arrays.sort(ret);
+            return ret;
+        }
+    }
+
+    //
+    // Member variables
+    //
+
+    /**
+     * The term dictionary resolving the words and stems into the term ids below.
+     */
+    private TermDictionary mTerms;
+
+    /**
+     * The ids of the distinct words in ascending order, and the positions of the i-th word
+     * in {@code mPositions[mWordOffsets[i], mWordOffsets[i + 1])}.
+     */
+    private int[] mWordIds;
+    private int[] mWordOffsets;
+    private int[] mPositions;
+
+    /**
+     * The ids of the distinct stems in ascending order, with their counts and tag scores in parallel arrays.
+     */
+    private int[] mStemIds;
+    private int[] mStemCounts;
+    private int[] mStemScores;
+
+
+    /**
+     * Builds the page index of the given decoded words and stems index, keyed by the ids of the given term dictionary.
+     * <p>
+     * Used for the search results, whose index holds only the search query terms,
+     * so that they are scored by their term ids.
+     * The terms not found in the dictionary are skipped.
+     *
+     * @param terms      the term dictionary to key the index by
+     * @param wordPosMap map from a word to its positions, or null
+     * @param stemMap    map from a stem to its info, or null
+     * @return the page index
+     */
+    public static PageIndex of(TermDictionary terms, Map<String, List<Integer>> wordPosMap, Map<String, StemInfo> stemMap) {
+        PageIndex ret = new PageIndex();
+        ret.mTerms = terms;
+
+        // Words
+        TreeMap<Integer, List<Integer>> words = new TreeMap<>();
+        int positionsCount = 0;
+
+        if (wordPosMap != null) {
+            for (Map.Entry<String, List<Integer>> entry : wordPosMap.entrySet()) {
+                int id = terms.getId(entry.getKey());
+
+                if (id >= 0) {
+                    words.put(id, entry.getValue());
+                    positionsCount += entry.getValue().size();
+                }
+            }
+        }
+
+        ret.mWordIds = new int[words.size()];
+        ret.mWordOffsets = new int[words.size() + 1];
+        ret.mPositions = new int[positionsCount];
+
+        int idx = 0, offset = 0;
+
+        for (Map.Entry<Integer, List<Integer>> entry : words.entrySet()) {
+            ret.mWordIds[idx] = entry.getKey();
+            offset = copyPositions(entry.getValue(), ret.mPositions, offset);
+            ret.mWordOffsets[++idx] = offset;
+        }
+
+        // Stems
+        TreeMap<Integer, StemInfo> stems = new TreeMap<>();
+
+        if (stemMap != null) {
+            for (Map.Entry<String, StemInfo> entry : stemMap.entrySet()) {
+                int id = terms.getId(entry.getKey());
+
+                if (id >= 0) {
+                    stems.put(id, entry.getValue());
+                }
+            }
+        }
+
+        ret.mStemIds = new int[stems.size()];
+        ret.mStemCounts = new int[stems.size()];
+        ret.mStemScores = new int[stems.size()];
+
+        idx = 0;
+
+        for (Map.Entry<Integer, StemInfo> entry : stems.entrySet()) {
+            ret.mStemIds[idx] = entry.getKey();
+            ret.mStemCounts[idx] = entry.getValue().count;
+            ret.mStemScores[idx] = entry.getValue().score;
+            idx++;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the term dictionary resolving the terms of this page index into their ids.
+     *
+     * @return the term dictionary
+     */
+    public TermDictionary getTermDictionary() {
+        return mTerms;
+    }
+
+    /**
+     * Returns the number of occurrences of the given word.
+     *
+     * @param word the word id
+     * @return the occurrences count, or 0 if not exists
+     */
+    public int getWordCount(int word) {
+        int idx = (word < 0 ? -1 : Arrays.binarySearch(mWordIds, word));
+        return (idx < 0 ? 0 : mWordOffsets[idx + 1] - mWordOffsets[idx]);
+    }
+
+    /**
+     * Returns the number of occurrences of the given word.
+     *
+     * @param word the word
+     * @return the occurrences count, or 0 if not exists
+     */
+    public int getWordCount(String word) {
+        return getWordCount(mTerms.getId(word));
+    }
+
+    /**
+     * Returns the occurrences count of the given stem.
+     *
+     * @param stem the stem word id
+     * @return the occurrences count, or 0 if not exists
+     */
+    public int getStemCount(int stem) {
+        int idx = (stem < 0 ? -1 : Arrays.binarySearch(mStemIds, stem));
+        return (idx < 0 ? 0 : mStemCounts[idx]);
+    }
+
+    /**
+     * Returns the occurrences count of the given stem.
+     *
+     * @param stem the stem word
+     * @return the occurrences count, or 0 if not exists
+     */
+    public int getStemCount(String stem) {
+        return getStemCount(mTerms.getId(stem));
+    }
+
+    /**
+     * Returns the sum of the tag scores of the given stem occurrences.
+     *
+     * @param stem the stem word id
+     * @return the stem score, or 0 if not exists
+     */
+    public int getStemScore(int stem) {
+        int idx = (stem < 0 ? -1 : Arrays.binarySearch(mStemIds, stem));
+        return (idx < 0 ? 0 : mStemScores[idx]);
+    }
+
+    /**
+     * Returns the sum of the tag scores of the given stem occurrences.
+     *
+     * @param stem the stem word
+     * @return the stem score, or 0 if not exists
+     */
+    public int getStemScore(String stem) {
+        return getStemScore(mTerms.getId(stem));
+    }
+
+    /**
+     * Checks whether this page index holds the same words positions and stems info
+     * as the given maps, without boxing the positions when possible.
+     *
+     * @param wordPosMap map from a word to its positions
+     * @param stemMap    map from a stem to its info
+     * @return {@code true} if identical, {@code false} otherwise
+     */
+    public boolean equalsIndex(Map<String, List<Integer>> wordPosMap, Map<String, StemInfo> stemMap) {
+        if (wordPosMap == null || stemMap == null
+                || wordPosMap.size() != mWordIds.length || stemMap.size() != mStemIds.length) {
+            return false;
+        }
+
+        for (int i = 0; i < mWordIds.length; ++i) {
+            List<Integer> positions = wordPosMap.get(mTerms.getTerm(mWordIds[i]));
+
+            if (!IntSlice.equals(positions, mPositions, mWordOffsets[i], mWordOffsets[i + 1])) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < mStemIds.length; ++i) {
+            StemInfo info = stemMap.get(mTerms.getTerm(mStemIds[i]));
+
+            if (info == null || info.count != mStemCounts[i] || info.score != mStemScores[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns a read-only map view from every word to its positions.
+     *
+     * @return the words positions map view
+     */
+    public Map<String, List<Integer>> asWordPosMap() {
+        return new AbstractMap<String, List<Integer>>() {
+            @Override
+            public List<Integer> get(Object key) {
+                int idx = indexOf(mWordIds, key);
+                return (idx < 0 ? null : positionsOf(idx));
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return indexOf(mWordIds, key) >= 0;
+            }
+
+            @Override
+            public int size() {
+                return mWordIds.length;
+            }
+
+            @Override
+            public Set<Entry<String, List<Integer>>> entrySet() {
+                return new AbstractSet<Entry<String, List<Integer>>>() {
+                    @Override
+                    public Iterator<Entry<String, List<Integer>>> iterator() {
+                        return new Iterator<Entry<String, List<Integer>>>() {
+                            int idx = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return idx < mWordIds.length;
+                            }
+
+                            @Override
+                            public Entry<String, List<Integer>> next() {
+                                if (idx >= mWordIds.length) {
+                                    throw new NoSuchElementException();
+                                }
+
+                                Entry<String, List<Integer>> entry = new SimpleImmutableEntry<>(
+                                        mTerms.getTerm(mWordIds[idx]), positionsOf(idx));
+                                idx++;
+                                return entry;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return mWordIds.length;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only map view from every stem to its info.
+     *
+     * @return the stems info map view
+     */
+    public Map<String, StemInfo> asStemMap() {
+        return new AbstractMap<String, StemInfo>() {
+            @Override
+            public StemInfo get(Object key) {
+                int idx = indexOf(mStemIds, key);
+                return (idx < 0 ? null : new StemInfo(mStemCounts[idx], mStemScores[idx]));
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return indexOf(mStemIds, key) >= 0;
+            }
+
+            @Override
+            public int size() {
+                return mStemIds.length;
+            }
+
+            @Override
+            public Set<Entry<String, StemInfo>> entrySet() {
+                return new AbstractSet<Entry<String, StemInfo>>() {
+                    @Override
+                    public Iterator<Entry<String, StemInfo>> iterator() {
+                        return new Iterator<Entry<String, StemInfo>>() {
+                            int idx = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return idx < mStemIds.length;
+                            }
+
+                            @Override
+                            public Entry<String, StemInfo> next() {
+                                if (idx >= mStemIds.length) {
+                                    throw new NoSuchElementException();
+                                }
+
+                                Entry<String, StemInfo> entry = new SimpleImmutableEntry<>(
+                                        mTerms.getTerm(mStemIds[idx]), new StemInfo(mStemCounts[idx], mStemScores[idx]));
+                                idx++;
+                                return entry;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return mStemIds.length;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the index of the given term in the given sorted term ids.
+     *
+     * @param ids  array of term ids in ascending order
+     * @param term the term object
+     * @return the term index, or a negative value if not exists
+     */
+    private int indexOf(int[] ids, Object term) {
+        int id = (term instanceof String ? mTerms.getId((String) term) : -1);
+        return (id < 0 ? -1 : Arrays.binarySearch(ids, id));
+    }
+
+    /**
+     * Returns the positions of the given word index.
+     *
+     * @param idx the word index
+     * @return the positions list view
+     */
+    private List<Integer> positionsOf(int idx) {
+        return new IntSlice(mPositions, mWordOffsets[idx], mWordOffsets[idx + 1]);
+    }
+
+    /**
+     * Copies the given positions into the given array, without boxing them when possible.
+     *
+     * @param positions list of positions
+     * @param array     the array to copy into
+     * @param offset    the array index to start copying at
+     * @return the array index after the copied positions
+     */
+    private static int copyPositions(List<Integer> positions, int[] array, int offset) {
+        if (positions instanceof IntSlice) {
+            IntSlice slice = (IntSlice) positions;
+            System.arraycopy(slice.getArray(), slice.getFrom(), array, offset, slice.size());
+            return offset + slice.size();
+        }
+
+        if (positions instanceof PackedPositions) {
+            int[] values = ((PackedPositions) positions).toIntArray();
+            System.arraycopy(values, 0, array, offset, values.length);
+            return offset + values.length;
+        }
+
+        for (int position : positions) {
+            array[offset++] = position;
+        }
+
+        return offset;
+    }
+}
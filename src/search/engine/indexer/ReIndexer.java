@@ -0,0 +1,351 @@
+package search.engine.indexer;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import search.engine.archive.WarcReader;
+import search.engine.archive.WarcRecord;
+import search.engine.utils.Constants;
+import search.engine.utils.Stemmer;
+import search.engine.utils.WebUtilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+
+public class ReIndexer {
+
+    //
+    // Member variables
+    //
+    private Indexer mIndexer;
+
+    /**
+     * The parsed web pages waiting to be written in the next bulk write.
+     */
+    private List<WebPage> mBatch = new ArrayList<>();
+    private final Object mBatchLock = new Object();
+
+    /**
+     * Re-indexing statistics.
+     */
+    private AtomicLong mReadCnt = new AtomicLong();
+    private AtomicLong mIndexedCnt = new AtomicLong();
+    private AtomicLong mRejectedCnt = new AtomicLong();
+
+
+    /**
+     * Constructor.
+     *
+     * @param indexer the indexer to write the re-parsed web pages into
+     */
+    public ReIndexer(Indexer indexer) {
+        mIndexer = indexer;
+    }
+
+    /**
+     * Re-parses and re-indexes all the raw web pages stored in the given path
+     * using a fork-join pool of the given parallelism.
+     * <p>
+     * The given path can be an archive segment, a raw HTML file, or a directory
+     * holding any of them.
+     *
+     * @param path        the stored raw web pages path
+     * @param parallelism the number of worker threads
+     */
+    public void start(String path, int parallelism) {
+        System.out.println("Start re-indexing " + path + " using " + parallelism + " thread(s)...");
+
+        mReadCnt.set(0);
+        mIndexedCnt.set(0);
+        mRejectedCnt.set(0);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Semaphore inFlight = new Semaphore(parallelism * Constants.REINDEX_IN_FLIGHT_PER_THREAD);
+        long startTime = System.nanoTime();
+
+        // Read records sequentially and parse them in parallel,
+        // limiting the number of in-flight records to bound the memory usage
+        readRecords(new File(path), record -> {
+            mReadCnt.incrementAndGet();
+            inFlight.acquireUninterruptibly();
+
+            pool.execute(() -> {
+                try {
+                    index(record);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    inFlight.release();
+                }
+            });
+
+            return true;
+        });
+
+        pool.shutdown();
+
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        flushBatch();
+
+        double secs = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.println("Finish re-indexing");
+        System.out.println("Total read web pages: " + mReadCnt.get());
+        System.out.println("Total indexed web pages: " + mIndexedCnt.get());
+        System.out.println("Total rejected web pages: " + mRejectedCnt.get());
+        System.out.printf("Re-indexing speed: %.01f pages/sec\n", mReadCnt.get() / secs);
+        WebPageParser.sOutLinksCache.printStats();
+        Stemmer.printStats();
+    }
+
+    /**
+     * Measures the parsing throughput of the stored raw web pages at different
+     * parallelism levels and prints a core-scaling report.
+     * <p>
+     * Only parsing is measured (i.e. nothing is written to the database).
+     *
+     * @param path the stored raw web pages path
+     */
+    public void reportScaling(String path) {
+        List<WarcRecord> sample = new ArrayList<>();
+
+        // Stop reading as soon as the sample is full
+        readRecords(new File(path), record -> {
+            sample.add(record);
+            return sample.size() < Constants.REINDEX_BENCHMARK_PAGES_COUNT;
+        });
+
+        if (sample.isEmpty()) {
+            System.out.println("No stored web pages found in " + path);
+            return;
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double basePagesPerSec = 0;
+
+        System.out.println("Core scaling report on " + sample.size() + " web page(s):");
+        System.out.println("threads\t\tpages/sec\tspeedup\t\tefficiency");
+
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long startTime = System.nanoTime();
+
+            try {
+                pool.submit(() -> sample.parallelStream().forEach(this::parse)).get();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            pool.shutdown();
+
+            double pagesPerSec = sample.size() / ((System.nanoTime() - startTime) / 1e9);
+
+            if (threads == 1) {
+                basePagesPerSec = pagesPerSec;
+            }
+
+            double speedup = pagesPerSec / basePagesPerSec;
+            System.out.printf("%d\t\t%.01f\t\t%.02fx\t\t%.0f%%\n", threads, pagesPerSec, speedup, 100 * speedup / threads);
+
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Parses the given raw web page record and adds it to the pending bulk write batch.
+     *
+     * @param record the stored raw web page record
+     */
+    private void index(WarcRecord record) {
+        WebPage page = parse(record);
+
+        if (page == null) {
+            mRejectedCnt.incrementAndGet();
+            return;
+        }
+
+        List<WebPage> batch = null;
+
+        synchronized (mBatchLock) {
+            mBatch.add(page);
+
+            if (mBatch.size() >= Constants.REINDEX_BATCH_SIZE) {
+                batch = mBatch;
+                mBatch = new ArrayList<>();
+            }
+        }
+
+        // Write outside the lock so that other workers keep parsing meanwhile
+        if (batch != null) {
+            writeBatch(batch);
+        }
+    }
+
+    /**
+     * Writes the remaining pending web pages.
+     */
+    private void flushBatch() {
+        List<WebPage> batch;
+
+        synchronized (mBatchLock) {
+            batch = mBatch;
+            mBatch = new ArrayList<>();
+        }
+
+        writeBatch(batch);
+    }
+
+    /**
+     * Writes the given batch of web pages in a single bulk write.
+     *
+     * @param batch list of parsed web pages
+     */
+    private void writeBatch(List<WebPage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        mIndexer.updateWebPages(batch);
+        mIndexedCnt.addAndGet(batch.size());
+    }
+
+    /**
+     * Parses the given raw web page record into a web page object.
+     *
+     * @param record the stored raw web page record
+     * @return the parsed web page, or null if it is not a valid HTML English web page
+     */
+    private WebPage parse(WarcRecord record) {
+        if (record.statusCode != 200 || !isHTML(record)) {
+            return null;
+        }
+
+        URL url = WebUtilities.getURL(record.url);
+
+        if (url == null) {
+            return null;
+        }
+
+        try {
+            Document doc = Jsoup.parse(new ByteArrayInputStream(record.body), record.charset, record.url);
+
+            if (doc.body() == null) {
+                return null;
+            }
+
+            return mIndexer.parseWebPage(url, doc, WebPageParser.extractOutLinks(doc));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the given record holds an HTML response.
+     *
+     * @param record the stored raw web page record
+     * @return {@code true} if the record content type is HTML or unknown, {@code false} otherwise
+     */
+    private boolean isHTML(WarcRecord record) {
+        for (Map.Entry<String, String> header : record.headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase("content-type")) {
+                return header.getValue().toLowerCase().contains("html");
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the stored raw web page records in the given path
+     * and passes them one by one to the given consumer, until it asks to stop.
+     *
+     * @param path     an archive segment, a raw HTML file, or a directory holding any of them
+     * @param consumer the records consumer, returning {@code false} to stop reading
+     * @return {@code false} if the consumer asked to stop, {@code true} otherwise
+     */
+    private boolean readRecords(File path, Predicate<WarcRecord> consumer) {
+        if (path.isDirectory()) {
+            for (File segment : WarcReader.listSegments(path)) {
+                if (!readRecords(segment, consumer)) {
+                    return false;
+                }
+            }
+
+            File[] files = path.listFiles();
+
+            if (files != null) {
+                for (File file : files) {
+                    if (isHTMLFile(file) && !readRecords(file, consumer)) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        try {
+            if (isHTMLFile(path)) {
+                return consumer.test(readHTMLFile(path));
+            }
+
+            try (WarcReader reader = new WarcReader(path)) {
+                WarcRecord record;
+
+                while ((record = reader.next()) != null) {
+                    if (!consumer.test(record)) {
+                        return false;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println(path + ": " + e.getMessage());
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether the given file is a raw HTML file.
+     *
+     * @param file the file to check
+     * @return {@code true} if the given file is an HTML file, {@code false} otherwise
+     */
+    private boolean isHTMLFile(File file) {
+        String name = file.getName().toLowerCase();
+        return file.isFile() && (name.endsWith(".html") || name.endsWith(".htm"));
+    }
+
+    /**
+     * Reads the given raw HTML file as a record addressed by the file URL.
+     *
+     * @param file the HTML file to read
+     * @return the web page record
+     */
+    private WarcRecord readHTMLFile(File file) throws Exception {
+        WarcRecord record = new WarcRecord();
+        record.url = file.toURI().toURL().toString();
+        record.fetchTime = file.lastModified();
+        record.statusCode = 200;
+        record.statusMessage = "OK";
+        record.body = Files.readAllBytes(file.toPath());
+        return record;
+    }
+}
@@ -0,0 +1,234 @@
+package search.engine.indexer;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.conversions.Bson;
+import search.engine.utils.Constants;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+
+public class SchemaMigrator {
+
+    //
+    // Member variables
+    //
+    private MongoCollection<Document> mWebPagesCollection;
+
+
+    /**
+     * Constructs a schema migrator for the web pages stored by the given indexer.
+     *
+     * @param indexer the indexer of the web pages to migrate
+     */
+    public SchemaMigrator(Indexer indexer) {
+        mWebPagesCollection = indexer.getWebPagesCollection();
+    }
+
+    /**
+     * Rewrites the words and stems index of all the web pages stored in an older schema version
+     * into the current schema version, using batched unordered bulk writes.
+     *
+     * @return the number of migrated web pages
+     */
+    public long migrate() {
+        FindIterable<Document> res = mWebPagesCollection
+                .find(oldSchemaFilter())
+                .projection(Projections.include(Constants.FIELD_WORDS_INDEX, Constants.FIELD_STEMS_INDEX))
+                .batchSize(Constants.SCHEMA_MIGRATION_BATCH_SIZE);
+
+        List<WriteModel<Document>> operations = new ArrayList<>();
+        long cnt = 0;
+
+        for (Document doc : res) {
+            WebPage page = new WebPage(doc);
+
+            Document set = new Document(Constants.FIELD_SCHEMA_VERSION, Constants.SCHEMA_VERSION);
+
+            if (page.wordPosMap != null) {
+                set.append(Constants.FIELD_WORDS_INDEX, page.getWordsIndex());
+            }
+
+            if (page.stemMap != null) {
+                set.append(Constants.FIELD_STEMS_INDEX, page.getStemsIndex());
+            }
+
+            operations.add(new UpdateOneModel<>(
+                    Filters.eq(Constants.FIELD_ID, page.id),
+                    new Document("$set", set)
+            ));
+
+            if (operations.size() >= Constants.SCHEMA_MIGRATION_BATCH_SIZE) {
+                mWebPagesCollection.bulkWrite(operations, new BulkWriteOptions().ordered(false));
+                cnt += operations.size();
+                operations.clear();
+
+                System.out.println(cnt + " web page(s) migrated...");
+            }
+        }
+
+        if (!operations.isEmpty()) {
+            mWebPagesCollection.bulkWrite(operations, new BulkWriteOptions().ordered(false));
+            cnt += operations.size();
+        }
+
+        return cnt;
+    }
+
+    /**
+     * Compares the stored size and the decode time of the words and stems index
+     * between schema version 1 and the current schema version on a sample of the stored web pages,
+     * and prints the results.
+     */
+    public void reportSizes() {
+        FindIterable<Document> res = mWebPagesCollection
+                .find()
+                .projection(Projections.include(Constants.FIELD_WORDS_INDEX, Constants.FIELD_STEMS_INDEX))
+                .limit(Constants.SCHEMA_REPORT_SAMPLE_COUNT);
+
+        List<byte[]> oldDocs = new ArrayList<>();
+        List<byte[]> newDocs = new ArrayList<>();
+        long oldSize = 0, newSize = 0;
+
+        for (Document doc : res) {
+            WebPage page = new WebPage(doc);
+
+            if (page.wordPosMap == null || page.stemMap == null) {
+                continue;
+            }
+
+            byte[] oldDoc = encode(new Document()
+                    .append(Constants.FIELD_WORDS_INDEX, getVersion1WordsIndex(page))
+                    .append(Constants.FIELD_STEMS_INDEX, getVersion1StemsIndex(page)));
+
+            byte[] newDoc = encode(new Document()
+                    .append(Constants.FIELD_WORDS_INDEX, page.getWordsIndex())
+                    .append(Constants.FIELD_STEMS_INDEX, page.getStemsIndex()));
+
+            oldDocs.add(oldDoc);
+            newDocs.add(newDoc);
+            oldSize += oldDoc.length;
+            newSize += newDoc.length;
+        }
+
+        if (oldDocs.isEmpty()) {
+            System.out.println("No web pages to compare");
+            return;
+        }
+
+        // Warm up before measuring
+        decodeAll(oldDocs);
+        decodeAll(newDocs);
+
+        long oldTime = decodeAll(oldDocs);
+        long newTime = decodeAll(newDocs);
+
+        System.out.println("Schema comparison on " + oldDocs.size() + " web page(s):");
+        System.out.printf("Version 1 index size:\t %d bytes (%.1f per page)\n", oldSize, oldSize / (double) oldDocs.size());
+        System.out.printf("Version %d index size:\t %d bytes (%.1f per page, %.1f%%)\n", Constants.SCHEMA_VERSION,
+                newSize, newSize / (double) newDocs.size(), 100.0 * newSize / oldSize);
+        System.out.printf("Version 1 decode time:\t %.04f sec\n", oldTime / 1e9);
+        System.out.printf("Version %d decode time:\t %.04f sec\n", Constants.SCHEMA_VERSION, newTime / 1e9);
+    }
+
+    /**
+     * Returns the filter of the web pages stored in an older schema version.
+     *
+     * @return the filter
+     */
+    private static Bson oldSchemaFilter() {
+        return Filters.or(
+                Filters.exists(Constants.FIELD_SCHEMA_VERSION, false),
+                Filters.lt(Constants.FIELD_SCHEMA_VERSION, Constants.SCHEMA_VERSION)
+        );
+    }
+
+    /**
+     * Returns the words index of the given web page in schema version 1.
+     *
+     * @param page the web page
+     * @return list of words index entry documents
+     */
+    private static List<Document> getVersion1WordsIndex(WebPage page) {
+        List<Document> ret = new ArrayList<>();
+
+        for (Map.Entry<String, List<Integer>> entry : page.wordPosMap.entrySet()) {
+            ret.add(new Document()
+                    .append(Constants.FIELD_TERM, entry.getKey())
+                    .append(Constants.FIELD_TERM_POSITIONS, new ArrayList<>(entry.getValue())));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the stems index of the given web page in schema version 1.
+     *
+     * @param page the web page
+     * @return list of stems index entry documents
+     */
+    private static List<Document> getVersion1StemsIndex(WebPage page) {
+        List<Document> ret = new ArrayList<>();
+
+        for (Map.Entry<String, StemInfo> entry : page.stemMap.entrySet()) {
+            ret.add(new Document()
+                    .append(Constants.FIELD_TERM, entry.getKey())
+                    .append(Constants.FIELD_TERM_COUNT, entry.getValue().count)
+                    .append(Constants.FIELD_TERM_SCORE, entry.getValue().score));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Encodes the given document into BSON bytes.
+     *
+     * @param doc the document
+     * @return the BSON bytes
+     */
+    private static byte[] encode(Document doc) {
+        ByteBuffer buffer = new RawBsonDocument(doc, new DocumentCodec()).getByteBuffer().asNIO();
+        byte[] ret = new byte[buffer.remaining()];
+        buffer.get(ret);
+        return ret;
+    }
+
+    /**
+     * Decodes the given BSON documents into web pages, reading all of their positions.
+     *
+     * @param docs list of BSON documents
+     * @return the elapsed time in nanoseconds
+     */
+    private static long decodeAll(List<byte[]> docs) {
+        DocumentCodec codec = new DocumentCodec();
+        long sum = 0;
+        long startTime = System.nanoTime();
+
+        for (byte[] bytes : docs) {
+            Document doc = codec.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)), DecoderContext.builder().build());
+            WebPage page = new WebPage(doc);
+
+            for (List<Integer> positions : page.wordPosMap.values()) {
+                for (int pos : positions) {
+                    sum += pos;
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - startTime;
+
+        // Keep the positions sum alive so the reading loop is not optimized away
+        if (sum == -1) {
+            System.out.println();
+        }
+
+        return elapsed;
+    }
+}
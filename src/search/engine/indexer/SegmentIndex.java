@@ -0,0 +1,521 @@
+package search.engine.indexer;
+
+import search.engine.utils.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+
+public class SegmentIndex {
+
+    //
+    // Member variables
+    //
+    private List<IndexSegmentReader> mSegments = new ArrayList<>();
+    private TermDictionary mTerms;
+    private long mDocumentsCount = 0;
+
+    /**
+     * Writes the segments of a segment index into a directory, one web page at a time.
+     */
+    static class Builder {
+
+        //
+        // Member variables
+        //
+        private File mDirectory;
+        private TermDictionary.Builder mTerms;
+        private boolean mOwnsTerms;
+        private IndexSegmentWriter mWriter;
+        private int mSegmentsCount = 0;
+        private long mDocumentsCount = 0;
+
+
+        /**
+         * Constructs a builder writing into the given directory, replacing any of its files.
+         *
+         * @param directory    the directory to write the segments into
+         * @param oldDirectory the directory of the previously built segments, whose term dictionary is extended
+         * @throws IOException if the directory cannot be created
+         */
+        Builder(File directory, File oldDirectory) throws IOException {
+            this(directory, new TermDictionary.Builder(readTermDictionary(oldDirectory)));
+            mOwnsTerms = true;
+        }
+
+        /**
+         * Constructs a builder writing into the given directory, replacing any of its files,
+         * and assigning the term ids from the given term dictionary shared with other builders.
+         * <p>
+         * The shared term dictionary is not written by this builder.
+         *
+         * @param directory the directory to write the segments into
+         * @param terms     the shared term dictionary builder
+         * @throws IOException if the directory cannot be created
+         */
+        Builder(File directory, TermDictionary.Builder terms) throws IOException {
+            deleteDirectory(directory);
+
+            if (!directory.mkdirs()) {
+                throw new IOException("Cannot create directory: " + directory);
+            }
+
+            mDirectory = directory;
+            mTerms = terms;
+            mWriter = new IndexSegmentWriter(mTerms);
+        }
+
+        /**
+         * Adds the given web page, writing the current segment once it is full.
+         *
+         * @param page the web page to add, with its words and stems index
+         * @throws IOException if any I/O errors occurred
+         */
+        void add(WebPage page) throws IOException {
+            mWriter.add(page);
+            mDocumentsCount++;
+
+            if (mWriter.getDocumentsCount() >= Constants.INDEX_SEGMENT_MAX_DOCS) {
+                mWriter.write(segmentFile(mDirectory, mSegmentsCount++));
+                mWriter = new IndexSegmentWriter(mTerms);
+            }
+        }
+
+        /**
+         * Writes the last segment, and the term dictionary unless shared with other builders.
+         *
+         * @return the number of added web pages
+         * @throws IOException if any I/O errors occurred
+         */
+        long finish() throws IOException {
+            if (mWriter.getDocumentsCount() > 0) {
+                mWriter.write(segmentFile(mDirectory, mSegmentsCount++));
+            }
+
+            if (mOwnsTerms) {
+                mTerms.build().write(new File(mDirectory, Constants.TERM_DICTIONARY_FILE_NAME));
+            }
+
+            return mDocumentsCount;
+        }
+    }
+
+
+    /**
+     * Builds immutable index segments of all the web pages stored in the given indexer
+     * and writes them into the given directory, replacing any previously built segments.
+     * <p>
+     * The segments are written into a temporary directory first, then swapped with
+     * the old ones, so a failed build does not destroy the current index.
+     * <p>
+     * The global term dictionary of the old segments is extended rather than rebuilt,
+     * so the terms keep their ids across builds.
+     *
+     * @param indexer the indexer holding the web pages to build the index of
+     * @param path    the segments directory path
+     * @return the number of indexed web pages
+     * @throws IOException if any I/O errors occurred
+     */
+    public static long build(Indexer indexer, String path) throws IOException {
+        File directory = new File(path);
+        File tmpDirectory = new File(path + ".tmp");
+
+        Builder builder = new Builder(tmpDirectory, directory);
+        IOException[] error = {null};
+
+        indexer.forEachWebPage(Constants.FIELDS_FOR_SEARCH_RANKING, page -> {
+            if (error[0] != null) {
+                return;
+            }
+
+            try {
+                builder.add(page);
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        long ret = builder.finish();
+
+        // Swap the newly built segments with the old ones
+        replaceDirectory(tmpDirectory, directory);
+
+        return ret;
+    }
+
+    /**
+     * Opens all the index segments in the given directory.
+     *
+     * @param path the segments directory path
+     * @return the opened segment index, or null if no segments were found
+     */
+    public static SegmentIndex open(String path) {
+        return open(path, null);
+    }
+
+    /**
+     * Opens all the index segments in the given directory, whose term ids were assigned
+     * from the given term dictionary shared with other segment indexes.
+     *
+     * @param path  the segments directory path
+     * @param terms the shared term dictionary, or null to read the one in the segments directory
+     * @return the opened segment index, or null if no segments were found
+     */
+    static SegmentIndex open(String path, TermDictionary terms) {
+        File[] files = new File(path).listFiles((dir, name) -> name.endsWith(Constants.INDEX_SEGMENT_EXTENSION));
+
+        if (files == null || files.length == 0) {
+            return null;
+        }
+
+        Arrays.sort(files);
+
+        SegmentIndex ret = new SegmentIndex();
+
+        try {
+            ret.mTerms = (terms != null ? terms : TermDictionary.read(new File(path, Constants.TERM_DICTIONARY_FILE_NAME)));
+
+            for (File file : files) {
+                IndexSegmentReader segment = new IndexSegmentReader(file);
+                ret.mSegments.add(segment);
+                ret.mDocumentsCount += segment.getDocumentsCount();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            ret.close();
+            return null;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Closes all the opened segments.
+     */
+    public void close() {
+        for (IndexSegmentReader segment : mSegments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the global term dictionary of the segments.
+     *
+     * @return the term dictionary
+     */
+    public TermDictionary getTermDictionary() {
+        return mTerms;
+    }
+
+    /**
+     * Returns the number of indexed web pages.
+     *
+     * @return documents count
+     */
+    public long getDocumentsCount() {
+        return mDocumentsCount;
+    }
+
+    /**
+     * Returns the number of indexed web pages containing the given word.
+     *
+     * @param word the word to search for
+     * @return documents count
+     */
+    public long getWordDocumentsCount(String word) {
+        return getWordDocumentsCount(mTerms.getId(word));
+    }
+
+    /**
+     * Returns the number of indexed web pages containing the given word.
+     *
+     * @param word the global id of the word to search for
+     * @return documents count
+     */
+    public long getWordDocumentsCount(int word) {
+        long ret = 0;
+
+        for (IndexSegmentReader segment : mSegments) {
+            ret += segment.getWordDocumentsCount(word);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the number of indexed web pages containing the given stem.
+     *
+     * @param stem the stem word to search for
+     * @return documents count
+     */
+    public long getStemDocumentsCount(String stem) {
+        return getStemDocumentsCount(mTerms.getId(stem));
+    }
+
+    /**
+     * Returns the number of indexed web pages containing the given stem.
+     *
+     * @param stem the global id of the stem word to search for
+     * @return documents count
+     */
+    public long getStemDocumentsCount(int stem) {
+        long ret = 0;
+
+        for (IndexSegmentReader segment : mSegments) {
+            ret += segment.getStemDocumentsCount(stem);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Searches for web pages having any of the given filter stems.
+     * <p>
+     * The returned web pages hold only the index entries of the given words and stems,
+     * the same way as {@code Indexer.searchByWord}.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @return list of matching web pages
+     */
+    public List<WebPage> searchByWord(List<String> filterWords, List<String> filterStems) {
+        return searchByWord(filterWords, filterStems, mTerms.getIds(filterWords), mTerms.getIds(filterStems));
+    }
+
+    /**
+     * Searches for web pages having any of the given filter stems,
+     * using the given ids of the filter terms resolved once for all the segments.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @param wordIds     array of the global ids of the search query words
+     * @param stemIds     array of the global ids of the search query stems
+     * @return list of matching web pages
+     */
+    public List<WebPage> searchByWord(List<String> filterWords, List<String> filterStems, int[] wordIds, int[] stemIds) {
+        List<WebPage> ret = new ArrayList<>();
+
+        for (IndexSegmentReader segment : mSegments) {
+            Map<Integer, WebPage> pages = new LinkedHashMap<>();
+
+            // Match by any of the stems
+            for (int i = 0; i < stemIds.length; ++i) {
+                for (Map.Entry<Integer, StemInfo> posting : segment.readStemPostings(stemIds[i]).entrySet()) {
+                    pages.computeIfAbsent(posting.getKey(), segment::getWebPage)
+                            .stemMap.put(filterStems.get(i), posting.getValue());
+                }
+            }
+
+            fillWords(segment, pages, filterWords, wordIds);
+            ret.addAll(pages.values());
+        }
+
+        return IndexerUtilities.buildIndexes(ret, mTerms);
+    }
+
+    /**
+     * Searches for web pages having all of the given filter words in the given order.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @return list of matching web pages
+     */
+    public List<WebPage> searchByPhrase(List<String> filterWords, List<String> filterStems) {
+        return searchByPhrase(filterWords, filterStems, mTerms.getIds(filterWords), mTerms.getIds(filterStems));
+    }
+
+    /**
+     * Searches for web pages having all of the given filter words in the given order,
+     * using the given ids of the filter terms resolved once for all the segments.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @param filterIds   array of the global ids of the search query words
+     * @param stemIds     array of the global ids of the search query stems
+     * @return list of matching web pages
+     */
+    public List<WebPage> searchByPhrase(List<String> filterWords, List<String> filterStems, int[] filterIds, int[] stemIds) {
+        List<WebPage> ret = new ArrayList<>();
+
+        // Intersect every repeated word once
+        Map<String, Integer> distinctIds = new LinkedHashMap<>();
+
+        for (int i = 0; i < filterWords.size(); ++i) {
+            distinctIds.put(filterWords.get(i), filterIds[i]);
+        }
+
+        List<String> distinctWords = new ArrayList<>(distinctIds.keySet());
+        int[] wordIds = new int[distinctWords.size()];
+
+        for (int i = 0; i < wordIds.length; ++i) {
+            wordIds[i] = distinctIds.get(distinctWords.get(i));
+        }
+
+        // A phrase having an unknown word cannot match
+        for (int id : wordIds) {
+            if (id < 0) {
+                return ret;
+            }
+        }
+
+        for (IndexSegmentReader segment : mSegments) {
+            Map<Integer, WebPage> pages = null;
+
+            // Intersect the postings of all the words
+            for (int i = 0; i < wordIds.length; ++i) {
+                String word = distinctWords.get(i);
+                Map<Integer, List<Integer>> postings = segment.readWordPostings(wordIds[i]);
+                Map<Integer, WebPage> matched = new LinkedHashMap<>();
+
+                for (Map.Entry<Integer, List<Integer>> posting : postings.entrySet()) {
+                    int doc = posting.getKey();
+
+                    if (pages != null && !pages.containsKey(doc)) {
+                        continue;
+                    }
+
+                    WebPage page = (pages == null ? segment.getWebPage(doc) : pages.get(doc));
+                    page.wordPosMap.put(word, posting.getValue());
+                    matched.put(doc, page);
+                }
+
+                pages = matched;
+
+                if (pages.isEmpty()) {
+                    break;
+                }
+            }
+
+            if (pages == null || pages.isEmpty()) {
+                continue;
+            }
+
+            fillStems(segment, pages, filterStems, stemIds);
+
+            for (WebPage page : pages.values()) {
+                if (IndexerUtilities.checkPhraseOccurred(page.wordPosMap, filterWords)) {
+                    ret.add(page);
+                }
+            }
+        }
+
+        return IndexerUtilities.buildIndexes(ret, mTerms);
+    }
+
+    /**
+     * Fills the words index of the given matched web pages with the given words.
+     *
+     * @param segment the segment of the web pages
+     * @param pages   map from a segment-local document id to its matched web page
+     * @param words   list of words
+     * @param ids     array of the global ids of the words
+     */
+    private void fillWords(IndexSegmentReader segment, Map<Integer, WebPage> pages, List<String> words, int[] ids) {
+        for (int i = 0; i < ids.length; ++i) {
+            for (Map.Entry<Integer, List<Integer>> posting : segment.readWordPostings(ids[i]).entrySet()) {
+                WebPage page = pages.get(posting.getKey());
+
+                if (page != null) {
+                    page.wordPosMap.put(words.get(i), posting.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the stems index of the given matched web pages with the given stems.
+     *
+     * @param segment the segment of the web pages
+     * @param pages   map from a segment-local document id to its matched web page
+     * @param stems   list of stems
+     * @param ids     array of the global ids of the stems
+     */
+    private void fillStems(IndexSegmentReader segment, Map<Integer, WebPage> pages, List<String> stems, int[] ids) {
+        for (int i = 0; i < ids.length; ++i) {
+            for (Map.Entry<Integer, StemInfo> posting : segment.readStemPostings(ids[i]).entrySet()) {
+                WebPage page = pages.get(posting.getKey());
+
+                if (page != null) {
+                    page.stemMap.put(stems.get(i), posting.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the global term dictionary of the segments in the given directory.
+     *
+     * @param directory the segments directory
+     * @return the term dictionary, or null if not exists or invalid
+     */
+    static TermDictionary readTermDictionary(File directory) {
+        File file = new File(directory, Constants.TERM_DICTIONARY_FILE_NAME);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return TermDictionary.read(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file of the given segment number.
+     *
+     * @param directory the segments directory
+     * @param number    the segment number
+     * @return the segment file
+     */
+    private static File segmentFile(File directory, int number) {
+        return new File(directory, String.format("segment-%05d%s", number, Constants.INDEX_SEGMENT_EXTENSION));
+    }
+
+    /**
+     * Replaces the given directory with the given newly built one.
+     *
+     * @param newDirectory the newly built directory
+     * @param directory    the directory to replace
+     * @throws IOException if the new directory cannot be renamed
+     */
+    static void replaceDirectory(File newDirectory, File directory) throws IOException {
+        deleteDirectory(directory);
+
+        if (!newDirectory.renameTo(directory)) {
+            throw new IOException("Cannot rename " + newDirectory + " to " + directory);
+        }
+    }
+
+    /**
+     * Deletes the given directory with all its files and sub-directories.
+     *
+     * @param directory the directory to delete
+     */
+    static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDirectory(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+
+        directory.delete();
+    }
+}
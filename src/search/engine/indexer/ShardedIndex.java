@@ -0,0 +1,298 @@
+package search.engine.indexer;
+
+import search.engine.utils.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+
+public class ShardedIndex {
+
+    //
+    // Member variables
+    //
+    private List<SegmentIndex> mShards = new ArrayList<>();
+    private TermDictionary mTerms;
+    private ExecutorService mExecutor;
+    private long mDocumentsCount = 0;
+
+
+    /**
+     * Builds the index segments of all the web pages stored in the given indexer,
+     * partitioned into the given number of shards by the hash of the web page id,
+     * and writes them into the given directory, replacing any previously built index.
+     * <p>
+     * Every shard is a segment index in its own sub-directory, and all the shards share
+     * one term dictionary written at the index directory, so a term has the same id in every shard.
+     *
+     * @param indexer     the indexer holding the web pages to build the index of
+     * @param path        the index directory path
+     * @param shardsCount the number of shards
+     * @return the number of indexed web pages
+     * @throws IOException if any I/O errors occurred
+     */
+    public static long build(Indexer indexer, String path, int shardsCount) throws IOException {
+        File directory = new File(path);
+        File tmpDirectory = new File(path + ".tmp");
+
+        SegmentIndex.deleteDirectory(tmpDirectory);
+
+        // Extend the shared term dictionary of the old shards, so the terms keep their ids across builds
+        TermDictionary.Builder terms = new TermDictionary.Builder(SegmentIndex.readTermDictionary(directory));
+        SegmentIndex.Builder[] builders = new SegmentIndex.Builder[shardsCount];
+
+        for (int i = 0; i < shardsCount; ++i) {
+            builders[i] = new SegmentIndex.Builder(shardDirectory(tmpDirectory, i), terms);
+        }
+
+        IOException[] error = {null};
+
+        indexer.forEachWebPage(Constants.FIELDS_FOR_SEARCH_RANKING, page -> {
+            if (error[0] != null) {
+                return;
+            }
+
+            try {
+                builders[getShard(page, shardsCount)].add(page);
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        long ret = 0;
+
+        for (SegmentIndex.Builder builder : builders) {
+            ret += builder.finish();
+        }
+
+        terms.build().write(new File(tmpDirectory, Constants.TERM_DICTIONARY_FILE_NAME));
+
+        // Swap the newly built shards with the old ones
+        SegmentIndex.replaceDirectory(tmpDirectory, directory);
+
+        return ret;
+    }
+
+    /**
+     * Opens all the index shards in the given directory.
+     * <p>
+     * A directory holding the segments of a non-sharded index is opened as a single shard.
+     * In both cases, the term dictionary shared by all the shards is read from the index directory.
+     *
+     * @param path the index directory path
+     * @return the opened sharded index, or null if no shards or no term dictionary were found
+     */
+    public static ShardedIndex open(String path) {
+        File[] directories = new File(path).listFiles(
+                file -> file.isDirectory() && file.getName().startsWith(Constants.INDEX_SHARD_PREFIX));
+
+        List<String> paths = new ArrayList<>();
+
+        if (directories == null || directories.length == 0) {
+            paths.add(path);
+        } else {
+            Arrays.sort(directories);
+
+            for (File directory : directories) {
+                paths.add(directory.getPath());
+            }
+        }
+
+        TermDictionary terms = SegmentIndex.readTermDictionary(new File(path));
+
+        if (terms == null) {
+            System.out.println("No term dictionary found in " + path + ", the index must be rebuilt");
+            return null;
+        }
+
+        ShardedIndex ret = new ShardedIndex();
+        ret.mTerms = terms;
+
+        for (String shardPath : paths) {
+            SegmentIndex shard = SegmentIndex.open(shardPath, terms);
+
+            // Skip the empty shards
+            if (shard == null) {
+                continue;
+            }
+
+            ret.mShards.add(shard);
+            ret.mDocumentsCount += shard.getDocumentsCount();
+        }
+
+        if (ret.mShards.isEmpty()) {
+            return null;
+        }
+
+        ret.mExecutor = Executors.newFixedThreadPool(ret.mShards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "ShardSearcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        return ret;
+    }
+
+    /**
+     * Closes all the opened shards and stops the searching threads.
+     */
+    public void close() {
+        mExecutor.shutdown();
+
+        for (SegmentIndex shard : mShards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Returns the number of opened shards.
+     *
+     * @return shards count
+     */
+    public int getShardsCount() {
+        return mShards.size();
+    }
+
+    /**
+     * Returns the term dictionary shared by all the shards.
+     *
+     * @return the term dictionary
+     */
+    public TermDictionary getTermDictionary() {
+        return mTerms;
+    }
+
+    /**
+     * Returns the number of indexed web pages in all the shards.
+     *
+     * @return documents count
+     */
+    public long getDocumentsCount() {
+        return mDocumentsCount;
+    }
+
+    /**
+     * Returns the number of indexed web pages in all the shards containing the given word.
+     *
+     * @param word the word to search for
+     * @return documents count
+     */
+    public long getWordDocumentsCount(String word) {
+        long ret = 0;
+
+        for (SegmentIndex shard : mShards) {
+            ret += shard.getWordDocumentsCount(word);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the number of indexed web pages in all the shards containing the given stem.
+     *
+     * @param stem the stem word to search for
+     * @return documents count
+     */
+    public long getStemDocumentsCount(String stem) {
+        long ret = 0;
+
+        for (SegmentIndex shard : mShards) {
+            ret += shard.getStemDocumentsCount(stem);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Searches all the shards in parallel for web pages having any of the given filter stems.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @return list of matching web pages
+     */
+    public List<WebPage> searchByWord(List<String> filterWords, List<String> filterStems) {
+        List<WebPage> ret = new ArrayList<>();
+
+        for (List<WebPage> pages : scatter(shard -> shard.searchByWord(filterWords, filterStems))) {
+            ret.addAll(pages);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Searches all the shards in parallel for web pages having all of the given filter words in the given order.
+     *
+     * @param filterWords list of search query words
+     * @param filterStems list of search query stems
+     * @return list of matching web pages
+     */
+    public List<WebPage> searchByPhrase(List<String> filterWords, List<String> filterStems) {
+        List<WebPage> ret = new ArrayList<>();
+
+        for (List<WebPage> pages : scatter(shard -> shard.searchByPhrase(filterWords, filterStems))) {
+            ret.addAll(pages);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Runs the given task on every shard in parallel and gathers the results.
+     *
+     * @param task the task to run on a single shard
+     * @param <T>  the task result type
+     * @return list of the task results ordered by the shards
+     */
+    public <T> List<T> scatter(Function<SegmentIndex, T> task) {
+        List<Future<T>> futures = new ArrayList<>();
+
+        for (SegmentIndex shard : mShards) {
+            futures.add(mExecutor.submit(() -> task.apply(shard)));
+        }
+
+        List<T> ret = new ArrayList<>();
+
+        try {
+            for (Future<T> future : futures) {
+                ret.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the shard of the given web page.
+     *
+     * @param page        the web page
+     * @param shardsCount the number of shards
+     * @return the shard number
+     */
+    private static int getShard(WebPage page, int shardsCount) {
+        return Math.floorMod(page.id.hashCode(), shardsCount);
+    }
+
+    /**
+     * Returns the directory of the given shard number.
+     *
+     * @param directory the index directory
+     * @param number    the shard number
+     * @return the shard directory
+     */
+    private static File shardDirectory(File directory, int number) {
+        return new File(directory, String.format("%s%02d", Constants.INDEX_SHARD_PREFIX, number));
+    }
+}
@@ -0,0 +1,299 @@
+package search.engine.indexer;
+
+import search.engine.utils.Constants;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+
+public class SnapshotPublisher {
+
+    /**
+     * A single file entry of a snapshot manifest.
+     */
+    static class Entry {
+
+        String path;
+        long size;
+        long checksum;
+
+        Entry(String path, long size, long checksum) {
+            this.path = path;
+            this.size = size;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * Publishes an immutable snapshot of the built index in the given directory
+     * as the next version in the given snapshots directory.
+     * <p>
+     * The index files are hard-linked (or copied if linking is not supported) into a new version directory,
+     * followed by a manifest listing their sizes and checksums.
+     * Finally, the current version file is atomically replaced to point to the new version,
+     * so replicas never see a partially published snapshot.
+     *
+     * @param indexPath     the built index directory path
+     * @param snapshotsPath the snapshots directory path
+     * @return the published snapshot version
+     * @throws IOException if any I/O errors occurred
+     */
+    public static long publish(String indexPath, String snapshotsPath) throws IOException {
+        File snapshots = new File(snapshotsPath);
+        snapshots.mkdirs();
+
+        long version = Math.max(readCurrentVersion(snapshots), getLatestVersion(snapshots)) + 1;
+
+        File directory = versionDirectory(snapshots, version);
+        File tmpDirectory = new File(directory.getPath() + ".tmp");
+
+        SegmentIndex.deleteDirectory(tmpDirectory);
+
+        List<Entry> entries = new ArrayList<>();
+        linkFiles(new File(indexPath), tmpDirectory, "", entries);
+
+        if (entries.isEmpty()) {
+            SegmentIndex.deleteDirectory(tmpDirectory);
+            throw new IOException("No index files found in " + indexPath);
+        }
+
+        writeManifest(new File(tmpDirectory, Constants.INDEX_SNAPSHOT_MANIFEST_FILE_NAME), version, entries);
+
+        if (!tmpDirectory.renameTo(directory)) {
+            throw new IOException("Cannot rename " + tmpDirectory + " to " + directory);
+        }
+
+        writeCurrentVersion(snapshots, version);
+
+        // Remove the old snapshots not expected to be pulled anymore
+        for (long v = version - Constants.INDEX_SNAPSHOT_RETAIN_COUNT; v > 0; --v) {
+            File old = versionDirectory(snapshots, v);
+
+            if (!old.exists()) {
+                break;
+            }
+
+            SegmentIndex.deleteDirectory(old);
+        }
+
+        return version;
+    }
+
+    /**
+     * Returns the current published snapshot version in the given snapshots directory.
+     *
+     * @param snapshots the snapshots directory
+     * @return the current version, or 0 if nothing was published yet
+     */
+    static long readCurrentVersion(File snapshots) {
+        File file = new File(snapshots, Constants.INDEX_SNAPSHOT_CURRENT_FILE_NAME);
+
+        try {
+            String str = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            return Long.parseLong(str);
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the latest complete snapshot version in the given snapshots directory.
+     *
+     * @param snapshots the snapshots directory
+     * @return the latest version having a manifest, or 0 if none was found
+     */
+    static long getLatestVersion(File snapshots) {
+        File[] directories = snapshots.listFiles(file -> file.isDirectory()
+                && file.getName().startsWith(Constants.INDEX_SNAPSHOT_PREFIX)
+                && new File(file, Constants.INDEX_SNAPSHOT_MANIFEST_FILE_NAME).exists());
+
+        long ret = 0;
+
+        if (directories == null) {
+            return ret;
+        }
+
+        for (File directory : directories) {
+            try {
+                ret = Math.max(ret, Long.parseLong(directory.getName().substring(Constants.INDEX_SNAPSHOT_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                // Not a snapshot directory
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the directory of the given snapshot version.
+     *
+     * @param snapshots the snapshots directory
+     * @param version   the snapshot version
+     * @return the snapshot version directory
+     */
+    static File versionDirectory(File snapshots, long version) {
+        return new File(snapshots, String.format("%s%06d", Constants.INDEX_SNAPSHOT_PREFIX, version));
+    }
+
+    /**
+     * Reads the manifest file entries of the given snapshot version directory.
+     *
+     * @param directory the snapshot version directory
+     * @param version   the expected snapshot version
+     * @return list of the snapshot files entries
+     * @throws IOException if the manifest cannot be read or does not belong to the given version
+     */
+    static List<Entry> readManifest(File directory, long version) throws IOException {
+        File file = new File(directory, Constants.INDEX_SNAPSHOT_MANIFEST_FILE_NAME);
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+        if (lines.isEmpty() || !lines.get(0).equals("version " + version)) {
+            throw new IOException("Invalid snapshot manifest " + file);
+        }
+
+        List<Entry> ret = new ArrayList<>();
+
+        for (int i = 1; i < lines.size(); ++i) {
+            String[] parts = lines.get(i).split(" ", 3);
+
+            if (parts.length != 3) {
+                throw new IOException("Invalid snapshot manifest entry " + lines.get(i));
+            }
+
+            ret.add(new Entry(parts[2], Long.parseLong(parts[1]), Long.parseLong(parts[0], 16)));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Copies the given file while computing its checksum.
+     *
+     * @param source      the file to copy
+     * @param destination the destination file
+     * @return the CRC32 checksum of the copied bytes
+     * @throws IOException if any I/O errors occurred
+     */
+    static long copyFile(File source, File destination) throws IOException {
+        destination.getParentFile().mkdirs();
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new FileOutputStream(destination)) {
+            int len;
+
+            while ((len = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, len);
+                out.write(buffer, 0, len);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Computes the checksum of the given file.
+     *
+     * @param file the file
+     * @return the CRC32 checksum of the file bytes
+     * @throws IOException if any I/O errors occurred
+     */
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream in = new FileInputStream(file)) {
+            int len;
+
+            while ((len = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, len);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Recursively links the files of the given index directory into the given snapshot directory,
+     * and adds their manifest entries.
+     *
+     * @param source      the index directory
+     * @param destination the snapshot directory
+     * @param prefix      the relative path of the directories
+     * @param entries     list to add the files entries into
+     * @throws IOException if any I/O errors occurred
+     */
+    private static void linkFiles(File source, File destination, String prefix, List<Entry> entries) throws IOException {
+        File[] files = source.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files);
+
+        for (File file : files) {
+            String path = prefix + file.getName();
+            File target = new File(destination, file.getName());
+
+            if (file.isDirectory()) {
+                linkFiles(file, target, path + "/", entries);
+                continue;
+            }
+
+            destination.mkdirs();
+
+            // The built index files are never modified in place, so they can be safely shared
+            try {
+                Files.createLink(target.toPath(), file.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                copyFile(file, target);
+            }
+
+            entries.add(new Entry(path, file.length(), checksum(target)));
+        }
+    }
+
+    /**
+     * Writes the manifest file of the given snapshot version.
+     *
+     * @param file    the manifest file
+     * @param version the snapshot version
+     * @param entries list of the snapshot files entries
+     * @throws IOException if any I/O errors occurred
+     */
+    private static void writeManifest(File file, long version, List<Entry> entries) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.print("version " + version + "\n");
+
+            for (Entry entry : entries) {
+                writer.print(Long.toHexString(entry.checksum) + " " + entry.size + " " + entry.path + "\n");
+            }
+        }
+    }
+
+    /**
+     * Atomically replaces the current version file of the given snapshots directory.
+     *
+     * @param snapshots the snapshots directory
+     * @param version   the new current version
+     * @throws IOException if any I/O errors occurred
+     */
+    private static void writeCurrentVersion(File snapshots, long version) throws IOException {
+        Path file = new File(snapshots, Constants.INDEX_SNAPSHOT_CURRENT_FILE_NAME).toPath();
+        Path tmpFile = new File(snapshots, Constants.INDEX_SNAPSHOT_CURRENT_FILE_NAME + ".tmp").toPath();
+
+        Files.write(tmpFile, (version + "\n").getBytes(StandardCharsets.UTF_8));
+
+        try {
+            Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
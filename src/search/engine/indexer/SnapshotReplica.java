@@ -0,0 +1,188 @@
+package search.engine.indexer;
+
+import search.engine.utils.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+public class SnapshotReplica {
+
+    //
+    // Member variables
+    //
+    private Indexer mIndexer;
+    private File mSourceDirectory;
+    private File mDirectory;
+    private long mVersion = 0;
+
+    private ScheduledExecutorService mScheduler;
+
+
+    /**
+     * Constructs a read-only query replica pulling the index snapshots published
+     * in the given source directory into the given local directory,
+     * and serving them through the given indexer.
+     *
+     * @param indexer    the indexer to attach the pulled index snapshots to
+     * @param sourcePath the published snapshots directory path
+     * @param path       the local replica directory path
+     */
+    public SnapshotReplica(Indexer indexer, String sourcePath, String path) {
+        mIndexer = indexer;
+        mSourceDirectory = new File(sourcePath);
+        mDirectory = new File(path);
+    }
+
+    /**
+     * Opens the latest previously pulled snapshot (if any), then starts polling for new snapshots periodically.
+     */
+    public void start() {
+        mDirectory.mkdirs();
+
+        long version = SnapshotPublisher.getLatestVersion(mDirectory);
+
+        if (version > 0) {
+            attach(version);
+        }
+
+        mScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SnapshotReplica");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                pull();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, 0, Constants.INDEX_REPLICA_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling for new snapshots.
+     */
+    public void stop() {
+        if (mScheduler != null) {
+            mScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the version of the currently served snapshot.
+     *
+     * @return the snapshot version, or 0 if no snapshot is served yet
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Pulls the current published snapshot if it is newer than the served one,
+     * verifies its files against its manifest, and switches the indexer to it.
+     *
+     * @return {@code true} if a new snapshot has been pulled and attached, {@code false} otherwise
+     * @throws IOException if the snapshot cannot be pulled or is corrupted
+     */
+    public synchronized boolean pull() throws IOException {
+        long version = SnapshotPublisher.readCurrentVersion(mSourceDirectory);
+
+        if (version <= mVersion) {
+            return false;
+        }
+
+        File source = SnapshotPublisher.versionDirectory(mSourceDirectory, version);
+        File directory = SnapshotPublisher.versionDirectory(mDirectory, version);
+        File tmpDirectory = new File(directory.getPath() + ".tmp");
+
+        SegmentIndex.deleteDirectory(tmpDirectory);
+
+        try {
+            List<SnapshotPublisher.Entry> entries = SnapshotPublisher.readManifest(source, version);
+
+            for (SnapshotPublisher.Entry entry : entries) {
+                File file = new File(tmpDirectory, entry.path);
+                long checksum = SnapshotPublisher.copyFile(new File(source, entry.path), file);
+
+                if (file.length() != entry.size || checksum != entry.checksum) {
+                    throw new IOException("Checksum mismatch of " + entry.path + " in snapshot " + version);
+                }
+            }
+
+            // Copy the manifest last to mark the local snapshot as complete
+            SnapshotPublisher.copyFile(
+                    new File(source, Constants.INDEX_SNAPSHOT_MANIFEST_FILE_NAME),
+                    new File(tmpDirectory, Constants.INDEX_SNAPSHOT_MANIFEST_FILE_NAME)
+            );
+
+            SegmentIndex.replaceDirectory(tmpDirectory, directory);
+        } catch (IOException e) {
+            SegmentIndex.deleteDirectory(tmpDirectory);
+            throw e;
+        }
+
+        return attach(version);
+    }
+
+    /**
+     * Opens the given local snapshot version and atomically switches the indexer searches to it,
+     * retiring the previously served snapshot after the in-flight searches are done.
+     *
+     * @param version the local snapshot version
+     * @return {@code true} if the snapshot has been attached, {@code false} if it has no index segments
+     */
+    private boolean attach(long version) {
+        File directory = SnapshotPublisher.versionDirectory(mDirectory, version);
+        ShardedIndex index = ShardedIndex.open(directory.getPath());
+
+        if (index == null) {
+            System.out.println("Snapshot " + version + " has no index segments");
+            SegmentIndex.deleteDirectory(directory);
+            return false;
+        }
+
+        ShardedIndex oldIndex = mIndexer.getSegmentIndex();
+        long oldVersion = mVersion;
+
+        mIndexer.attach(index);
+        mVersion = version;
+
+        System.out.println("Serving snapshot " + version + " of " + index.getDocumentsCount() + " web page(s) from "
+                + index.getShardsCount() + " index shard(s)");
+
+        if (oldIndex != null) {
+            retire(oldIndex, oldVersion);
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes the given previously served snapshot and deletes its local files
+     * after a grace period, to let the in-flight searches finish using it.
+     *
+     * @param index   the previously served index
+     * @param version the previously served snapshot version
+     */
+    private void retire(ShardedIndex index, long version) {
+        Runnable task = () -> {
+            index.close();
+
+            if (version > 0) {
+                SegmentIndex.deleteDirectory(SnapshotPublisher.versionDirectory(mDirectory, version));
+            }
+        };
+
+        if (mScheduler == null || mScheduler.isShutdown()) {
+            task.run();
+        } else {
+            mScheduler.schedule(task, Constants.INDEX_REPLICA_RETIRE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -9,4 +9,19 @@ public class StemInfo {
         this.count = count;
         this.score = score;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof StemInfo)) {
+            return false;
+        }
+
+        StemInfo info = (StemInfo) obj;
+        return count == info.count && score == info.score;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * count + score;
+    }
 }
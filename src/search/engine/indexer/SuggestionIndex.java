@@ -0,0 +1,355 @@
+package search.engine.indexer;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import org.bson.Document;
+import search.engine.utils.Constants;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+public class SuggestionIndex {
+
+    /**
+     * A stored search query suggestion with its frequency.
+     */
+    private static class Entry {
+
+        final String text;
+        long count;
+
+        Entry(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * A prefix trie node holding its children sorted by char,
+     * and the top completions of its prefix sorted by frequency.
+     */
+    private static class Node {
+
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+
+        Entry entry;
+        Entry[] top = new Entry[0];
+        int topSize = 0;
+    }
+
+    //
+    // Member variables
+    //
+    private MongoCollection<Document> mCollection;
+
+    /**
+     * The in-memory prefix trie, swapped as a whole on every reload.
+     */
+    private volatile Node mRoot;
+
+    /**
+     * Lock guarding the trie nodes, as the searches read them while the new queries are added.
+     */
+    private final ReadWriteLock mTrieLock = new ReentrantReadWriteLock();
+
+    /**
+     * The last time the trie was loaded from the database, in milliseconds.
+     */
+    private volatile long mLoadTime = 0;
+    private final AtomicBoolean mReloading = new AtomicBoolean(false);
+
+    /**
+     * Lock object used to lock the trie loading, and the increments against it.
+     */
+    private final Object mLock = new Object();
+
+
+    /**
+     * Constructs a suggestion index over the given suggestions collection.
+     *
+     * @param collection the suggestions collection
+     */
+    public SuggestionIndex(MongoCollection<Document> collection) {
+        mCollection = collection;
+    }
+
+    /**
+     * Increments the frequencies of the given search queries in the database,
+     * and updates the top completions of their prefixes in memory.
+     * <p>
+     * Both are done while holding the loading lock, so a concurrent (re)load either
+     * reads the increments from the database or has its trie incremented, never both.
+     *
+     * @param counts map from a processed search query to its frequency increment
+     */
+    public void increment(Map<String, Long> counts) {
+        List<WriteModel<Document>> operations = new ArrayList<>();
+
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            if (entry.getKey().isEmpty() || entry.getValue() <= 0) {
+                continue;
+            }
+
+            operations.add(new UpdateOneModel<>(
+                    Filters.eq(Constants.FIELD_SUGGESTION, entry.getKey()),
+                    Updates.inc(Constants.FIELD_SUGGESTION_COUNT, entry.getValue()),
+                    new UpdateOptions().upsert(true)
+            ));
+        }
+
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        synchronized (mLock) {
+            mCollection.bulkWrite(operations, new BulkWriteOptions().ordered(false));
+
+            // Not loaded yet, the increments are picked up on loading
+            Node root = mRoot;
+
+            if (root == null) {
+                return;
+            }
+
+            mTrieLock.writeLock().lock();
+
+            try {
+                for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                    if (!entry.getKey().isEmpty() && entry.getValue() > 0) {
+                        add(root, entry.getKey(), entry.getValue());
+                    }
+                }
+            } finally {
+                mTrieLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the most frequent stored search queries starting with the given prefix.
+     *
+     * @param prefix the processed search query prefix
+     * @param limit  the maximum number of suggestions to return,
+     *               bounded by {@code Constants.SUGGESTIONS_MAX_COUNT}
+     * @return list of suggestions sorted by frequency in descending order
+     */
+    public List<String> getSuggestions(String prefix, int limit) {
+        ensureLoaded();
+
+        List<String> ret = new ArrayList<>();
+
+        mTrieLock.readLock().lock();
+
+        try {
+            Node node = mRoot;
+
+            for (int i = 0; i < prefix.length() && node != null; ++i) {
+                node = getChild(node, prefix.charAt(i));
+            }
+
+            if (node == null) {
+                return ret;
+            }
+
+            for (int i = 0; i < node.topSize && i < limit; ++i) {
+                ret.add(node.top[i].text);
+            }
+        } finally {
+            mTrieLock.readLock().unlock();
+        }
+
+        return ret;
+    }
+
+    /**
+     * Loads the trie in memory on the first use, and reloads it in the background
+     * when it gets older than {@code Constants.SUGGESTIONS_REFRESH_INTERVAL_MS}
+     * in order to catch up with the queries logged by other processes.
+     */
+    private void ensureLoaded() {
+        if (mRoot == null) {
+            synchronized (mLock) {
+                if (mRoot == null) {
+                    load();
+                }
+            }
+            return;
+        }
+
+        if (System.currentTimeMillis() - mLoadTime < Constants.SUGGESTIONS_REFRESH_INTERVAL_MS
+                || !mReloading.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread t = new Thread(() -> {
+            try {
+                synchronized (mLock) {
+                    load();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mReloading.set(false);
+            }
+        });
+
+        t.setName("Suggestions-Reload-Thread");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Loads all the stored search queries from the database into a new trie.
+     */
+    private void load() {
+        Node root = new Node();
+
+        for (Document doc : mCollection.find().projection(Projections.excludeId())) {
+            String text = doc.getString(Constants.FIELD_SUGGESTION);
+            Number count = (Number) doc.get(Constants.FIELD_SUGGESTION_COUNT);
+
+            // The queries stored before counting the frequencies are counted once
+            if (text != null && !text.isEmpty()) {
+                add(root, text, (count == null ? 1 : count.longValue()));
+            }
+        }
+
+        mRoot = root;
+        mLoadTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Increments the frequency of the given search query in the given trie,
+     * and moves it up in the top completions of all its prefixes.
+     * <p>
+     * As the frequencies only increase, the top completions of a node can only change by the incremented
+     * query entering or moving up in them, so they are kept exact without visiting the rest of the trie.
+     *
+     * @param root  the trie root
+     * @param text  the search query
+     * @param count the frequency increment
+     */
+    private static void add(Node root, String text, long count) {
+        if (text.length() > Constants.SUGGESTION_MAX_LENGTH) {
+            return;
+        }
+
+        Node[] path = new Node[text.length() + 1];
+        path[0] = root;
+
+        for (int i = 0; i < text.length(); ++i) {
+            path[i + 1] = getOrAddChild(path[i], text.charAt(i));
+        }
+
+        Node leaf = path[text.length()];
+
+        if (leaf.entry == null) {
+            leaf.entry = new Entry(text);
+        }
+
+        leaf.entry.count += count;
+
+        for (Node node : path) {
+            promote(node, leaf.entry);
+        }
+    }
+
+    /**
+     * Inserts or moves up the given entry in the top completions of the given node.
+     *
+     * @param node  the trie node
+     * @param entry the incremented entry
+     */
+    private static void promote(Node node, Entry entry) {
+        int idx = 0;
+
+        while (idx < node.topSize && node.top[idx] != entry) {
+            idx++;
+        }
+
+        if (idx == node.topSize) {
+            if (node.topSize < Constants.SUGGESTIONS_MAX_COUNT) {
+                if (node.topSize == node.top.length) {
+                    node.top = Arrays.copyOf(node.top, Math.min(Constants.SUGGESTIONS_MAX_COUNT, node.topSize * 2 + 1));
+                }
+
+                node.topSize++;
+            } else if (isBefore(entry, node.top[idx - 1])) {
+                // Replace the least frequent completion
+                idx--;
+            } else {
+                return;
+            }
+
+            node.top[idx] = entry;
+        }
+
+        while (idx > 0 && isBefore(node.top[idx], node.top[idx - 1])) {
+            Entry tmp = node.top[idx];
+            node.top[idx] = node.top[idx - 1];
+            node.top[idx - 1] = tmp;
+            idx--;
+        }
+    }
+
+    /**
+     * Checks whether the given entry should be suggested before the other one,
+     * ordered by frequency, then alphabetically.
+     *
+     * @param a the first entry
+     * @param b the second entry
+     * @return {@code true} if the first entry comes first, {@code false} otherwise
+     */
+    private static boolean isBefore(Entry a, Entry b) {
+        return a.count > b.count || (a.count == b.count && a.text.compareTo(b.text) < 0);
+    }
+
+    /**
+     * Returns the child of the given node by the given char.
+     *
+     * @param node the trie node
+     * @param c    the child char
+     * @return the child node, or null if not found
+     */
+    private static Node getChild(Node node, char c) {
+        int idx = Arrays.binarySearch(node.keys, c);
+        return (idx < 0 ? null : node.children[idx]);
+    }
+
+    /**
+     * Returns the child of the given node by the given char, adding it if not found.
+     *
+     * @param node the trie node
+     * @param c    the child char
+     * @return the child node
+     */
+    private static Node getOrAddChild(Node node, char c) {
+        int idx = Arrays.binarySearch(node.keys, c);
+
+        if (idx >= 0) {
+            return node.children[idx];
+        }
+
+        idx = -idx - 1;
+
+        int n = node.keys.length;
+        char[] keys = new char[n + 1];
+        Node[] children = new Node[n + 1];
+
+        System.arraycopy(node.keys, 0, keys, 0, idx);
+        System.arraycopy(node.keys, idx, keys, idx + 1, n - idx);
+        System.arraycopy(node.children, 0, children, 0, idx);
+        System.arraycopy(node.children, idx, children, idx + 1, n - idx);
+
+        keys[idx] = c;
+        children[idx] = new Node();
+
+        node.keys = keys;
+        node.children = children;
+
+        return children[idx];
+    }
+}
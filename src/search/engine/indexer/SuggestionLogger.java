@@ -0,0 +1,306 @@
+package search.engine.indexer;
+
+import search.engine.utils.Constants;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class SuggestionLogger {
+
+    /**
+     * Count-min sketch estimating the frequencies of the tail search queries in a fixed memory,
+     * never underestimating them.
+     */
+    private static class Sketch {
+
+        final AtomicLongArray counts = new AtomicLongArray(
+                Constants.SUGGESTIONS_SKETCH_DEPTH * Constants.SUGGESTIONS_SKETCH_WIDTH);
+
+        /**
+         * The total number of counted queries.
+         */
+        final AtomicLong total = new AtomicLong();
+
+        /**
+         * Counts the given query once, using conservative update to limit the overestimation:
+         * only the cells below the new estimate are raised.
+         *
+         * @param query the search query
+         * @return the estimated frequency of the query, including this one
+         */
+        long add(String query) {
+            return add(query, 1);
+        }
+
+        /**
+         * Counts the given query the given number of times, using conservative update.
+         *
+         * @param query the search query
+         * @param count the number of times to count the query
+         * @return the estimated frequency of the query, including these ones
+         */
+        long add(String query, long count) {
+            int h1 = query.hashCode();
+            int h2 = ((h1 * 0x9E3779B9) ^ (h1 >>> 16)) | 1;
+
+            int[] cells = new int[Constants.SUGGESTIONS_SKETCH_DEPTH];
+            long ret = Long.MAX_VALUE;
+
+            for (int i = 0; i < cells.length; ++i) {
+                cells[i] = i * Constants.SUGGESTIONS_SKETCH_WIDTH + Math.floorMod(h1 + i * h2, Constants.SUGGESTIONS_SKETCH_WIDTH);
+                ret = Math.min(ret, counts.get(cells[i]));
+            }
+
+            ret += count;
+
+            for (int cell : cells) {
+                long estimate = ret;
+                counts.accumulateAndGet(cell, estimate, Math::max);
+            }
+
+            total.addAndGet(count);
+            return ret;
+        }
+
+        /**
+         * Returns the expected overestimation of a single query,
+         * caused by the collisions with the other queries.
+         *
+         * @return the estimation error
+         */
+        long error() {
+            return total.get() / Constants.SUGGESTIONS_SKETCH_WIDTH;
+        }
+    }
+
+    /**
+     * The search queries counted during a single flush interval.
+     */
+    private static class Window {
+
+        /**
+         * The exact counts of the head queries, and of the tail queries promoted out of the sketch.
+         */
+        final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+        final Sketch sketch = new Sketch();
+
+        /**
+         * The number of threads currently counting into this window.
+         */
+        final AtomicInteger writersCount = new AtomicInteger();
+    }
+
+    //
+    // Member variables
+    //
+    private SuggestionIndex mSuggestionIndex;
+    private volatile Window mWindow = new Window();
+
+    private AtomicLong mLoggedCnt = new AtomicLong();
+    private AtomicLong mFlushedCnt = new AtomicLong();
+    private AtomicLong mFlushesCnt = new AtomicLong();
+
+    private Thread mFlusherThread;
+
+    /**
+     * Lock object used to serialize the flushes.
+     */
+    private final Object mLock = new Object();
+
+
+    /**
+     * Constructs an asynchronous search queries logger feeding the given suggestion index,
+     * and starts its background flusher thread.
+     * <p>
+     * The counted queries are flushed when the JVM shuts down.
+     *
+     * @param suggestionIndex the suggestion index to flush the aggregated counts into
+     */
+    public SuggestionLogger(SuggestionIndex suggestionIndex) {
+        mSuggestionIndex = suggestionIndex;
+
+        mFlusherThread = new Thread(this::flushLoop);
+        mFlusherThread.setName("Suggestions-Logger-Thread");
+        mFlusherThread.setDaemon(true);
+        mFlusherThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+    }
+
+    /**
+     * Counts the given search query in memory, without any database access.
+     * <p>
+     * The first {@code Constants.SUGGESTIONS_HEAD_MAX_SIZE} distinct queries of the current window
+     * are counted exactly. The rest are counted by the count-min sketch, and get promoted into exact counting
+     * once their estimated frequency reaches {@code Constants.SUGGESTIONS_TAIL_MIN_COUNT},
+     * up to {@code Constants.SUGGESTIONS_PROMOTED_MAX_SIZE} promoted queries.
+     * The rest of the tail queries are dropped when the window is flushed.
+     *
+     * @param query the processed search query
+     */
+    public void log(String query) {
+        if (query.isEmpty() || query.length() > Constants.SUGGESTION_MAX_LENGTH) {
+            return;
+        }
+
+        mLoggedCnt.incrementAndGet();
+
+        Window window = acquireWindow();
+
+        try {
+            LongAdder count = window.counts.get(query);
+
+            if (count == null) {
+                long initial = 1;
+                int size = window.counts.size();
+
+                if (size >= Constants.SUGGESTIONS_HEAD_MAX_SIZE) {
+                    long estimate = window.sketch.add(query) - window.sketch.error();
+
+                    // Promote the frequent tail queries while staying within the memory bound,
+                    // counting them from the promotion threshold to avoid carrying the sketch overestimation
+                    if (estimate < Constants.SUGGESTIONS_TAIL_MIN_COUNT
+                            || size >= Constants.SUGGESTIONS_HEAD_MAX_SIZE + Constants.SUGGESTIONS_PROMOTED_MAX_SIZE) {
+                        return;
+                    }
+
+                    initial = Constants.SUGGESTIONS_TAIL_MIN_COUNT;
+                }
+
+                LongAdder newCount = new LongAdder();
+                count = window.counts.putIfAbsent(query, newCount);
+
+                if (count == null) {
+                    newCount.add(initial);
+                    return;
+                }
+            }
+
+            count.increment();
+        } finally {
+            window.writersCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the counts of the current window as a single batch of increments, and starts a new window.
+     */
+    public void flush() {
+        synchronized (mLock) {
+            Window window = mWindow;
+            mWindow = new Window();
+
+            // Wait for the threads still counting into the old window
+            while (window.writersCount.get() > 0) {
+                Thread.yield();
+            }
+
+            Map<String, Long> batch = new HashMap<>();
+            long total = 0;
+
+            for (Map.Entry<String, LongAdder> entry : window.counts.entrySet()) {
+                long cnt = entry.getValue().sum();
+                batch.put(entry.getKey(), cnt);
+                total += cnt;
+            }
+
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            mFlushesCnt.incrementAndGet();
+
+            try {
+                mSuggestionIndex.increment(batch);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                carryOver(batch);
+                return;
+            }
+
+            mFlushedCnt.addAndGet(total);
+        }
+    }
+
+    /**
+     * Carries the counts of a failed flush over to the current window, within its memory bound.
+     * <p>
+     * The most frequent queries are counted exactly, up to {@code Constants.SUGGESTIONS_HEAD_MAX_SIZE}
+     * distinct queries in the window, and the rest are counted by its sketch,
+     * so repeated failures do not grow the window without bound.
+     *
+     * @param batch map from a search query to its count that failed to be flushed
+     */
+    private void carryOver(Map<String, Long> batch) {
+        Window window = mWindow;
+
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(batch.entrySet());
+        entries.sort((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()));
+
+        for (Map.Entry<String, Long> entry : entries) {
+            LongAdder count = window.counts.get(entry.getKey());
+
+            if (count == null && window.counts.size() < Constants.SUGGESTIONS_HEAD_MAX_SIZE) {
+                count = window.counts.computeIfAbsent(entry.getKey(), k -> new LongAdder());
+            }
+
+            if (count != null) {
+                count.add(entry.getValue());
+            } else {
+                window.sketch.add(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Prints the logged search queries statistics.
+     * <p>
+     * The flushed count falls below the logged one by the dropped tail queries.
+     */
+    public void printStats() {
+        System.out.printf("Suggestions logger: %d quer(y/ies) logged, %d counted in %d flush(es)\n",
+                mLoggedCnt.get(), mFlushedCnt.get(), mFlushesCnt.get());
+    }
+
+    /**
+     * Returns the current window after registering the calling thread as counting into it,
+     * the caller must unregister by decrementing its writers count when done.
+     *
+     * @return the current window
+     */
+    private Window acquireWindow() {
+        while (true) {
+            Window window = mWindow;
+            window.writersCount.incrementAndGet();
+
+            // The window has not been swapped meanwhile, so the flusher waits for this thread
+            if (window == mWindow) {
+                return window;
+            }
+
+            window.writersCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Flushes the counted queries periodically every {@code Constants.SUGGESTIONS_FLUSH_INTERVAL_MS}.
+     */
+    private void flushLoop() {
+        while (true) {
+            try {
+                Thread.sleep(Constants.SUGGESTIONS_FLUSH_INTERVAL_MS);
+                flush();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package search.engine.indexer;
+
+import java.io.*;
+import java.util.*;
+
+
+public class TermDictionary {
+
+    //
+    // Static variables
+    //
+    public static final int MAGIC = 0x54444943;   // "TDIC"
+    public static final int VERSION = 1;
+
+    /**
+     * Extends a term dictionary with new terms, keeping the ids of the existing terms.
+     */
+    public static class Builder {
+
+        //
+        // Member variables
+        //
+        private List<String> mTerms = new ArrayList<>();
+        private Map<String, Integer> mIds = new HashMap<>();
+
+
+        /**
+         * Constructs a builder starting with the terms of the given dictionary.
+         *
+         * @param base the dictionary to extend, or null to start empty
+         */
+        public Builder(TermDictionary base) {
+            if (base == null) {
+                return;
+            }
+
+            for (String term : base.mTerms) {
+                mIds.put(term, mTerms.size());
+                mTerms.add(term);
+            }
+        }
+
+        /**
+         * Returns the id of the given term, assigning it the next id if not exists.
+         *
+         * @param term the word or stem
+         * @return the term id
+         */
+        public int add(String term) {
+            Integer id = mIds.get(term);
+
+            if (id == null) {
+                id = mTerms.size();
+                mIds.put(term, id);
+                mTerms.add(term);
+            }
+
+            return id;
+        }
+
+        /**
+         * Builds the term dictionary.
+         *
+         * @return the term dictionary
+         */
+        public TermDictionary build() {
+            return new TermDictionary(mTerms.toArray(new String[0]));
+        }
+    }
+
+    //
+    // Member variables
+    //
+
+    /**
+     * The terms ordered by their ids, and the ids ordered by their terms for binary search.
+     */
+    private String[] mTerms;
+    private int[] mSortedIds;
+
+
+    /**
+     * Constructs a term dictionary from the given terms ordered by their ids.
+     *
+     * @param terms array of distinct terms
+     */
+    private TermDictionary(String[] terms) {
+        mTerms = terms;
+
+        Integer[] ids = new Integer[terms.length];
+
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = i;
+        }
+
+        Arrays.sort(ids, Comparator.comparing(id -> mTerms[id]));
+
+        mSortedIds = new int[ids.length];
+
+        for (int i = 0; i < ids.length; ++i) {
+            mSortedIds[i] = ids[i];
+        }
+    }
+
+    /**
+     * Constructs a term dictionary from the given terms ordered by their ids
+     * and the given ids ordered by their terms.
+     *
+     * @param terms     array of distinct terms
+     * @param sortedIds array of the term ids sorted by their terms
+     */
+    private TermDictionary(String[] terms, int[] sortedIds) {
+        mTerms = terms;
+        mSortedIds = sortedIds;
+    }
+
+    /**
+     * Constructs a term dictionary of the given search query words and stems,
+     * used to key the index of the search results not served from the index segments.
+     *
+     * @param words list of search query words
+     * @param stems list of search query stems
+     * @return the term dictionary
+     */
+    public static TermDictionary of(List<String> words, List<String> stems) {
+        Builder builder = new Builder(null);
+
+        for (String word : words) {
+            builder.add(word);
+        }
+
+        for (String stem : stems) {
+            builder.add(stem);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Constructs a term dictionary of the given terms, assigning every term its rank as its id.
+     *
+     * @param sortedTerms array of distinct terms sorted in ascending order
+     * @return the term dictionary
+     */
+    static TermDictionary ofSorted(String[] sortedTerms) {
+        int[] sortedIds = new int[sortedTerms.length];
+
+        for (int i = 0; i < sortedIds.length; ++i) {
+            sortedIds[i] = i;
+        }
+
+        return new TermDictionary(sortedTerms, sortedIds);
+    }
+
+    /**
+     * Reads the term dictionary from the given file.
+     *
+     * @param file the dictionary file
+     * @return the term dictionary
+     * @throws IOException if any I/O errors occurred or invalid dictionary file was given
+     */
+    public static TermDictionary read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Invalid term dictionary: " + file);
+            }
+
+            int size = in.readInt();
+            String[] terms = new String[size];
+            int[] sortedIds = new int[size];
+
+            for (int i = 0; i < size; ++i) {
+                terms[i] = in.readUTF();
+            }
+
+            for (int i = 0; i < size; ++i) {
+                sortedIds[i] = in.readInt();
+            }
+
+            return new TermDictionary(terms, sortedIds);
+        }
+    }
+
+    /**
+     * Writes the term dictionary into the given file.
+     * <p>
+     * Dictionary layout: magic number, version, terms count,
+     * the terms ordered by their ids, then the ids ordered by their terms.
+     *
+     * @param file the dictionary file to write
+     * @throws IOException if any I/O errors occurred
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mTerms.length);
+
+            for (String term : mTerms) {
+                out.writeUTF(term);
+            }
+
+            for (int id : mSortedIds) {
+                out.writeInt(id);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of terms in the dictionary.
+     *
+     * @return terms count
+     */
+    public int size() {
+        return mTerms.length;
+    }
+
+    /**
+     * Returns the term of the given id.
+     *
+     * @param id the term id
+     * @return the term
+     */
+    public String getTerm(int id) {
+        return mTerms[id];
+    }
+
+    /**
+     * Returns the id of the given term.
+     *
+     * @param term the word or stem
+     * @return the term id, or -1 if not exists
+     */
+    public int getId(String term) {
+        int lo = 0, hi = mSortedIds.length - 1;
+
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = mTerms[mSortedIds[mid]].compareTo(term);
+
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mSortedIds[mid];
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Resolves the given terms into their ids.
+     *
+     * @param terms list of words or stems
+     * @return array of the term ids, having -1 for the terms that do not exist
+     */
+    public int[] getIds(List<String> terms) {
+        int[] ret = new int[terms.size()];
+
+        for (int i = 0; i < ret.length; ++i) {
+            ret[i] = getId(terms.get(i));
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,132 @@
+package search.engine.indexer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public final class VarInt {
+
+    /**
+     * Writes the given non-negative integer using variable-length encoding,
+     * 7 bits per byte with the most significant bit set on all but the last byte.
+     *
+     * @param out   the output stream to write to
+     * @param value the non-negative integer to write
+     */
+    public static void write(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    /**
+     * Reads a variable-length encoded integer from the current position of the given buffer.
+     *
+     * @param buffer the buffer to read from
+     * @return the decoded integer
+     */
+    public static int read(ByteBuffer buffer) {
+        int ret = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = buffer.get();
+            ret |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return ret;
+    }
+
+    /**
+     * Reads a variable-length encoded integer from the given byte array.
+     *
+     * @param bytes  the byte array to read from
+     * @param offset array of a single element holding the offset to read from,
+     *               to be advanced past the read integer
+     * @return the decoded integer
+     */
+    public static int read(byte[] bytes, int[] offset) {
+        int ret = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = bytes[offset[0]++];
+            ret |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return ret;
+    }
+
+    /**
+     * Packs the given ascending positions into a byte array,
+     * delta encoding them before writing them as variable-length integers.
+     *
+     * @param positions list of positions in ascending order
+     * @return the packed positions
+     */
+    public static byte[] pack(List<Integer> positions) {
+        if (positions instanceof IntSlice) {
+            IntSlice slice = (IntSlice) positions;
+            return pack(slice.getArray(), slice.getFrom(), slice.getTo());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(positions.size() + 4);
+        int last = 0;
+
+        for (int pos : positions) {
+            write(out, pos - last);
+            last = pos;
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Packs the ascending positions in the given range of the given array into a byte array,
+     * without boxing them.
+     *
+     * @param positions array of positions in ascending order
+     * @param from      the start index (inclusive)
+     * @param to        the end index (exclusive)
+     * @return the packed positions
+     */
+    public static byte[] pack(int[] positions, int from, int to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(to - from + 4);
+        int last = 0;
+
+        for (int i = from; i < to; ++i) {
+            write(out, positions[i] - last);
+            last = positions[i];
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Unpacks the positions packed by {@link #pack(List)}.
+     *
+     * @param bytes the packed positions
+     * @return list of positions in ascending order
+     */
+    public static List<Integer> unpack(byte[] bytes) {
+        List<Integer> ret = new ArrayList<>();
+        int[] offset = {0};
+        int pos = 0;
+
+        while (offset[0] < bytes.length) {
+            pos += read(bytes, offset);
+            ret.add(pos);
+        }
+
+        return ret;
+    }
+}
@@ -1,9 +1,12 @@
 package search.engine.indexer;
 
 import org.bson.Document;
+import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 import search.engine.utils.Constants;
+import search.engine.utils.Utilities;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -34,9 +37,16 @@ public class WebPage {
     /**
      * Web page document content.
      * Used when displaying the results to the users.
+     * Stored separately in the content store, not in the web page document.
      */
     public String content = null;
 
+    /**
+     * Web page document content digest.
+     * Used to detect content changes without retrieving the stored content.
+     */
+    public String contentHash = null;
+
     /**
      * Web page rank.
      * <p>
@@ -70,12 +80,25 @@ public class WebPage {
     public Map<String, List<Integer>> wordPosMap = null;
     public Map<String, StemInfo> stemMap = null;
 
+    /**
+     * The compact words and stems index keyed by term ids.
+     * For a freshly parsed web page, it backs {@code wordPosMap} and {@code stemMap} as read-only views.
+     * For a search result, it is built from the index entries of the search query terms to score by.
+     * It is null for the other web pages loaded from the database.
+     */
+    public PageIndex index = null;
+
     /**
      * Variables used to adjust the frequency of fetching the web page content.
      */
     public int fetchSkipLimit = 1;
     public int fetchSkipCount = 0;
 
+    /**
+     * The last time the web page content was fetched, in milliseconds.
+     */
+    public long fetchTime = 0;
+
     //
     // Member methods
     //
@@ -101,6 +124,7 @@ public class WebPage {
         url = (String) doc.getOrDefault(Constants.FIELD_URL, null);
         title = (String) doc.getOrDefault(Constants.FIELD_TITLE, null);
         content = (String) doc.getOrDefault(Constants.FIELD_PAGE_CONTENT, null);
+        contentHash = (String) doc.getOrDefault(Constants.FIELD_CONTENT_HASH, null);
         wordsCount = (int) doc.getOrDefault(Constants.FIELD_TOTAL_WORDS_COUNT, 0);
 
         rank = (double) doc.getOrDefault(Constants.FIELD_RANK, 1.0);
@@ -111,10 +135,12 @@ public class WebPage {
 
         fetchSkipLimit = (int) doc.getOrDefault(Constants.FILED_FETCH_SKIP_LIMIT, 1);
         fetchSkipCount = (int) doc.getOrDefault(Constants.FILED_FETCH_SKIP_COUNT, 0);
+        fetchTime = (long) doc.getOrDefault(Constants.FIELD_FETCH_TIME, 0L);
     }
 
     /**
-     * Returns a JSON-like document representing this web page object.
+     * Returns a JSON-like document representing this web page object,
+     * excluding the content as it is stored in the content store.
      *
      * @return web page document
      */
@@ -125,9 +151,10 @@ public class WebPage {
             doc.append(Constants.FIELD_ID, id);
         }
 
+        doc.append(Constants.FIELD_SCHEMA_VERSION, Constants.SCHEMA_VERSION);
         doc.append(Constants.FIELD_URL, url);
         doc.append(Constants.FIELD_TITLE, title);
-        doc.append(Constants.FIELD_PAGE_CONTENT, content);
+        doc.append(Constants.FIELD_CONTENT_HASH, getContentHash());
         doc.append(Constants.FIELD_TOTAL_WORDS_COUNT, wordsCount);
 
         doc.append(Constants.FIELD_RANK, rank);
@@ -138,16 +165,30 @@ public class WebPage {
 
         doc.append(Constants.FILED_FETCH_SKIP_LIMIT, fetchSkipLimit);
         doc.append(Constants.FILED_FETCH_SKIP_COUNT, fetchSkipCount);
+        doc.append(Constants.FIELD_FETCH_TIME, fetchTime);
 
         return doc;
     }
 
+    /**
+     * Returns the digest of the content of this web page.
+     *
+     * @return the content digest, or null if no content
+     */
+    public String getContentHash() {
+        if (contentHash == null && content != null) {
+            contentHash = Utilities.hashString(content);
+        }
+
+        return contentHash;
+    }
+
     /**
      * Returns the words index of this web page.
      *
      * @return list of documents representing the words index of this web page
      */
-    private List<Document> getWordsIndex() {
+    List<Document> getWordsIndex() {
         if (wordPosMap == null) {
             return null;
         }
@@ -156,12 +197,7 @@ public class WebPage {
         List<Document> dictionary = new ArrayList<>();
 
         for (Map.Entry<String, List<Integer>> entry : wordPosMap.entrySet()) {
-            Document doc = new Document()
-                    .append(Constants.FIELD_TERM, entry.getKey())
-                    //.append(Constants.FIELD_TERM_COUNT, entry.getValue().size())
-                    .append(Constants.FIELD_TERM_POSITIONS, entry.getValue());
-
-            dictionary.add(doc);
+            dictionary.add(toWordEntry(entry.getKey(), entry.getValue()));
         }
 
         return dictionary;
@@ -181,7 +217,16 @@ public class WebPage {
 
         for (Document doc : wordsIndex) {
             String word = doc.getString(Constants.FIELD_TERM);
-            wordPosMap.put(word, (List<Integer>) doc.get(Constants.FIELD_TERM_POSITIONS));
+            Object positions = doc.get(Constants.FIELD_TERM_POSITIONS);
+
+            // Binary positions are decoded lazily on the first access
+            if (positions instanceof Binary) {
+                positions = new PackedPositions(((Binary) positions).getData());
+            } else if (positions instanceof byte[]) {
+                positions = new PackedPositions((byte[]) positions);
+            }
+
+            wordPosMap.put(word, (List<Integer>) positions);
         }
     }
 
@@ -191,16 +236,11 @@ public class WebPage {
      *
      * @return list of documents representing the stem index of this web page
      */
-    private List<Document> getStemsIndex() {
+    List<Document> getStemsIndex() {
         List<Document> ret = new ArrayList<>();
 
         for (Map.Entry<String, StemInfo> entry : stemMap.entrySet()) {
-            Document doc = new Document()
-                    .append(Constants.FIELD_TERM, entry.getKey())
-                    .append(Constants.FIELD_TERM_COUNT, entry.getValue().count)
-                    .append(Constants.FIELD_TERM_SCORE, entry.getValue().score);
-
-            ret.add(doc);
+            ret.add(toStemEntry(entry.getKey(), entry.getValue()));
         }
 
         return ret;
@@ -220,13 +260,107 @@ public class WebPage {
         stemMap = new HashMap<>();
 
         for (Document doc : stemsIndex) {
+            Object info = doc.get(Constants.FIELD_TERM_INFO);
+
+            if (info == null) {
+                stemMap.put(
+                        doc.getString(Constants.FIELD_TERM),
+                        new StemInfo(
+                                doc.getInteger(Constants.FIELD_TERM_COUNT),
+                                doc.getInteger(Constants.FIELD_TERM_SCORE)
+                        )
+                );
+                continue;
+            }
+
+            // Packed (count, score) record
+            byte[] bytes = (info instanceof Binary ? ((Binary) info).getData() : (byte[]) info);
+            int[] offset = {0};
+
             stemMap.put(
                     doc.getString(Constants.FIELD_TERM),
-                    new StemInfo(
-                            doc.getInteger(Constants.FIELD_TERM_COUNT),
-                            doc.getInteger(Constants.FIELD_TERM_SCORE)
-                    )
+                    new StemInfo(VarInt.read(bytes, offset), VarInt.read(bytes, offset))
             );
         }
     }
+
+    /**
+     * Returns the number of occurrences of the given word in this web page.
+     *
+     * @param word the word
+     * @return the occurrences count, or 0 if not exists
+     */
+    public int getWordCount(String word) {
+        if (index != null) {
+            return index.getWordCount(word);
+        }
+
+        List<Integer> positions = (wordPosMap == null ? null : wordPosMap.get(word));
+        return (positions == null ? 0 : positions.size());
+    }
+
+    /**
+     * Returns the occurrences count of the given stem in this web page.
+     *
+     * @param stem the stem word
+     * @return the occurrences count, or 0 if not exists
+     */
+    public int getStemCount(String stem) {
+        if (index != null) {
+            return index.getStemCount(stem);
+        }
+
+        StemInfo info = (stemMap == null ? null : stemMap.get(stem));
+        return (info == null ? 0 : info.count);
+    }
+
+    /**
+     * Returns the sum of the tag scores of the given stem occurrences in this web page.
+     *
+     * @param stem the stem word
+     * @return the stem score, or 0 if not exists
+     */
+    public int getStemScore(String stem) {
+        if (index != null) {
+            return index.getStemScore(stem);
+        }
+
+        StemInfo info = (stemMap == null ? null : stemMap.get(stem));
+        return (info == null ? 0 : info.score);
+    }
+
+    /**
+     * Returns the words index entry document of the given word,
+     * with the positions delta and variable-length encoded into a binary blob.
+     *
+     * @param word      the word
+     * @param positions the word positions
+     * @return the words index entry document
+     */
+    static Document toWordEntry(String word, List<Integer> positions) {
+        byte[] packed = (positions instanceof PackedPositions ?
+                ((PackedPositions) positions).getBytes() : VarInt.pack(positions));
+
+        return new Document()
+                .append(Constants.FIELD_TERM, word)
+                .append(Constants.FIELD_TERM_POSITIONS, packed);
+    }
+
+    /**
+     * Returns the stems index entry document of the given stem,
+     * with the count and score packed into a binary record.
+     *
+     * @param stem the stem word
+     * @param info the stem count and score
+     * @return the stems index entry document
+     */
+    static Document toStemEntry(String stem, StemInfo info) {
+        ByteArrayOutputStream packed = new ByteArrayOutputStream(4);
+        VarInt.write(packed, info.count);
+        VarInt.write(packed, info.score);
+
+        return new Document()
+                .append(Constants.FIELD_TERM, stem)
+                .append(Constants.FIELD_TERM_INFO, packed.toByteArray());
+    }
 }
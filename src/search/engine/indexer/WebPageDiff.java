@@ -0,0 +1,264 @@
+package search.engine.indexer;
+
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import search.engine.utils.Constants;
+
+import java.util.*;
+
+
+public class WebPageDiff {
+
+    //
+    // Member variables
+    //
+
+    /**
+     * The words and stems entries to be written (i.e. added or changed)
+     * and the words and stems entries to be removed (i.e. removed or changed).
+     */
+    private Map<String, List<Integer>> mPutWords = new HashMap<>();
+    private Map<String, StemInfo> mPutStems = new HashMap<>();
+    private Set<String> mPullWords = new HashSet<>();
+    private Set<String> mPullStems = new HashSet<>();
+
+    /**
+     * The changed scalar fields with their new values.
+     */
+    private Document mSetFields = new Document();
+
+    /**
+     * Whether the content has changed, to be written into the content store.
+     */
+    private boolean mContentChanged = false;
+
+
+    /**
+     * Computes the differences between the given previous and current versions of a web page.
+     *
+     * @param prvPage the previous version of the web page, retrieved from the database
+     * @param curPage the current version of the web page
+     */
+    public WebPageDiff(WebPage prvPage, WebPage curPage) {
+        diffTerms(prvPage.wordPosMap, curPage.wordPosMap, mPutWords, mPullWords);
+        diffTerms(prvPage.stemMap, curPage.stemMap, mPutStems, mPullStems);
+
+        // The content is compared by its digest as it is not retrieved with the previous version,
+        // and it is written separately into the content store
+        if (!Objects.equals(prvPage.contentHash, curPage.getContentHash())) {
+            mContentChanged = true;
+            mSetFields.append(Constants.FIELD_CONTENT_HASH, curPage.getContentHash());
+        }
+
+        diffField(Constants.FIELD_TITLE, prvPage.title, curPage.title);
+        diffField(Constants.FIELD_TOTAL_WORDS_COUNT, prvPage.wordsCount, curPage.wordsCount);
+        diffField(Constants.FIELD_CONNECTED_TO, prvPage.outLinks, curPage.outLinks);
+        diffField(Constants.FILED_FETCH_SKIP_LIMIT, prvPage.fetchSkipLimit, curPage.fetchSkipLimit);
+        diffField(Constants.FILED_FETCH_SKIP_COUNT, prvPage.fetchSkipCount, curPage.fetchSkipCount);
+        diffField(Constants.FIELD_FETCH_TIME, prvPage.fetchTime, curPage.fetchTime);
+    }
+
+    /**
+     * Checks whether the two versions of the web page are identical.
+     *
+     * @return {@code true} if no differences, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return mSetFields.isEmpty() && !isIndexChanged();
+    }
+
+    /**
+     * Checks whether the content has changed.
+     *
+     * @return {@code true} if the content has changed, {@code false} otherwise
+     */
+    public boolean isContentChanged() {
+        return mContentChanged;
+    }
+
+    /**
+     * Checks whether the words or stems index has changed.
+     *
+     * @return {@code true} if any index entry is added, removed or changed, {@code false} otherwise
+     */
+    public boolean isIndexChanged() {
+        return !mPullWords.isEmpty() || !mPullStems.isEmpty() || !mPutWords.isEmpty() || !mPutStems.isEmpty();
+    }
+
+    /**
+     * Returns the added and changed words with their new positions.
+     *
+     * @return map from a word to its positions
+     */
+    public Map<String, List<Integer>> getPutWords() {
+        return mPutWords;
+    }
+
+    /**
+     * Returns the added and changed stems with their new info.
+     *
+     * @return map from a stem to its info
+     */
+    public Map<String, StemInfo> getPutStems() {
+        return mPutStems;
+    }
+
+    /**
+     * Returns the removed and changed words.
+     *
+     * @return set of words
+     */
+    public Set<String> getPullWords() {
+        return mPullWords;
+    }
+
+    /**
+     * Returns the removed and changed stems.
+     *
+     * @return set of stems
+     */
+    public Set<String> getPullStems() {
+        return mPullStems;
+    }
+
+    /**
+     * Returns the write operations applying the differences on the stored web page document.
+     * <p>
+     * The operations must be applied in order, since the added and changed index entries are first pulled
+     * along with setting the changed fields, then pushed with their new values.
+     * Pulling the added entries as well keeps the operations safe to be applied again,
+     * as a retried write never pushes the same entry twice.
+     *
+     * @param filter the web page document filter
+     * @return list of write operations
+     */
+    public List<WriteModel<Document>> toOperations(Bson filter) {
+        List<WriteModel<Document>> ret = new ArrayList<>();
+
+        // Set the changed fields and pull the removed, changed and added entries
+        Set<String> pullWords = new HashSet<>(mPullWords);
+        Set<String> pullStems = new HashSet<>(mPullStems);
+        pullWords.addAll(mPutWords.keySet());
+        pullStems.addAll(mPutStems.keySet());
+
+        Document pull = new Document();
+
+        if (!pullWords.isEmpty()) {
+            pull.append(Constants.FIELD_WORDS_INDEX, termsFilter(pullWords));
+        }
+
+        if (!pullStems.isEmpty()) {
+            pull.append(Constants.FIELD_STEMS_INDEX, termsFilter(pullStems));
+        }
+
+        Document update = new Document();
+
+        if (!mSetFields.isEmpty()) {
+            update.append("$set", mSetFields);
+        }
+
+        if (!pull.isEmpty()) {
+            update.append("$pull", pull);
+        }
+
+        // Drop the content stored inline by older versions, as it is kept in the content store now
+        if (mContentChanged) {
+            update.append("$unset", new Document(Constants.FIELD_PAGE_CONTENT, ""));
+        }
+
+        if (!update.isEmpty()) {
+            ret.add(new UpdateOneModel<>(filter, update));
+        }
+
+        // Push the added and changed entries
+        Document push = new Document();
+
+        if (!mPutWords.isEmpty()) {
+            List<Document> entries = new ArrayList<>();
+
+            for (Map.Entry<String, List<Integer>> entry : mPutWords.entrySet()) {
+                entries.add(WebPage.toWordEntry(entry.getKey(), entry.getValue()));
+            }
+
+            push.append(Constants.FIELD_WORDS_INDEX, new Document("$each", entries));
+        }
+
+        if (!mPutStems.isEmpty()) {
+            List<Document> entries = new ArrayList<>();
+
+            for (Map.Entry<String, StemInfo> entry : mPutStems.entrySet()) {
+                entries.add(WebPage.toStemEntry(entry.getKey(), entry.getValue()));
+            }
+
+            push.append(Constants.FIELD_STEMS_INDEX, new Document("$each", entries));
+        }
+
+        if (!push.isEmpty()) {
+            ret.add(new UpdateOneModel<>(filter, new Document("$push", push)));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Compares the given previous and current terms maps entry by entry.
+     *
+     * @param prvTerms the previous terms map
+     * @param curTerms the current terms map
+     * @param put      the map to fill with the added and changed entries
+     * @param pull     the set to fill with the removed and changed terms
+     * @param <T>      the term value type
+     */
+    private static <T> void diffTerms(Map<String, T> prvTerms, Map<String, T> curTerms,
+                                      Map<String, T> put, Set<String> pull) {
+        if (prvTerms == null) {
+            prvTerms = Collections.emptyMap();
+        }
+
+        if (curTerms == null) {
+            curTerms = Collections.emptyMap();
+        }
+
+        for (Map.Entry<String, T> entry : curTerms.entrySet()) {
+            T prvValue = prvTerms.get(entry.getKey());
+
+            if (prvValue == null) {
+                put.put(entry.getKey(), entry.getValue());
+            } else if (!prvValue.equals(entry.getValue())) {
+                put.put(entry.getKey(), entry.getValue());
+                pull.add(entry.getKey());
+            }
+        }
+
+        for (String term : prvTerms.keySet()) {
+            if (!curTerms.containsKey(term)) {
+                pull.add(term);
+            }
+        }
+    }
+
+    /**
+     * Adds the given field to the changed fields if its value has changed.
+     *
+     * @param field    the field name
+     * @param prvValue the previous field value
+     * @param curValue the current field value
+     */
+    private void diffField(String field, Object prvValue, Object curValue) {
+        if (!Objects.equals(prvValue, curValue)) {
+            mSetFields.append(field, curValue);
+        }
+    }
+
+    /**
+     * Returns the array elements filter matching any of the given terms.
+     *
+     * @param terms set of terms
+     * @return the filter document
+     */
+    private static Document termsFilter(Set<String> terms) {
+        return new Document(Constants.FIELD_TERM, new Document("$in", new ArrayList<>(terms)));
+    }
+}
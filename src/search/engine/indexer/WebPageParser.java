@@ -6,6 +6,8 @@ import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
 import org.jsoup.select.Elements;
 import search.engine.utils.Constants;
+import search.engine.utils.Tokenizer;
+import search.engine.utils.URLNormalizationCache;
 import search.engine.utils.URLNormalizer;
 import search.engine.utils.Utilities;
 import search.engine.utils.WebUtilities;
@@ -16,11 +18,22 @@ import java.util.*;
 
 public class WebPageParser {
 
+    //
+    // Static variables
+    //
+
+    /**
+     * Shared cache of the normalized out links, as pages of the same website repeat the same links.
+     */
+    public static final URLNormalizationCache sOutLinksCache = new URLNormalizationCache();
+
     //
     // Member variables
     //
     private StringBuilder sContent;
     private WebPage mPage;
+    private PageIndex.Builder mIndexBuilder;
+    private Tokenizer mTokenizer = new Tokenizer();
 
     private int mParsedContentLen = 0;
 
@@ -39,8 +52,7 @@ public class WebPageParser {
         // Initializing variables
         sContent = new StringBuilder();
         mPage = new WebPage();
-        mPage.wordPosMap = new HashMap<>();
-        mPage.stemMap = new HashMap<>();
+        mIndexBuilder = new PageIndex.Builder();
 
         // Assign page URL & title
         mPage.url = URLNormalizer.normalize(url);
@@ -51,6 +63,10 @@ public class WebPageParser {
 
         // Assign words index variable
         mPage.content = sContent.toString().trim();
+        mPage.index = mIndexBuilder.build();
+        mPage.wordPosMap = mPage.index.asWordPosMap();
+        mPage.stemMap = mPage.index.asStemMap();
+        mIndexBuilder = null;
     }
 
     /**
@@ -152,28 +168,20 @@ public class WebPageParser {
      * @param tag the tag of the string
      */
     private void addToWordIndex(String str, String tag) {
-        str = Utilities.processString(str);
-        String words[] = str.split(" ");
-
-        mParsedContentLen += str.length();
+        mTokenizer.reset(str);
 
         int tagScore = Constants.TAG_TO_SCORE_MAP.getOrDefault(tag, 1);
 
-        for (String word : words) {
-            if (word.isEmpty()) {
-                continue;
-            }
+        while (mTokenizer.next()) {
+            String word = mTokenizer.token();
+
+            // Count the processed length as the words joined by single spaces
+            mParsedContentLen += word.length() + (mTokenizer.position() > 0 ? 1 : 0);
 
             //
             // Add new word position
             //
-            int pos = mPage.wordsCount++;
-            List<Integer> positions = new ArrayList<>();
-            positions.add(pos);
-            positions = mPage.wordPosMap.putIfAbsent(word, positions);
-            if (positions != null) {
-                positions.add(pos);
-            }
+            mIndexBuilder.addWord(word, mPage.wordsCount++);
 
             //
             // Count stem and sum score
@@ -185,15 +193,34 @@ public class WebPageParser {
             // Get word's stem
             String stem = Utilities.stemWord(word);
 
-            // Update web page stem map
-            StemInfo info = mPage.stemMap.putIfAbsent(stem, new StemInfo(1, tagScore));
-            if (info != null) {
-                info.count++;
-                info.score += tagScore;
-            }
+            // Update web page stem count and score
+            mIndexBuilder.addStem(stem, tagScore);
         }
     }
 
+    /**
+     * Extracts the canonical URL declared by the given web page document
+     * using {@code <link rel="canonical">}.
+     *
+     * @param doc the web page document
+     * @return the normalized canonical URL string, or null if not declared or invalid
+     */
+    public static String extractCanonicalURL(Document doc) {
+        Element link = doc.head().selectFirst("link[rel=canonical][href]");
+
+        if (link == null) {
+            return null;
+        }
+
+        URL url = WebUtilities.getURL(link.attr("abs:href"));
+
+        if (url == null || !url.getProtocol().startsWith("http")) {
+            return null;
+        }
+
+        return URLNormalizer.normalize(url);
+    }
+
     /**
      * Extracts all out links from the given raw web page document
      * and adds them to {@code outLinks} list.
@@ -206,14 +233,10 @@ public class WebPageParser {
         Elements links = doc.body().select("a[href]");
 
         for (Element element : links) {
-            String link = element.attr("abs:href");
-
-            if (WebUtilities.crawlable(link)) {
-                try {
-                    outLinks.add(URLNormalizer.normalize(new URL(link)));
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+            String url = sOutLinksCache.normalize(element.attr("abs:href"));
+
+            if (url != null) {
+                outLinks.add(url);
             }
         }
 
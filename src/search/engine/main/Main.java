@@ -1,17 +1,32 @@
 package search.engine.main;
 
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCollection;
 import org.jsoup.nodes.Document;
 import search.engine.crawler.Crawler;
 import search.engine.indexer.Indexer;
+import search.engine.indexer.ReIndexer;
+import search.engine.indexer.SchemaMigrator;
+import search.engine.indexer.ShardedIndex;
+import search.engine.indexer.SnapshotPublisher;
+import search.engine.indexer.SuggestionIndex;
 import search.engine.indexer.WebPage;
 import search.engine.indexer.WebPageParser;
 import search.engine.ranker.PageRanker;
 import search.engine.server.Server;
+import search.engine.utils.Constants;
+import search.engine.utils.Stemmer;
 import search.engine.utils.Utilities;
 import search.engine.utils.WebUtilities;
 
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
 
 
@@ -34,8 +49,11 @@ public class Main {
             System.out.println("1. Start Crawler");
             System.out.println("2. Start Server");
             System.out.println("3. Clear Database");
-            System.out.println("4. Testing");
-            System.out.println("5. Exit");
+            System.out.println("4. Re-index Archived Web Pages");
+            System.out.println("5. Build Index Segments");
+            System.out.println("6. Migrate Database Schema");
+            System.out.println("7. Testing");
+            System.out.println("8. Exit");
 
             choice = scanner.nextInt();
 
@@ -52,9 +70,18 @@ public class Main {
                     clearDatabase();
                     break;
                 case 4:
-                    test();
+                    reindexArchive();
                     break;
                 case 5:
+                    buildIndexSegments();
+                    break;
+                case 6:
+                    migrateSchema();
+                    break;
+                case 7:
+                    test();
+                    break;
+                case 8:
                     System.out.println("Bye!");
                     break;
                 default:
@@ -77,7 +104,7 @@ public class Main {
      * Start running the crawling process.
      */
     private static void startCrawler() {
-        System.out.println("Please enter the number of crawler threads: ");
+        System.out.println("Please enter the maximum number of crawler threads: ");
         int cnt = scanner.nextInt();
 
         Indexer indexer = new Indexer();
@@ -112,6 +139,56 @@ public class Main {
         System.out.println("Done!");
     }
 
+    /**
+     * Re-parses and re-indexes the archived raw web pages without any network access,
+     * optionally preceded by a core-scaling report of the parsing throughput.
+     */
+    private static void reindexArchive() {
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        ReIndexer reIndexer = new ReIndexer(new Indexer());
+
+        if (Constants.REINDEX_REPORT_SCALING) {
+            reIndexer.reportScaling(Constants.ARCHIVE_DATA_PATH);
+        }
+
+        reIndexer.start(Constants.ARCHIVE_DATA_PATH, cores);
+    }
+
+    /**
+     * Builds the immutable sharded index segments of all the indexed web pages,
+     * to be served by the search engine server instead of the database indexes,
+     * then publishes them as a new snapshot to be pulled by the read-only query replicas.
+     */
+    private static void buildIndexSegments() {
+        System.out.println("Building index segments...");
+
+        try {
+            long cnt = ShardedIndex.build(new Indexer(), Constants.INDEX_SEGMENTS_PATH, Constants.INDEX_SHARDS_COUNT);
+            System.out.println(cnt + " web page(s) has been indexed into " + Constants.INDEX_SHARDS_COUNT
+                    + " shard(s) in " + Constants.INDEX_SEGMENTS_PATH);
+
+            long version = SnapshotPublisher.publish(Constants.INDEX_SEGMENTS_PATH, Constants.INDEX_SNAPSHOTS_PATH);
+            System.out.println("Index snapshot " + version + " has been published in " + Constants.INDEX_SNAPSHOTS_PATH);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Migrates the stored web pages into the current schema version,
+     * printing a size and decode time comparison between the old and new schema.
+     */
+    private static void migrateSchema() {
+        SchemaMigrator migrator = new SchemaMigrator(new Indexer());
+
+        migrator.reportSizes();
+
+        System.out.println("Migrating web pages into schema version " + Constants.SCHEMA_VERSION + "...");
+        long cnt = migrator.migrate();
+        System.out.println(cnt + " web page(s) has been migrated");
+    }
+
     /**
      * Just for testing.
      */
@@ -119,6 +196,9 @@ public class Main {
         try {
             //testIndexer();
             testWebPageParser();
+            //benchmarkStemmer();
+            //testTokenizer();
+            //testSuggestions();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -145,4 +225,222 @@ public class Main {
 
         System.out.println(doc.text());
     }
+
+    /**
+     * Compares the uncached stemming against the memoized stemming
+     * on a Zipf-like stream of words, using multiple threads.
+     */
+    private static void benchmarkStemmer() throws Exception {
+        // Generate a vocabulary of inflected words
+        String[] suffixes = {"", "s", "ed", "ing", "ization", "ness", "ly", "ers"};
+        Random random = new Random(42);
+        List<String> vocabulary = new ArrayList<>();
+
+        for (int i = 0; i < 20000; ++i) {
+            StringBuilder word = new StringBuilder();
+            int len = 3 + random.nextInt(7);
+
+            for (int j = 0; j < len; ++j) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+
+            vocabulary.add(word.append(suffixes[random.nextInt(suffixes.length)]).toString());
+        }
+
+        // Sample the words with a Zipf-like distribution, as in natural text
+        String[] words = new String[Constants.STEM_BENCHMARK_LOOKUPS_COUNT];
+
+        for (int i = 0; i < words.length; ++i) {
+            words[i] = vocabulary.get((int) Math.pow(vocabulary.size(), random.nextDouble()) - 1);
+        }
+
+        int threadsCount = Runtime.getRuntime().availableProcessors();
+
+        for (int round = 0; round < 3; ++round) {
+            Stemmer.clear();
+
+            long uncachedTime = runStemmerBenchmark(words, threadsCount, false);
+            long cachedTime = runStemmerBenchmark(words, threadsCount, true);
+
+            System.out.printf("Round %d (%d threads): uncached %.01f ns/word, cached %.01f ns/word\n",
+                    round + 1, threadsCount, (double) uncachedTime / words.length, (double) cachedTime / words.length);
+        }
+
+        Stemmer.printStats();
+    }
+
+    /**
+     * Stems the given words split among the given number of threads.
+     *
+     * @param words        the words to stem
+     * @param threadsCount the number of threads
+     * @param cached       whether to use the memoized stemming or not
+     * @return the elapsed time in nanoseconds
+     */
+    private static long runStemmerBenchmark(String[] words, int threadsCount, boolean cached) throws Exception {
+        Thread[] threads = new Thread[threadsCount];
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < threadsCount; ++i) {
+            int from = (int) ((long) words.length * i / threadsCount);
+            int to = (int) ((long) words.length * (i + 1) / threadsCount);
+
+            threads[i] = new Thread(() -> {
+                for (int j = from; j < to; ++j) {
+                    if (cached) {
+                        Stemmer.stem(words[j]);
+                    } else {
+                        Stemmer.stemUncached(words[j]);
+                    }
+                }
+            });
+
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * Checks that the single-pass tokenizer produces the same processed strings
+     * as the previous regex-based processing, then compares their speed.
+     */
+    private static void testTokenizer() {
+        String[] samples = {
+                "", "   ", "Hello, World!", "2018 was a GREAT year", "abc123 123abc 123 4.5",
+                "e-mail: someone@example.com\ttab\nnew line", "Caf\u00e9 na\u00efve \u00c9cole",
+                "\u0130stanbul \u212aelvin \u00df", "under_score and dash-es", "\"quoted phrase\"",
+                "\ud83d\ude00 emoji 42 \ud83d\ude00", "MiXeD CaSe 007 bond"
+        };
+
+        List<String> inputs = new ArrayList<>(Arrays.asList(samples));
+        Random random = new Random(42);
+        String alphabet = "aZ09 _-.,!\t\n\u00e9\u0130\u212a\u00df\u0391";
+
+        for (int i = 0; i < 10000; ++i) {
+            StringBuilder str = new StringBuilder();
+            int len = random.nextInt(40);
+
+            for (int j = 0; j < len; ++j) {
+                str.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            inputs.add(str.toString());
+        }
+
+        int mismatchesCount = 0;
+
+        for (String input : inputs) {
+            String expected = processStringByRegex(input);
+            String actual = Utilities.processString(input);
+
+            if (!expected.equals(actual) || !String.join(" ", Utilities.tokenize(input)).equals(expected)) {
+                if (mismatchesCount++ < 10) {
+                    System.out.println("Mismatch: \"" + input + "\" -> \"" + expected + "\" vs \"" + actual + "\"");
+                }
+            }
+        }
+
+        System.out.println("Tokenizer equivalence: " + (inputs.size() - mismatchesCount) + "/" + inputs.size() + " matched");
+
+        // Benchmark on a large text
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 2000; ++i) {
+            text.append(inputs.get(random.nextInt(inputs.size()))).append(' ');
+        }
+
+        String str = text.toString();
+        long sum = 0;
+
+        for (int round = 0; round < 5; ++round) {
+            long startTime = System.nanoTime();
+
+            for (int i = 0; i < 200; ++i) {
+                sum += Arrays.asList(processStringByRegex(str).split(" ")).size();
+            }
+
+            long regexTime = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+
+            for (int i = 0; i < 200; ++i) {
+                sum += Utilities.tokenize(str).size();
+            }
+
+            long tokenizerTime = System.nanoTime() - startTime;
+
+            System.out.printf("Round %d: regex %.03f ms/text, tokenizer %.03f ms/text\n",
+                    round + 1, regexTime / 200 / 1e6, tokenizerTime / 200 / 1e6);
+        }
+
+        // Keep the results alive so the loops are not optimized away
+        if (sum == -1) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Counts a few search queries in a throwaway suggestions collection, then prints the suggestions
+     * of some prefixes with the average lookup time of the in-memory suggestion index.
+     * <p>
+     * The real suggestions collection is left untouched.
+     */
+    private static void testSuggestions() {
+        MongoClient mongoClient = new MongoClient(Constants.DATABASE_HOST_ADDRESS, Constants.DATABASE_PORT_NUMBER);
+        MongoCollection<org.bson.Document> collection = mongoClient
+                .getDatabase(Constants.DATABASE_NAME)
+                .getCollection(Constants.COLLECTION_SUGGESTIONS + "_test");
+
+        try {
+            collection.drop();
+
+            SuggestionIndex index = new SuggestionIndex(collection);
+
+            String[] queries = {"google code jam", "google", "google code jam", "go programming", "java", "java jar"};
+            Map<String, Long> counts = new HashMap<>();
+
+            for (String query : queries) {
+                counts.merge(Utilities.processString(query), 1L, Long::sum);
+            }
+
+            index.increment(counts);
+
+            String[] prefixes = {"", "g", "go", "google c", "ja", "xyz"};
+
+            for (String prefix : prefixes) {
+                System.out.println("\"" + prefix + "\" -> " + index.getSuggestions(prefix, Constants.SUGGESTIONS_MAX_COUNT));
+            }
+
+            int lookupsCount = 100000;
+            long startTime = System.nanoTime();
+
+            for (int i = 0; i < lookupsCount; ++i) {
+                index.getSuggestions(prefixes[i % prefixes.length], Constants.SUGGESTIONS_MAX_COUNT);
+            }
+
+            System.out.printf("Suggestions lookup: %.03f us/lookup\n", (System.nanoTime() - startTime) / 1e3 / lookupsCount);
+        } finally {
+            collection.drop();
+            mongoClient.close();
+        }
+    }
+
+    /**
+     * The previous regex-based implementation of {@code Utilities.processString},
+     * kept as the reference of the tokenizer equivalence check.
+     *
+     * @param str the input string to be processed
+     * @return the processed string.
+     */
+    private static String processStringByRegex(String str) {
+        str = str.toLowerCase();
+        str = str.replaceAll("[^\\dA-Za-z ]", " ");
+        str = str.replaceAll("\\b(\\d+)\\b", " ");
+        str = str.replaceAll("\\s+", " ");
+        return str.trim();
+    }
 }
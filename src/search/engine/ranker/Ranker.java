@@ -2,14 +2,16 @@ package search.engine.ranker;
 
 import org.bson.types.ObjectId;
 import search.engine.indexer.Indexer;
-import search.engine.indexer.StemInfo;
+import search.engine.indexer.TermDictionary;
 import search.engine.indexer.WebPage;
 import search.engine.utils.Constants;
 import search.engine.utils.Utilities;
 import search.engine.utils.WebUtilities;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 
 public class Ranker {
@@ -23,6 +25,14 @@ public class Ranker {
     List<String> mQueryWords;
     List<String> mQueryStems;
 
+    /**
+     * The ids of the search query words and stems in the term dictionary keying the web pages index,
+     * or null to look up the terms by string.
+     */
+    TermDictionary mTerms;
+    int[] mWordIds;
+    int[] mStemIds;
+
     long mTotalDocsCount;
     long mWordsDocsCount[];
     long mStemsDocsCount[];
@@ -49,6 +59,44 @@ public class Ranker {
         retrieveDocumentsCount();
     }
 
+    /**
+     * Constructs a ranker object for the given web pages and search query
+     * using the given documents counts, such as the global counts combined from all the index shards.
+     *
+     * @param webPages        the web pages to rank and sort
+     * @param queryWords      the user's search query after polishing
+     * @param queryStems      the user's search query after stemming the words
+     * @param totalDocsCount  the total number of documents
+     * @param wordsDocsCount  the number of documents containing each of the search query words
+     * @param stemsDocsCount  the number of documents containing each of the search query stems
+     */
+    public Ranker(List<WebPage> webPages, List<String> queryWords, List<String> queryStems,
+                  long totalDocsCount, long[] wordsDocsCount, long[] stemsDocsCount) {
+        mWebPages = webPages;
+        mQueryWords = queryWords;
+        mQueryStems = queryStems;
+
+        mTotalDocsCount = totalDocsCount;
+        mWordsDocsCount = wordsDocsCount;
+        mStemsDocsCount = stemsDocsCount;
+    }
+
+    /**
+     * Scores the web pages by the given ids of the search query terms,
+     * resolved once by the caller in the term dictionary keying the web pages index.
+     * <p>
+     * Web pages whose index is keyed by a different dictionary are still scored by the terms strings.
+     *
+     * @param terms   the term dictionary the ids belong to
+     * @param wordIds the ids of the search query words
+     * @param stemIds the ids of the search query stems
+     */
+    public void setTermIds(TermDictionary terms, int[] wordIds, int[] stemIds) {
+        mTerms = terms;
+        mWordIds = wordIds;
+        mStemIds = stemIds;
+    }
+
     /**
      * Ranks the given web pages based on the given search query words
      * and returns a paginated results.
@@ -82,9 +130,37 @@ public class Ranker {
         return ret;
     }
 
+    /**
+     * Scores the given web pages and returns the top ones,
+     * with their scores assigned to their {@code rank} field.
+     *
+     * @param k the maximum number of web pages to return
+     * @return list of the top web pages sorted by their scores in descending order
+     */
+    public List<WebPage> topK(int k) {
+        // Min-heap of the best k web pages so far
+        PriorityQueue<WebPage> heap = new PriorityQueue<>(Math.max(1, k), Comparator.comparingDouble(p -> p.rank));
+
+        for (WebPage webPage : mWebPages) {
+            webPage.rank = calculatePageScore(webPage);
+
+            if (heap.size() < k) {
+                heap.add(webPage);
+            } else if (k > 0 && heap.peek().rank < webPage.rank) {
+                heap.poll();
+                heap.add(webPage);
+            }
+        }
+
+        List<WebPage> ret = new ArrayList<>(heap);
+        ret.sort((p1, p2) -> Double.compare(p2.rank, p1.rank));
+        return ret;
+    }
+
     /**
      * Retrieves the web pages documents count for each of the
      * search query words and stems, along with the total number of documents in the database.
+     * The counts are served from the in-memory documents frequencies table of the indexer.
      * <p>
      * Fill:
      * <ul>
@@ -127,13 +203,9 @@ public class Ranker {
         // For each word in the query filter words
         for (int i = 0; i < mQueryWords.size(); ++i) {
             String word = mQueryWords.get(i);
-            String stem = mQueryStems.get(i);
 
-            List<Integer> positions = webPage.wordPosMap.get(word);
-            StemInfo stemInfo = webPage.stemMap.getOrDefault(stem, new StemInfo(0, 0));
-
-            int wordCnt = (positions == null ? 0 : positions.size());
-            int stemCnt = stemInfo.count;
+            int wordCnt = getWordCount(webPage, i);
+            int stemCnt = getStemCount(webPage, i);
             double TF, IDF, score = 0, wordScore = 0;
 
             // Exact word
@@ -153,7 +225,7 @@ public class Ranker {
 
                 score += (TF * IDF) * 0.5;
 
-                wordScore = (double) stemInfo.score / stemCnt;
+                wordScore = (double) getStemScore(webPage, i) / stemCnt;
             }
 
             // Add the effect of the normalized score of the word
@@ -198,7 +270,6 @@ public class Ranker {
         // For each word in the query filter words
         for (int i = 0; i < queryWordsCnt; ++i) {
             String word = mQueryWords.get(i);
-            String stem = mQueryStems.get(i);
 
             //
             // Query Word Score
@@ -209,12 +280,9 @@ public class Ranker {
             //
             // Page Content Relevance
             //
-            List<Integer> positions = webPage.wordPosMap.get(word);
-            StemInfo stemInfo = webPage.stemMap.getOrDefault(stem, new StemInfo(0, 0));
-
-            int wordCnt = (positions == null ? 0 : positions.size());
-            int stemCnt = stemInfo.count;
-            double TF, IDF, wordScore = (double) stemInfo.score / stemCnt;
+            int wordCnt = getWordCount(webPage, i);
+            int stemCnt = getStemCount(webPage, i);
+            double TF, IDF, wordScore = (double) getStemScore(webPage, i) / stemCnt;
 
             // Exact word
             if (wordCnt > 0) {
@@ -255,4 +323,47 @@ public class Ranker {
 
         return pageScore;
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks whether the index of the given web page is keyed by the resolved search query term ids.
+     *
+     * @param webPage the web page
+     * @return {@code true} if the web page can be scored by the term ids, {@code false} otherwise
+     */
+    private boolean hasTermIds(WebPage webPage) {
+        return mTerms != null && webPage.index != null && webPage.index.getTermDictionary() == mTerms;
+    }
+
+    /**
+     * Returns the number of occurrences of the given search query word in the given web page.
+     *
+     * @param webPage the web page
+     * @param i       the search query word index
+     * @return the occurrences count
+     */
+    private int getWordCount(WebPage webPage, int i) {
+        return hasTermIds(webPage) ? webPage.index.getWordCount(mWordIds[i]) : webPage.getWordCount(mQueryWords.get(i));
+    }
+
+    /**
+     * Returns the occurrences count of the given search query stem in the given web page.
+     *
+     * @param webPage the web page
+     * @param i       the search query stem index
+     * @return the occurrences count
+     */
+    private int getStemCount(WebPage webPage, int i) {
+        return hasTermIds(webPage) ? webPage.index.getStemCount(mStemIds[i]) : webPage.getStemCount(mQueryStems.get(i));
+    }
+
+    /**
+     * Returns the sum of the tag scores of the given search query stem occurrences in the given web page.
+     *
+     * @param webPage the web page
+     * @param i       the search query stem index
+     * @return the stem score
+     */
+    private int getStemScore(WebPage webPage, int i) {
+        return hasTermIds(webPage) ? webPage.index.getStemScore(mStemIds[i]) : webPage.getStemScore(mQueryStems.get(i));
+    }
+}
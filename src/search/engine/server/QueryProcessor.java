@@ -3,14 +3,16 @@ package search.engine.server;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 import search.engine.indexer.Indexer;
+import search.engine.indexer.ShardedIndex;
+import search.engine.indexer.TermDictionary;
 import search.engine.indexer.WebPage;
 import search.engine.ranker.Ranker;
 import search.engine.utils.Constants;
 import search.engine.utils.Utilities;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 public class QueryProcessor {
 
@@ -58,11 +60,14 @@ public class QueryProcessor {
 
         SnippetExtractor snippetExtractor = new SnippetExtractor();
 
+        // Retrieve the contents of the current results page only
+        Map<ObjectId, String> contents = mIndexer.getContents(mRankedIds);
+
         for (ObjectId id : mRankedIds) {
             for (WebPage webPage : mResults) {
                 if (!webPage.id.equals(id)) continue;
 
-                String snippet = snippetExtractor.extractWebPageSnippet(webPage.content, mOriginalQuery);
+                String snippet = snippetExtractor.extractWebPageSnippet(contents.getOrDefault(id, ""), mOriginalQuery);
 
                 Document doc = new Document()
                         .append("title", webPage.title)
@@ -109,8 +114,8 @@ public class QueryProcessor {
         //
         mIsPhraseSearch = (mQuery.startsWith("\"") && mQuery.endsWith("\""));
         mQuery = mQuery.substring(0, Math.min(mQuery.length(), Constants.QUERY_MAX_LENGTH));
-        mQuery = Utilities.processString(mQuery);
-        mQueryWords = Arrays.asList(mQuery.split(" "));
+        mQueryWords = Utilities.tokenize(mQuery);
+        mQuery = String.join(" ", mQueryWords);
 
         // Remove stop words from search query in normal search mode
         if (!mIsPhraseSearch) {
@@ -154,17 +159,27 @@ public class QueryProcessor {
      * @throws Exception when no matching results
      */
     private void searchAndRankResults() throws Exception {
+        ShardedIndex shardedIndex = mIndexer.getSegmentIndex();
+
+        if (shardedIndex != null) {
+            searchAndRankShards(shardedIndex);
+            return;
+        }
+
         //
         // Search for matching results
         //
         long now, startTime = System.nanoTime();
 
+        // Resolve the query terms once, to search and score by their ids
+        TermDictionary terms = TermDictionary.of(mQueryWords, mQueryStems);
+
         List<WebPage> matchingResults;
 
         if (mIsPhraseSearch) {
-            matchingResults = mIndexer.searchByPhrase(mQueryWords, mQueryStems);
+            matchingResults = mIndexer.searchByPhrase(mQueryWords, mQueryStems, terms);
         } else {
-            matchingResults = mIndexer.searchByWord(mQueryWords, mQueryStems);
+            matchingResults = mIndexer.searchByWord(mQueryWords, mQueryStems, terms);
         }
 
         //
@@ -179,14 +194,15 @@ public class QueryProcessor {
         }
 
         //
-        // Save search query for later suggestions
+        // Log search query for later suggestions, off the search path
         //
-        mIndexer.insertSuggestion(mQuery);
+        mIndexer.logSearchQuery(mQuery);
 
         //
         // Rank matching results
         //
         Ranker ranker = new Ranker(mIndexer, matchingResults, mQueryWords, mQueryStems);
+        ranker.setTermIds(terms, terms.getIds(mQueryWords), terms.getIds(mQueryStems));
         mRankedIds = ranker.rank(mPageNumber);
         mResults = mIndexer.searchById(mRankedIds, Constants.FIELDS_FOR_SEARCH_RESULTS);
 
@@ -197,4 +213,99 @@ public class QueryProcessor {
         //
         System.out.printf("Total results:\t %d\n", mTotalResultsCount);
     }
+
+    /**
+     * Searches every shard of the given sharded index in parallel for web pages matching
+     * the user's search query, ranks the results of every shard locally, then merges the top results.
+     * <p>
+     * The shards are ranked using the documents counts combined from all the shards,
+     * so the IDF scores are the same as ranking all the results together.
+     *
+     * @param shardedIndex the sharded index to search
+     * @throws Exception when no matching results
+     */
+    private void searchAndRankShards(ShardedIndex shardedIndex) throws Exception {
+        long now, startTime = System.nanoTime();
+
+        //
+        // Combine the global statistics
+        //
+        long totalDocsCount = shardedIndex.getDocumentsCount();
+        long[] wordsDocsCount = new long[mQueryWords.size()];
+        long[] stemsDocsCount = new long[mQueryWords.size()];
+
+        for (int i = 0; i < mQueryWords.size(); ++i) {
+            wordsDocsCount[i] = shardedIndex.getWordDocumentsCount(mQueryWords.get(i));
+            stemsDocsCount[i] = shardedIndex.getStemDocumentsCount(mQueryStems.get(i));
+        }
+
+        //
+        // Scatter the query, keeping only the top results of every shard needed up to the current page
+        //
+        int k = Constants.SINGLE_PAGE_RESULTS_COUNT * Math.max(1, mPageNumber);
+        int[] matchesCount = new int[1];
+
+        // Resolve the query terms once, as all the shards share the same term ids
+        TermDictionary terms = shardedIndex.getTermDictionary();
+        int[] wordIds = terms.getIds(mQueryWords);
+        int[] stemIds = terms.getIds(mQueryStems);
+
+        List<List<WebPage>> shardsResults = shardedIndex.scatter(shard -> {
+            List<WebPage> matchingResults = (mIsPhraseSearch ?
+                    shard.searchByPhrase(mQueryWords, mQueryStems, wordIds, stemIds) :
+                    shard.searchByWord(mQueryWords, mQueryStems, wordIds, stemIds));
+
+            synchronized (matchesCount) {
+                matchesCount[0] += matchingResults.size();
+            }
+
+            Ranker ranker = new Ranker(matchingResults, mQueryWords, mQueryStems,
+                    totalDocsCount, wordsDocsCount, stemsDocsCount);
+            ranker.setTermIds(terms, wordIds, stemIds);
+
+            return ranker.topK(k);
+        });
+
+        mTotalResultsCount = matchesCount[0];
+
+        //
+        now = System.nanoTime();
+        System.out.printf("Search time:\t %.04f sec (%d shards)\n", (now - startTime) / 1e9, shardedIndex.getShardsCount());
+        startTime = now;
+
+        if (mTotalResultsCount == 0) {
+            throw new Exception("No matching results, please try a different search query!");
+        }
+
+        //
+        // Log search query for later suggestions, off the search path
+        //
+        mIndexer.logSearchQuery(mQuery);
+
+        //
+        // Gather and merge the top results of all shards
+        //
+        List<WebPage> topResults = new ArrayList<>();
+
+        for (List<WebPage> shardResults : shardsResults) {
+            topResults.addAll(shardResults);
+        }
+
+        topResults.sort((p1, p2) -> Double.compare(p2.rank, p1.rank));
+
+        mRankedIds = new ArrayList<>();
+
+        for (int i = k - Constants.SINGLE_PAGE_RESULTS_COUNT; i < Math.min(k, topResults.size()); ++i) {
+            mRankedIds.add(topResults.get(i).id);
+        }
+
+        mResults = mIndexer.searchById(mRankedIds, Constants.FIELDS_FOR_SEARCH_RESULTS);
+
+        //
+        now = System.nanoTime();
+        System.out.printf("Ranking time:\t %.04f sec\n", (now - startTime) / 1e9);
+
+        //
+        System.out.printf("Total results:\t %d\n", mTotalResultsCount);
+    }
 }
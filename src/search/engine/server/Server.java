@@ -1,6 +1,8 @@
 package search.engine.server;
 
 import search.engine.indexer.Indexer;
+import search.engine.indexer.ShardedIndex;
+import search.engine.indexer.SnapshotReplica;
 import search.engine.utils.Constants;
 import search.engine.utils.Utilities;
 import spark.Request;
@@ -16,11 +18,27 @@ import static spark.SparkBase.port;
 public class Server {
 
     private static Indexer sIndexer = new Indexer();
+    private static SnapshotReplica sReplica;
 
     /**
      * Starts serving the clients.
      */
     public static void serve() {
+        if (Constants.INDEX_REPLICA) {
+            // Serve searches from the published index snapshots, switching to the newer ones once pulled
+            sReplica = new SnapshotReplica(sIndexer, Constants.INDEX_REPLICA_SOURCE_PATH, Constants.INDEX_REPLICA_PATH);
+            sReplica.start();
+        } else {
+            // Serve searches from the index segments if they were built
+            ShardedIndex segmentIndex = ShardedIndex.open(Constants.INDEX_SEGMENTS_PATH);
+
+            if (segmentIndex != null) {
+                sIndexer.attach(segmentIndex);
+                System.out.println("Serving " + segmentIndex.getDocumentsCount() + " web page(s) from "
+                        + segmentIndex.getShardsCount() + " index shard(s)");
+            }
+        }
+
         // Setup static files link
         externalStaticFileLocation(System.getProperty("user.dir") + "/client");
 
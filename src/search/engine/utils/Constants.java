@@ -24,11 +24,22 @@ public class Constants {
     public static final String LOG_FILE_NAME = CRAWLER_DATA_PATH + "/log.txt";
     public static final String URLS_FILE_NAME = CRAWLER_DATA_PATH + "/urls_to_crawl.txt";
     public static final String VISITED_URLS_FILE_NAME = CRAWLER_DATA_PATH + "/visited_urls.txt";
+    public static final String FRONTIER_DATA_PATH = CRAWLER_DATA_PATH + "/frontier";
 
     /**
      * Robots text constants
      */
     public static final String DEFAULT_USER_AGENT = "*";
+    public static final int ROBOTS_PREFETCH_THREADS_COUNT = 8;
+
+    /**
+     * Sitemap constants
+     */
+    public static final int SITEMAP_TIMEOUT_MS = 15000;
+    public static final int MAX_SITEMAPS_PER_WEBSITE = 10;
+    public static final int MAX_SITEMAP_ENTRIES = 50000;
+    public static final int SITEMAP_FETCH_THREADS_COUNT = 2;
+    public static final int SITEMAP_FETCH_QUEUE_SIZE = 100;
 
     /**
      * Limits constants
@@ -39,6 +50,85 @@ public class Constants {
     public static final int MAX_FETCH_SKIP_LIMIT = 8;
     public static final int MIN_PARSED_CONTENT_LENGTH_PERCENTAGE = 70;
 
+    /**
+     * Crawl frontier constants
+     */
+    public static final int FRONTIER_HOT_CAPACITY = 10000;
+    public static final int FRONTIER_REFILL_THRESHOLD = FRONTIER_HOT_CAPACITY / 4;
+    public static final int FRONTIER_SPILL_BATCH_SIZE = 10000;
+
+    /**
+     * Crawler traps and URL patterns constants
+     */
+    public static final int MAX_URL_LENGTH = 512;
+    public static final int MAX_URL_PATH_DEPTH = 12;
+    public static final int MAX_URL_REPEATED_SEGMENTS = 2;
+    public static final int MAX_URL_PATTERN_COUNT = 2000;
+    public static final int MAX_URL_SELF_LINKING_PATTERN_COUNT = 100;
+    public static final int MAX_URL_VARIANTS_PER_HOST = 1000;
+    public static final int URL_PARAM_LEARN_THRESHOLD = 2;
+    public static final List<String> TRACKING_PARAMS = Arrays.asList(
+            "sessionid", "session_id", "sid", "jsessionid", "phpsessid", "aspsessionid",
+            "fbclid", "gclid", "dclid", "msclkid", "mc_cid", "mc_eid", "_ga", "ref", "referrer"
+    );
+
+    /**
+     * Out links normalization cache constants
+     */
+    public static final int URL_CACHE_MAX_HOSTS = 1024;
+    public static final int URL_CACHE_ENTRIES_PER_HOST = 512;
+
+    /**
+     * Stemmer constants
+     */
+    public static final int STEM_CACHE_MAX_SIZE = 200000;
+    public static final int STEM_CACHE_STRIPES_COUNT = 16;
+    public static final int STEM_BENCHMARK_LOOKUPS_COUNT = 2000000;
+
+    /**
+     * Fetching deadlines constants
+     */
+    public static final int FETCH_DEADLINE_MS = 15000;
+    public static final int ROBOTS_CONNECT_TIMEOUT_MS = 5000;
+    public static final int ROBOTS_DEADLINE_MS = 10000;
+    public static final int MAX_ROBOTS_TEXT_LENGTH = 512 * 1024;
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+    public static final int MAX_REDIRECTS = 5;
+
+    /**
+     * Host health tracking constants
+     */
+    public static final double HOST_LATENCY_SMOOTHING = 0.3;
+    public static final int HOST_SLOW_LATENCY_MS = 5000;
+    public static final int HOST_MAX_CONSECUTIVE_FAILURES = 3;
+    public static final int HOST_COOL_DOWN_MS = 30000;
+    public static final int HOST_MAX_COOL_DOWN_MS = 5 * 60000;
+    public static final int HOST_MAX_TRIPS = 4;
+    public static final int HOST_RESTRICTED_RELEASE_INTERVAL_MS = 1000;
+
+    /**
+     * Crawler concurrency control constants
+     */
+    public static final int CONCURRENCY_INITIAL_LIMIT = 4;
+    public static final int CONCURRENCY_MIN_LIMIT = 1;
+    public static final int CONCURRENCY_ADJUST_INTERVAL_MS = 5000;
+    public static final double CONCURRENCY_DECREASE_FACTOR = 0.5;
+    public static final double CONCURRENCY_LATENCY_TOLERANCE = 2.0;
+    public static final double CONCURRENCY_THROUGHPUT_TOLERANCE = 0.9;
+    public static final double CONCURRENCY_REFERENCE_DRIFT = 1.05;
+    public static final double CONCURRENCY_MAX_ERROR_RATE = 0.5;
+
+    /**
+     * Raw web pages archive constants
+     */
+    public static final boolean ARCHIVE_ENABLED = false;
+    public static final String ARCHIVE_DATA_PATH = DATA_PATH + "/archive";
+    public static final String ARCHIVE_SEGMENT_EXTENSION = ".warc.gz";
+    public static final String ARCHIVE_OPEN_SEGMENT_EXTENSION = ".warc.gz.open";
+    public static final long ARCHIVE_SEGMENT_MAX_BYTES = 128L * 1024 * 1024;
+    public static final int ARCHIVE_QUEUE_CAPACITY = 1000;
+    public static final int ARCHIVE_POLL_WAIT_TIME_MS = 500;
+
     // ================================================================================================
     //
     // Indexer
@@ -57,14 +147,111 @@ public class Constants {
     public static final String COLLECTION_WEB_PAGES = "web_pages";
     public static final String COLLECTION_DICTIONARY = "dictionary";
     public static final String COLLECTION_SUGGESTIONS = "suggestions";
+    public static final String COLLECTION_POSTINGS = "postings";
+    public static final String COLLECTION_DOCUMENT_FREQUENCIES = "document_frequencies";
+    public static final String COLLECTION_CONTENTS = "contents";
+
+    /**
+     * Postings collection constants
+     */
+    public static final boolean SEARCH_BY_POSTINGS = true;
+    public static final String TERM_TYPE_WORD = "w";
+    public static final String TERM_TYPE_STEM = "s";
+    public static final String TERM_TYPE_TOTAL = "t";
+
+    /**
+     * Document frequencies table constants
+     */
+    public static final long DOCUMENT_FREQUENCIES_REFRESH_INTERVAL_MS = 60 * 1000;
+
+    /**
+     * Search suggestions constants
+     */
+    public static final int SUGGESTIONS_MAX_COUNT = 10;
+    public static final int SUGGESTION_MAX_LENGTH = 100;
+    public static final long SUGGESTIONS_REFRESH_INTERVAL_MS = 10 * 60 * 1000;
+    public static final long SUGGESTIONS_FLUSH_INTERVAL_MS = 5 * 1000;
+    public static final int SUGGESTIONS_HEAD_MAX_SIZE = 10000;
+    public static final int SUGGESTIONS_TAIL_MIN_COUNT = 3;
+    public static final int SUGGESTIONS_PROMOTED_MAX_SIZE = 10000;
+    public static final int SUGGESTIONS_SKETCH_WIDTH = 4096;
+    public static final int SUGGESTIONS_SKETCH_DEPTH = 4;
+
+    /**
+     * Index segments constants
+     */
+    public static final String INDEX_SEGMENTS_PATH = DATA_PATH + "/index";
+    public static final String INDEX_SEGMENT_EXTENSION = ".seg";
+    public static final String TERM_DICTIONARY_FILE_NAME = "terms.dict";
+    public static final String INDEX_SHARD_PREFIX = "shard-";
+    public static final int INDEX_SHARDS_COUNT = 4;
+    public static final int INDEX_SEGMENT_MAX_DOCS = 50000;
+    public static final int INDEX_BUILD_BATCH_SIZE = 1000;
+
+    /**
+     * Index snapshots constants
+     */
+    public static final String INDEX_SNAPSHOTS_PATH = DATA_PATH + "/snapshots";
+    public static final String INDEX_SNAPSHOT_PREFIX = "v";
+    public static final String INDEX_SNAPSHOT_MANIFEST_FILE_NAME = "MANIFEST";
+    public static final String INDEX_SNAPSHOT_CURRENT_FILE_NAME = "CURRENT";
+    public static final int INDEX_SNAPSHOT_RETAIN_COUNT = 3;
+
+    /**
+     * Read-only query replica constants
+     */
+    public static final boolean INDEX_REPLICA = false;
+    public static final String INDEX_REPLICA_SOURCE_PATH = INDEX_SNAPSHOTS_PATH;
+    public static final String INDEX_REPLICA_PATH = DATA_PATH + "/replica";
+    public static final long INDEX_REPLICA_POLL_INTERVAL_MS = 30 * 1000;
+    public static final long INDEX_REPLICA_RETIRE_DELAY_MS = 60 * 1000;
+
+    /**
+     * Content store constants
+     */
+    public static final int CONTENT_DICTIONARY_VERSION = 1;
+    public static final int CONTENT_COMPRESSION_LEVEL = 6;
+    public static final long CONTENT_CACHE_MAX_SIZE = 32 * 1024 * 1024;
+    public static final int CONTENT_CACHE_GENERATIONS_COUNT = 64;
+
+    /**
+     * Write-behind buffer constants
+     */
+    public static final boolean INDEX_WRITE_BEHIND = true;
+    public static final boolean INDEX_DELTA_UPDATES = true;
+    public static final int INDEX_WRITE_BATCH_SIZE = 200;
+    public static final long INDEX_WRITE_FLUSH_INTERVAL_MS = 1000;
+    public static final long INDEX_WRITE_BUFFER_MAX_SIZE = 64L * 1024 * 1024;
+    public static final long INDEX_WRITE_BUFFER_ENTRY_SIZE = 256;
+    public static final int INDEX_WRITE_MAX_RETRIES = 3;
+    public static final long INDEX_WRITE_RETRY_WAIT_TIME_MS = 1000;
+
+    /**
+     * Offline re-indexing constants
+     */
+    public static final int REINDEX_BATCH_SIZE = 500;
+    public static final int REINDEX_IN_FLIGHT_PER_THREAD = 4;
+    public static final boolean REINDEX_REPORT_SCALING = false;
+    public static final int REINDEX_BENCHMARK_PAGES_COUNT = 500;
+
+    /**
+     * Web pages schema constants.
+     * Version 1 stores positions as integer arrays and stems as (count, score) fields,
+     * version 2 stores positions as delta and variable-length encoded blobs and stems as packed records
+     */
+    public static final int SCHEMA_VERSION = 2;
+    public static final int SCHEMA_MIGRATION_BATCH_SIZE = 500;
+    public static final int SCHEMA_REPORT_SAMPLE_COUNT = 1000;
 
     /**
      * Fields constants
      */
     public static final String FIELD_ID = "_id";
+    public static final String FIELD_SCHEMA_VERSION = "schema_version";
     public static final String FIELD_URL = "url";
     public static final String FIELD_TITLE = "title";
     public static final String FIELD_PAGE_CONTENT = "content";
+    public static final String FIELD_CONTENT_HASH = "content_hash";
     public static final String FIELD_TOTAL_WORDS_COUNT = "words_count";
     public static final String FIELD_RANK = "rank";
     public static final String FIELD_CONNECTED_TO = "connected_to";
@@ -74,10 +261,19 @@ public class Constants {
     public static final String FIELD_TERM_COUNT = "count";
     public static final String FIELD_TERM_SCORE = "score";
     public static final String FIELD_TERM_POSITIONS = "positions";
+    public static final String FIELD_TERM_INFO = "info";
     public static final String FILED_SYNONYMS = "synonyms";
     public static final String FILED_FETCH_SKIP_LIMIT = "fetch_skip_limit";
     public static final String FILED_FETCH_SKIP_COUNT = "fetch_skip_count";
+    public static final String FIELD_FETCH_TIME = "fetch_time";
     public static final String FIELD_SUGGESTION = "suggestion";
+    public static final String FIELD_SUGGESTION_COUNT = "count";
+    public static final String FIELD_DOC = "doc";
+    public static final String FIELD_TERM_TYPE = "type";
+    public static final String FIELD_DOCUMENTS_COUNT = "df";
+    public static final String FIELD_CONTENT_DATA = "data";
+    public static final String FIELD_CONTENT_LENGTH = "length";
+    public static final String FIELD_CONTENT_DICTIONARY = "dict";
 
     /**
      * Common fields lists
@@ -85,12 +281,14 @@ public class Constants {
     public static final List<String> FIELDS_FOR_CRAWLING = Arrays.asList(
             FIELD_ID,
             FIELD_TITLE,
+            FIELD_CONTENT_HASH,
             FIELD_TOTAL_WORDS_COUNT,
             FIELD_CONNECTED_TO,
             FIELD_WORDS_INDEX,
             FIELD_STEMS_INDEX,
             FILED_FETCH_SKIP_LIMIT,
-            FILED_FETCH_SKIP_COUNT
+            FILED_FETCH_SKIP_COUNT,
+            FIELD_FETCH_TIME
     );
 
     public static final List<String> FIELDS_FOR_SEARCH_RANKING = Arrays.asList(
@@ -102,11 +300,24 @@ public class Constants {
             FIELD_STEMS_INDEX
     );
 
+    public static final List<String> FIELDS_FOR_POSTINGS_SEARCH = Arrays.asList(
+            FIELD_ID,
+            FIELD_URL,
+            FIELD_RANK,
+            FIELD_TOTAL_WORDS_COUNT
+    );
+
+    public static final List<String> FIELDS_FOR_TERMS_UPDATE = Arrays.asList(
+            FIELD_ID,
+            FIELD_URL,
+            FIELD_WORDS_INDEX + "." + FIELD_TERM,
+            FIELD_STEMS_INDEX
+    );
+
     public static final List<String> FIELDS_FOR_SEARCH_RESULTS = Arrays.asList(
             FIELD_ID,
             FIELD_URL,
-            FIELD_TITLE,
-            FIELD_PAGE_CONTENT
+            FIELD_TITLE
     );
 
     // ================================================================================================
@@ -0,0 +1,181 @@
+package search.engine.utils;
+
+import org.tartarus.snowball.SnowballStemmer;
+import org.tartarus.snowball.ext.englishStemmer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class Stemmer {
+
+    /**
+     * Bounded least-recently-used cache of the words of a single stripe.
+     */
+    private static class Stripe extends LinkedHashMap<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        Stripe() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > Constants.STEM_CACHE_MAX_SIZE / Constants.STEM_CACHE_STRIPES_COUNT;
+        }
+    }
+
+    //
+    // Static variables
+    //
+
+    /**
+     * Snowball stemmers are not thread-safe, so every thread owns its stemmer instance.
+     */
+    private static final ThreadLocal<SnowballStemmer> sStemmers = ThreadLocal.withInitial(englishStemmer::new);
+
+    /**
+     * Bounded cache from a word to its stem, shared by all threads.
+     * The words are spread over independently locked stripes, each evicting its least recently used word.
+     */
+    private static final Stripe[] sCache = new Stripe[Constants.STEM_CACHE_STRIPES_COUNT];
+    private static final AtomicLong sHitsCnt = new AtomicLong();
+    private static final AtomicLong sMissesCnt = new AtomicLong();
+
+    static {
+        for (int i = 0; i < sCache.length; ++i) {
+            sCache[i] = new Stripe();
+        }
+    }
+
+
+    /**
+     * Returns the stem of the given word, stemming it only if it was not seen before.
+     *
+     * @param word string to be stemmed
+     * @return the stemmed word
+     */
+    public static String stem(String word) {
+        Stripe stripe = getStripe(word);
+        String ret;
+
+        synchronized (stripe) {
+            ret = stripe.get(word);
+        }
+
+        if (ret != null) {
+            sHitsCnt.incrementAndGet();
+            return ret;
+        }
+
+        sMissesCnt.incrementAndGet();
+        ret = stemUncached(word);
+
+        // Stem outside the lock, the stripe evicts its least recently used word when full
+        synchronized (stripe) {
+            stripe.put(word, ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Converts the given word into its stemmed version without looking up the cache.
+     * We may need more than one iteration to get to the base stem.
+     * (i.e. computerized -> computer -> comput)
+     *
+     * @param word string to be stemmed
+     * @return the stemmed word
+     */
+    public static String stemUncached(String word) {
+        SnowballStemmer stemmer = sStemmers.get();
+
+        String lastWord = word;
+
+        while (true) {
+            stemmer.setCurrent(word);
+            stemmer.stem();
+            word = stemmer.getCurrent();
+
+            if (word.equals(lastWord))
+                break;
+
+            lastWord = word;
+        }
+
+        return word;
+    }
+
+    /**
+     * Returns the number of cache lookups served without stemming.
+     *
+     * @return hits count
+     */
+    public static long getHitsCount() {
+        return sHitsCnt.get();
+    }
+
+    /**
+     * Returns the number of cache lookups that needed stemming.
+     *
+     * @return misses count
+     */
+    public static long getMissesCount() {
+        return sMissesCnt.get();
+    }
+
+    /**
+     * Clears the cache and its statistics.
+     */
+    public static void clear() {
+        for (Stripe stripe : sCache) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+
+        sHitsCnt.set(0);
+        sMissesCnt.set(0);
+    }
+
+    /**
+     * Prints the cache hit rate statistics.
+     */
+    public static void printStats() {
+        long hits = sHitsCnt.get();
+        long total = hits + sMissesCnt.get();
+
+        System.out.printf("Stem cache: %d lookup(s), %d hit(s) (%.01f%%), %d word(s)\n",
+                total, hits, (total == 0 ? 0 : 100.0 * hits / total), size());
+    }
+
+    /**
+     * Returns the number of cached words.
+     *
+     * @return cached words count
+     */
+    private static int size() {
+        int ret = 0;
+
+        for (Stripe stripe : sCache) {
+            synchronized (stripe) {
+                ret += stripe.size();
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the cache stripe of the given word.
+     *
+     * @param word the word
+     * @return the cache stripe
+     */
+    private static Stripe getStripe(String word) {
+        int hash = word.hashCode();
+        return sCache[Math.floorMod(hash ^ (hash >>> 16), sCache.length)];
+    }
+}
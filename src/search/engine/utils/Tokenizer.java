@@ -0,0 +1,194 @@
+package search.engine.utils;
+
+
+public class Tokenizer {
+
+    //
+    // Member variables
+    //
+
+    /**
+     * The string being tokenized and the index of the next char to scan.
+     */
+    private CharSequence mStr;
+    private int mIdx;
+
+    /**
+     * The lowercase chars of the current token, reused across tokens and strings.
+     */
+    private char[] mBuffer = new char[64];
+    private int mLength;
+
+    /**
+     * The position of the current token among the tokens of the string,
+     * and the offset of its first char in the string.
+     */
+    private int mPosition;
+    private int mOffset;
+
+
+    /**
+     * Constructs a tokenizer to be reset with the strings to tokenize.
+     */
+    public Tokenizer() {
+        reset("");
+    }
+
+    /**
+     * Constructs a tokenizer over the given string.
+     *
+     * @param str the string to tokenize
+     */
+    public Tokenizer(CharSequence str) {
+        reset(str);
+    }
+
+    /**
+     * Starts tokenizing the given string, reusing the buffers of this tokenizer.
+     *
+     * @param str the string to tokenize
+     * @return this tokenizer
+     */
+    public Tokenizer reset(CharSequence str) {
+        mStr = str;
+        mIdx = 0;
+        mLength = 0;
+        mPosition = -1;
+        mOffset = -1;
+        return this;
+    }
+
+    /**
+     * Advances to the next token in a single pass over the string chars.
+     * <p>
+     * Tokens are the maximal runs of ASCII letters and digits after lowercasing,
+     * excluding the completely-numeric runs, the same as {@link Utilities#processString(String)}
+     * used to produce with regular expressions.
+     *
+     * @return {@code true} if a token was found, {@code false} if the end of the string was reached
+     */
+    public boolean next() {
+        int n = mStr.length();
+
+        while (mIdx < n) {
+            mLength = 0;
+            mOffset = mIdx;
+
+            boolean hasLetter = false;
+
+            while (mIdx < n) {
+                char c = mStr.charAt(mIdx);
+
+                if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+                    hasLetter |= (c >= 'a');
+                } else if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                    hasLetter = true;
+                } else if (c < 128 || (c = lowerCaseToASCII(c)) == 0) {
+                    break;
+                } else {
+                    hasLetter = true;
+                }
+
+                append(c);
+                mIdx++;
+
+                // Lowercasing the dotted capital I produces 'i' followed by a combining dot, which ends the token
+                if (c == 'i' && mStr.charAt(mIdx - 1) == '\u0130') {
+                    break;
+                }
+            }
+
+            // Skip the separator ending the token
+            if (mLength == 0) {
+                mIdx++;
+                continue;
+            }
+
+            if (hasLetter) {
+                mPosition++;
+                return true;
+            }
+        }
+
+        mLength = 0;
+        return false;
+    }
+
+    /**
+     * Returns the current token.
+     *
+     * @return the lowercase token string
+     */
+    public String token() {
+        return new String(mBuffer, 0, mLength);
+    }
+
+    /**
+     * Returns the length of the current token.
+     *
+     * @return the token length
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * Returns the char at the given index of the current token.
+     *
+     * @param index the char index
+     * @return the lowercase char
+     */
+    public char charAt(int index) {
+        return mBuffer[index];
+    }
+
+    /**
+     * Returns the position of the current token among the tokens of the string, starting from 0.
+     *
+     * @return the token position
+     */
+    public int position() {
+        return mPosition;
+    }
+
+    /**
+     * Returns the offset of the first char of the current token in the string.
+     *
+     * @return the token offset
+     */
+    public int offset() {
+        return mOffset;
+    }
+
+    /**
+     * Appends the given char to the current token buffer, growing it if needed.
+     *
+     * @param c the char to append
+     */
+    private void append(char c) {
+        if (mLength == mBuffer.length) {
+            char[] buffer = new char[mLength * 2];
+            System.arraycopy(mBuffer, 0, buffer, 0, mLength);
+            mBuffer = buffer;
+        }
+
+        mBuffer[mLength++] = c;
+    }
+
+    /**
+     * Returns the ASCII letter the given non-ASCII char is lowercased into,
+     * such as the Kelvin sign into 'k'.
+     *
+     * @param c a non-ASCII char
+     * @return the lowercase ASCII letter, or 0 if the char does not lowercase into an ASCII letter
+     */
+    private static char lowerCaseToASCII(char c) {
+        if (Character.isSurrogate(c)) {
+            return 0;
+        }
+
+        char lower = Character.toLowerCase(c);
+        return (lower >= 'a' && lower <= 'z' ? lower : 0);
+    }
+}
@@ -0,0 +1,142 @@
+package search.engine.utils;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class URLNormalizationCache {
+
+    /**
+     * Cached result of a rejected (i.e. invalid or not crawlable) link.
+     */
+    private static final String REJECTED = "";
+
+    /**
+     * Bounded least-recently-used cache of the links of a single host.
+     */
+    private static class Shard extends LinkedHashMap<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        Shard() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > Constants.URL_CACHE_ENTRIES_PER_HOST;
+        }
+    }
+
+    //
+    // Member variables
+    //
+    private ConcurrentHashMap<String, Shard> mShards = new ConcurrentHashMap<>();
+    private AtomicLong mHitsCnt = new AtomicLong();
+    private AtomicLong mMissesCnt = new AtomicLong();
+
+
+    /**
+     * Returns the normalized URL of the given raw absolute link,
+     * normalizing it only if it was not seen before.
+     *
+     * @param link a raw absolute link (i.e. href) string
+     * @return the normalized URL string, or null if the link is invalid or not crawlable
+     */
+    public String normalize(String link) {
+        Shard shard = getShard(link);
+        String ret;
+
+        synchronized (shard) {
+            ret = shard.get(link);
+        }
+
+        if (ret != null) {
+            mHitsCnt.incrementAndGet();
+            return (ret.isEmpty() ? null : ret);
+        }
+
+        mMissesCnt.incrementAndGet();
+        ret = REJECTED;
+
+        if (WebUtilities.crawlable(link)) {
+            try {
+                ret = URLNormalizer.normalize(new URL(link));
+            } catch (Exception e) {
+                //e.printStackTrace();
+            }
+        }
+
+        synchronized (shard) {
+            shard.put(link, ret);
+        }
+
+        return (ret.isEmpty() ? null : ret);
+    }
+
+    /**
+     * Prints the cache hit rate statistics.
+     */
+    public void printStats() {
+        long hits = mHitsCnt.get();
+        long total = hits + mMissesCnt.get();
+
+        System.out.printf("URL normalization cache: %d lookup(s), %d hit(s) (%.01f%%), %d host(s)\n",
+                total, hits, (total == 0 ? 0 : 100.0 * hits / total), mShards.size());
+    }
+
+    /**
+     * Returns the cache shard of the host of the given link, creating a new one if not exist.
+     * <p>
+     * The number of shards is bounded by evicting an arbitrary shard when the limit is exceeded.
+     *
+     * @param link a raw absolute link string
+     * @return the host cache shard
+     */
+    private Shard getShard(String link) {
+        String host = extractHost(link);
+        Shard shard = mShards.get(host);
+
+        if (shard != null) {
+            return shard;
+        }
+
+        if (mShards.size() >= Constants.URL_CACHE_MAX_HOSTS) {
+            Iterator<String> it = mShards.keySet().iterator();
+
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        return mShards.computeIfAbsent(host, k -> new Shard());
+    }
+
+    /**
+     * Extracts the host part of the given link without parsing it into a URL object.
+     *
+     * @param link a raw absolute link string
+     * @return the host part of the link, or an empty string if not found
+     */
+    private static String extractHost(String link) {
+        int start = link.indexOf("://");
+
+        if (start < 0) {
+            return "";
+        }
+
+        start += 3;
+        int end = start;
+
+        while (end < link.length() && "/?#".indexOf(link.charAt(end)) < 0) {
+            end++;
+        }
+
+        return link.substring(start, end).toLowerCase();
+    }
+}
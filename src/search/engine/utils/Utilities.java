@@ -1,8 +1,8 @@
 package search.engine.utils;
 
-import org.tartarus.snowball.SnowballStemmer;
-import org.tartarus.snowball.ext.englishStemmer;
-
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 import static java.lang.Math.min;
@@ -10,6 +10,11 @@ import static java.lang.Math.min;
 
 public class Utilities {
 
+    /**
+     * Per-thread tokenizer, reused to avoid allocating its buffers on every call.
+     */
+    private static final ThreadLocal<Tokenizer> sTokenizers = ThreadLocal.withInitial(Tokenizer::new);
+
     /**
      * Processes the given string as follows:
      * <ul>
@@ -22,19 +27,38 @@ public class Utilities {
      * @return the processed string.
      */
     public static String processString(String str) {
-        // Convert to lower case
-        str = str.toLowerCase();
+        Tokenizer tokenizer = sTokenizers.get().reset(str);
+        StringBuilder ret = new StringBuilder(str.length());
+
+        while (tokenizer.next()) {
+            if (ret.length() > 0) {
+                ret.append(' ');
+            }
+
+            for (int i = 0; i < tokenizer.length(); ++i) {
+                ret.append(tokenizer.charAt(i));
+            }
+        }
 
-        // Replace special chars with space
-        str = str.replaceAll("[^\\dA-Za-z ]", " ");
+        return ret.toString();
+    }
 
-        // Remove all completely-numeric words
-        str = str.replaceAll("\\b(\\d+)\\b", " ");
+    /**
+     * Splits the given string into the words of its processed version,
+     * as described in {@link #processString(String)}.
+     *
+     * @param str the input string to be tokenized
+     * @return a new list of words.
+     */
+    public static List<String> tokenize(String str) {
+        Tokenizer tokenizer = sTokenizers.get().reset(str);
+        List<String> ret = new ArrayList<>();
 
-        // Replace multiple consecutive spaces by only one white space
-        str = str.replaceAll("\\s+", " ");
+        while (tokenizer.next()) {
+            ret.add(tokenizer.token());
+        }
 
-        return str.trim();
+        return ret;
     }
 
     /**
@@ -75,29 +99,13 @@ public class Utilities {
 
     /**
      * Converts the given word into its stemmed version.
-     * We may need more than one iteration to get to the base stem.
-     * (i.e. computerized -> computer -> comput)
+     * The stems are memoized by {@link Stemmer}, so repeated words are not stemmed again.
      *
      * @param word string to be stemmed
      * @return a new string of stemmed word.
      */
     public static String stemWord(String word) {
-        SnowballStemmer stemmer = new englishStemmer();
-
-        String lastWord = word;
-
-        while (true) {
-            stemmer.setCurrent(word);
-            stemmer.stem();
-            word = stemmer.getCurrent();
-
-            if (word.equals(lastWord))
-                break;
-
-            lastWord = word;
-        }
-
-        return word;
+        return Stemmer.stem(word);
     }
 
     /**
@@ -181,6 +189,27 @@ public class Utilities {
         return word.substring(firstLetterIdx, lastLetterIdx + 1);
     }
 
+    /**
+     * Returns the MD5 digest of the given string as a hexadecimal string.
+     *
+     * @param str the input string
+     * @return the hexadecimal digest string
+     */
+    public static String hashString(String str) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(str.getBytes(StandardCharsets.UTF_8));
+            StringBuilder ret = new StringBuilder();
+
+            for (byte b : digest) {
+                ret.append(String.format("%02x", b));
+            }
+
+            return ret.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Calculate how far the two strings match.
      * Find minimum number of edits (operations) required to convert ‘str1’ into ‘str2’
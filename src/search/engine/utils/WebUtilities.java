@@ -1,19 +1,20 @@
 package search.engine.utils;
 
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.UncheckedIOException;
 import org.jsoup.nodes.Document;
 import search.engine.crawler.Output;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 
 public final class WebUtilities {
@@ -69,6 +70,9 @@ public final class WebUtilities {
     /**
      * Connects to the robots.txt URL of the given web page URL object
      * and returns its as an array of string lines.
+     * <p>
+     * The whole request is bounded by a total deadline, so slowly trickling
+     * servers cannot hold the calling thread.
      *
      * @param url a web page URL object
      * @return list of strings representing the robots text of the given web page
@@ -76,22 +80,34 @@ public final class WebUtilities {
     public static List<String> fetchRobotsText(URL url) {
         // List of lines to hold robots.txt
         List<String> ret = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + Constants.ROBOTS_DEADLINE_MS;
+        HttpURLConnection connection = null;
 
         try {
             // Get web page robots text url
             url = new URL(url.getProtocol() + "://" + url.getHost() + "/robots.txt");
 
-            // Get connection and set read timeout to avoid hanging
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setReadTimeout(60000);
+            // Get connection and set connect and read timeouts to avoid hanging
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(Constants.ROBOTS_CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(Constants.ROBOTS_DEADLINE_MS);
 
-            // Open the robots.txt file as a buffered stream and start reading it line by line.
-            BufferedReader input = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            String line;
+            // Read the robots.txt file in chunks until the end of the file or the deadline
+            Reader input = new InputStreamReader(connection.getInputStream());
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[4096];
+            int len;
 
-            while ((line = input.readLine()) != null) {
-                ret.add(line.toLowerCase());
+            while ((len = input.read(buffer)) != -1) {
+                text.append(buffer, 0, len);
+
+                if (System.currentTimeMillis() > deadline || text.length() > Constants.MAX_ROBOTS_TEXT_LENGTH) {
+                    Output.log("Fetching " + url.toString() + " exceeded its deadline");
+                    break;
+                }
             }
+
+            ret.addAll(Arrays.asList(text.toString().split("\\r?\\n")));
         } catch (SocketTimeoutException e) {
             //System.err.println(e.getMessage());
             Output.log("Fetching " + url.toString() + " timeout");
@@ -101,11 +117,68 @@ public final class WebUtilities {
             //e.printStackTrace();
         } catch (Exception e) {
             //e.printStackTrace();
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
         }
 
         return ret;
     }
 
+    /**
+     * Connects to the given web resource URL and returns its content as an input stream.
+     * Gzip compressed resources (e.g. sitemap.xml.gz) are transparently decompressed.
+     * <p>
+     * The caller is responsible for closing the returned stream.
+     *
+     * @param urlStr a web resource URL string
+     * @return input stream of the resource content, or null if any errors occurred
+     */
+    public static InputStream openWebResource(String urlStr) {
+        return openWebResource(urlStr, new ArrayList<>());
+    }
+
+    /**
+     * Connects to the given web resource URL and returns its content as an input stream.
+     * Gzip compressed resources (e.g. sitemap.xml.gz) are transparently decompressed.
+     * <p>
+     * The caller is responsible for closing the returned stream.
+     *
+     * @param urlStr      a web resource URL string
+     * @param statusCodes list to add the response status code into, if the server responded
+     * @return input stream of the resource content, or null if any errors occurred
+     */
+    public static InputStream openWebResource(String urlStr, List<Integer> statusCodes) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(urlStr).openConnection();
+            connection.setConnectTimeout(Constants.SITEMAP_TIMEOUT_MS);
+            connection.setReadTimeout(Constants.SITEMAP_TIMEOUT_MS);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+
+            statusCodes.add(connection.getResponseCode());
+
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                return null;
+            }
+
+            InputStream input = new BufferedInputStream(connection.getInputStream());
+
+            if ("gzip".equalsIgnoreCase(connection.getContentEncoding()) || urlStr.endsWith(".gz")) {
+                input = new GZIPInputStream(input);
+            }
+
+            return input;
+        } catch (SocketTimeoutException e) {
+            Output.log("Fetching " + urlStr + " timeout");
+        } catch (Exception e) {
+            //e.printStackTrace();
+        }
+
+        return null;
+    }
+
     /**
      * Connects to the given web page and
      * returns document representing its HTML content.
@@ -114,10 +187,96 @@ public final class WebUtilities {
      * @return {@code jsoup.nodes.Document} representing the content of the given web page
      */
     public static Document fetchWebPage(String url) {
-        Document ret = null;
+        return parseWebPage(fetchWebPageResponse(url));
+    }
+
+    /**
+     * Connects to the given web page and returns its raw HTTP response
+     * with the body already buffered in memory.
+     * <p>
+     * The whole request (i.e. connecting and reading) is bounded by a total deadline.
+     * HTTP error responses are returned as well, so that the caller can tell
+     * the difference between a failing host and a missing web page.
+     *
+     * @param url a web page URL string
+     * @return {@code Connection.Response} holding the status, headers and body of the given web page,
+     * or null if any connection errors occurred
+     */
+    public static Connection.Response fetchWebPageResponse(String url) {
+        return fetchWebPageResponse(url, null);
+    }
+
+    /**
+     * Connects to the given web page following its redirects manually (up to {@code MAX_REDIRECTS} hops),
+     * and returns the raw HTTP response of the final web page.
+     * <p>
+     * The redirects are followed exactly as given by the servers, while the normalized URLs
+     * of the redirect targets are appended to the given list in order, so that the caller can record
+     * the redirect chain.
+     * <p>
+     * The body is buffered in memory only for successful HTML responses, judging by the response headers.
+     * The bodies of the redirect, error and non-HTML responses are discarded without being downloaded.
+     * <p>
+     * All the hops share a single total deadline of {@code FETCH_DEADLINE_MS},
+     * every hop is given only the time remaining until it.
+     *
+     * @param url       a web page URL string
+     * @param redirects list to be filled with the normalized redirect chain, or null if not needed
+     * @return {@code Connection.Response} holding the status, headers and body of the final web page,
+     * or null if any connection errors occurred
+     */
+    public static Connection.Response fetchWebPageResponse(String url, List<String> redirects) {
+        Connection.Response ret = null;
 
         try {
-            ret = Jsoup.connect(url).get();
+            String curURL = url;
+            String curKey = URLNormalizer.normalize(new URL(url));
+            Connection.Response response = null;
+            long deadline = System.currentTimeMillis() + Constants.FETCH_DEADLINE_MS;
+
+            for (int i = 0; i <= Constants.MAX_REDIRECTS; ++i) {
+                long remaining = deadline - System.currentTimeMillis();
+
+                // A zero timeout means no timeout at all
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Fetch deadline exceeded");
+                }
+
+                response = Jsoup.connect(curURL)
+                        .timeout((int) remaining)
+                        .followRedirects(false)
+                        .ignoreHttpErrors(true)
+                        .ignoreContentType(true)
+                        .execute();
+
+                String location = response.header("Location");
+
+                if (!isRedirect(response.statusCode()) || location == null || i == Constants.MAX_REDIRECTS) {
+                    break;
+                }
+
+                discardBody(response);
+
+                // Follow the raw target, as the server may not accept its normalized form
+                URL target = new URL(new URL(curURL), location);
+                String key = URLNormalizer.normalize(target);
+
+                curURL = target.toString();
+
+                if (redirects != null && !key.equals(curKey)) {
+                    redirects.add(key);
+                }
+
+                curKey = key;
+            }
+
+            if (isHTMLResponse(response)) {
+                response.bufferUp();
+            } else {
+                discardBody(response);
+            }
+
+            ret = response;
         } catch (SocketTimeoutException e) {
             //System.err.println(e.getMessage());
             Output.log("Fetching " + url + " timeout");
@@ -132,6 +291,71 @@ public final class WebUtilities {
         return ret;
     }
 
+    /**
+     * Checks whether the given response is a successful HTML response, using its headers only.
+     *
+     * @param response a fetched web page response
+     * @return {@code true} if the response should be parsed, {@code false} otherwise
+     */
+    private static boolean isHTMLResponse(Connection.Response response) {
+        String contentType = response.contentType();
+
+        return response.statusCode() == HttpURLConnection.HTTP_OK
+                && (contentType == null || contentType.toLowerCase().contains("html"));
+    }
+
+    /**
+     * Closes the body stream of the given response without reading it.
+     *
+     * @param response a fetched web page response
+     */
+    private static void discardBody(Connection.Response response) {
+        try {
+            response.bodyStream().close();
+        } catch (Exception e) {
+            //e.printStackTrace();
+        }
+    }
+
+    /**
+     * Checks whether the given HTTP status code is a redirection status.
+     *
+     * @param statusCode the HTTP status code
+     * @return {@code true} if the status code is a redirection, {@code false} otherwise
+     */
+    private static boolean isRedirect(int statusCode) {
+        return statusCode == HttpURLConnection.HTTP_MOVED_PERM
+                || statusCode == HttpURLConnection.HTTP_MOVED_TEMP
+                || statusCode == HttpURLConnection.HTTP_SEE_OTHER
+                || statusCode == 307
+                || statusCode == 308;
+    }
+
+    /**
+     * Parses the given buffered HTTP response into an HTML document.
+     *
+     * @param response a fetched web page response
+     * @return {@code jsoup.nodes.Document} representing the content of the given response,
+     * or null if null, unsuccessful or non HTML response was given or any errors occurred
+     */
+    public static Document parseWebPage(Connection.Response response) {
+        Document ret = null;
+
+        if (response == null || !isHTMLResponse(response)) {
+            return null;
+        }
+
+        try {
+            ret = response.parse();
+        } catch (IOException e) {
+            //e.printStackTrace();
+        } catch (Exception e) {
+            //e.printStackTrace();
+        }
+
+        return ret;
+    }
+
     /**
      * Returns true if the given URL is of valid type to be crawled.
      *